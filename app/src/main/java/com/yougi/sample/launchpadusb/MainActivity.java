@@ -1,58 +1,41 @@
 package com.yougi.sample.launchpadusb;
 
-import android.app.PendingIntent;
-import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
-import android.hardware.usb.UsbConstants;
-import android.hardware.usb.UsbDevice;
-import android.hardware.usb.UsbDeviceConnection;
-import android.hardware.usb.UsbEndpoint;
-import android.hardware.usb.UsbInterface;
 import android.hardware.usb.UsbManager;
 import android.os.Bundle;
-import android.support.annotation.NonNull;
+import android.os.Looper;
 import android.support.v7.app.AppCompatActivity;
 import android.text.method.ScrollingMovementMethod;
 import android.view.View;
 import android.widget.Button;
 import android.widget.TextView;
 
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Set;
-
-public class MainActivity extends AppCompatActivity {
+import com.yougi.launchpadusb.ControlRightPad;
+import com.yougi.launchpadusb.ControlTopPad;
+import com.yougi.launchpadusb.HandlerExecutor;
+import com.yougi.launchpadusb.LaunchPadConnection;
+import com.yougi.launchpadusb.LaunchpadDriver;
+import com.yougi.launchpadusb.PadColor;
 
-    private static final String ACTION_USB_PERMISSION = "USB_PERMISSION";
-    private final BroadcastReceiver mUsbReceiver = new BroadcastReceiver() {
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 
-        public void onReceive(Context context, Intent intent) {
-            String action = intent.getAction();
-            if (ACTION_USB_PERMISSION.equals(action)) {
-                synchronized (this) {
-                    UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
-
-                    if (intent.getBooleanExtra(UsbManager.EXTRA_PERMISSION_GRANTED, false)) {
-                        if (device != null) {
-                            enableDeviceConnection(device);
-                        }
-                    } else {
-                        printLoggingText("permission denied for device " + device);
-                    }
-                }
-            }
-        }
-    };
+public class MainActivity extends AppCompatActivity implements LaunchpadDriver.LaunchPadDriverObserver {
 
+    private LaunchpadDriver launchpadDriver;
     private UsbManager usbManager;
-    private UsbDevice usbDevice;
-    private UsbInterface usbInterface;
-    private UsbDeviceConnection usbDeviceConnection;
-    private UsbEndpoint inEndpoint;
-    private UsbEndpoint outEndpoint;
 
+    /**
+     * Every connected Launchpad, they share the send loop of the driver.
+     */
+    private final ArrayList<LaunchPadConnection> launchPadConnections = new ArrayList<>();
+
+    /**
+     * The detected devices waiting for their connection, asked one after the other.
+     */
+    private final ArrayDeque<String> pendingDeviceIds = new ArrayDeque<>();
 
     private StringBuilder loggingText = new StringBuilder();
     private TextView logging;
@@ -60,8 +43,6 @@ public class MainActivity extends AppCompatActivity {
     private Button catchDeviceBtn;
     private Button sendDataBtn;
     private Button receiveDataBtn;
-    private ReceiveDataThread receiveDataThread;
-    private PendingIntent permissionUsbIntent;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -75,21 +56,23 @@ public class MainActivity extends AppCompatActivity {
         catchDeviceBtn.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                final HashMap<String, UsbDevice> deviceList = usbManager.getDeviceList();
-                final Set<String> deviceNameKeys = deviceList.keySet();
+                final HashMap<String, String> devicesDetected = launchpadDriver.getDevicesDetected(usbManager);
 
-                if (deviceNameKeys.size() == 0) {
+                if (devicesDetected.size() == 0) {
                     printLoggingText("No Device Detected...");
                     return;
-                } else if (deviceNameKeys.size() > 1) {
-                    printLoggingText("Too Many Device Detected...");
-                    return;
                 }
 
-                printLoggingText("Device Detected :");
-                final UsbDevice usbDevice = deviceList.get(deviceNameKeys.iterator().next());
-                usbManager.requestPermission(usbDevice, permissionUsbIntent);
-                printLoggingText(formatUsbDevice(usbDevice));
+                printLoggingText(devicesDetected.size() + " Device Detected :");
+                for (Map.Entry<String, String> deviceDetected : devicesDetected.entrySet()) {
+                    printLoggingText(deviceDetected.getValue());
+                    if (launchpadDriver.getConnection(deviceDetected.getKey()) == null) {
+                        pendingDeviceIds.add(deviceDetected.getKey());
+                    }
+                }
+
+                catchDeviceBtn.setEnabled(false);
+                askNextDeviceConnection();
             }
         });
 
@@ -97,16 +80,7 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onClick(View v) {
                 clearLogging();
-
-                receiveDataThread.stopThread();
-                receiveDataThread = null;
-
-                usbDevice = null;
-
-                if (usbDeviceConnection != null) {
-                    usbDeviceConnection.close();
-                }
-                usbDeviceConnection = null;
+                releaseConnections();
 
                 catchDeviceBtn.setEnabled(true);
                 receiveDataBtn.setEnabled(false);
@@ -119,7 +93,7 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onClick(View v) {
                 receiveDataBtn.setEnabled(false);
-                launchReceiveDataThread();
+                launchReceiveData();
             }
         });
 
@@ -128,15 +102,10 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onClick(View v) {
                 printLoggingText("Send Data...");
-                byte[] sendOut = new byte[]{(byte)240, 0, 32, 41, 9, 124, 5, 72};
-                int length = usbDeviceConnection.bulkTransfer(outEndpoint, sendOut, sendOut.length, 100);
-                printLoggingText("Send Data... length 1 : " + length);
-                sendOut = new byte[]{101, 108, 108, 111, 32, 2, 119, 111};
-                length = usbDeviceConnection.bulkTransfer(outEndpoint, sendOut, sendOut.length, 100);
-                printLoggingText("Send Data... length 2 : " + length);
-                sendOut = new byte[]{114, 108, 100, 33, (byte) 247};
-                length = usbDeviceConnection.bulkTransfer(outEndpoint, sendOut, sendOut.length, 100);
-                printLoggingText("Send Data... length 3 : " + length);
+                for (LaunchPadConnection launchPadConnection : launchPadConnections) {
+                    launchPadConnection.scrollText("Hello world!", PadColor.Red.DISABLE, PadColor.Green.POWER3);
+                }
+                printLoggingText("Send Data... devices : " + launchPadConnections.size());
             }
         });
 
@@ -145,9 +114,54 @@ public class MainActivity extends AppCompatActivity {
 
         usbManager = (UsbManager) getApplicationContext().getSystemService(Context.USB_SERVICE);
 
-        permissionUsbIntent = PendingIntent.getBroadcast(this, 0, new Intent(ACTION_USB_PERMISSION), 0);
-        IntentFilter filter = new IntentFilter(ACTION_USB_PERMISSION);
-        registerReceiver(mUsbReceiver, filter);
+        launchpadDriver = LaunchpadDriver.getInstance();
+        launchpadDriver.initLaunchpadDriver(getApplicationContext());
+        launchpadDriver.addLaunchPadDriverObserver(this);
+    }
+
+    @Override
+    protected void onDestroy() {
+        launchpadDriver.removeLaunchPadDriverObserver(this);
+        releaseConnections();
+        launchpadDriver.releaseLaunchpadDriver(getApplicationContext());
+        super.onDestroy();
+    }
+
+    @Override
+    public void onRequestConnectionOnDevice(String deviceId, String deviceName) {
+        printLoggingText("Ask Connection : " + deviceName);
+    }
+
+    @Override
+    public void onConnectionSucceeded(LaunchPadConnection launchPadConnection) {
+        launchPadConnections.add(launchPadConnection);
+        launchPadConnection.enableSendDataProcess();
+        printLoggingText("Connection Succeeded : " + launchPadConnection.getDeviceName());
+
+        sendDataBtn.setEnabled(true);
+        receiveDataBtn.setEnabled(true);
+        askNextDeviceConnection();
+    }
+
+    @Override
+    public void onConnectionFailed(String deviceId, String deviceName) {
+        printLoggingText("permission denied for device " + deviceName);
+        askNextDeviceConnection();
+    }
+
+    /**
+     * The permission of the devices is asked one device at a time, once the previous one is answered.
+     */
+    private void askNextDeviceConnection() {
+        String deviceId;
+        while ((deviceId = pendingDeviceIds.poll()) != null) {
+            if (launchpadDriver.askDeviceConnectionAsync(getApplicationContext(), usbManager, deviceId)) {
+                return;
+            }
+            printLoggingText("Device unplugged : " + deviceId);
+        }
+
+        catchDeviceBtn.setEnabled(true);
     }
 
     private void printLoggingText(String text) {
@@ -155,21 +169,29 @@ public class MainActivity extends AppCompatActivity {
         logging.setText(loggingText);
     }
 
-    private void launchReceiveDataThread() {
-        if (usbDevice == null) {
+    private void launchReceiveData() {
+        if (launchPadConnections.isEmpty()) {
             printLoggingText("Catch Usb Device before send or receive Data...");
             return;
         }
 
-        if (receiveDataThread != null && receiveDataThread.isRunning) {
-            printLoggingText("receive Data Thread has already started...");
-            return;
+        printLoggingText("Start receive Data...");
+        final HandlerExecutor mainExecutor = new HandlerExecutor(Looper.getMainLooper());
+        for (LaunchPadConnection launchPadConnection : launchPadConnections) {
+            launchPadConnection.enableListenerDataProcess();
+            launchPadConnection.registerOnReceiveLaunchPadEvents(new PadLogger(launchPadConnection), mainExecutor);
         }
+    }
 
-        receiveDataThread = new ReceiveDataThread();
+    private void releaseConnections() {
+        pendingDeviceIds.clear();
 
-        printLoggingText("Start Thread receive Data...");
-        receiveDataThread.start();
+        for (Map.Entry<String, LaunchPadConnection> connection : launchpadDriver.getConnections().entrySet()) {
+            if (launchPadConnections.contains(connection.getValue())) {
+                launchpadDriver.releaseConnection(connection.getKey());
+            }
+        }
+        launchPadConnections.clear();
     }
 
     private void clearLogging() {
@@ -177,122 +199,35 @@ public class MainActivity extends AppCompatActivity {
         logging.setText(loggingText);
     }
 
-    private String formatUsbDevice(@NonNull UsbDevice device) {
-        final String str = device.toString();
-        StringBuilder sb = new StringBuilder();
-
-        int nbTab = 0;
-        for (int i = 0; i < str.length(); i++) {
-            final char charAt = str.charAt(i);
-
-            if (charAt == ']' || charAt == '[') {
-                nbTab += charAt == ']' ? -1 : 1;
-                int forNbTab = charAt == ']' ? nbTab : nbTab - 1;
+    /**
+     * Print the events of its Launchpad and light its pressed pads.
+     */
+    private class PadLogger implements LaunchPadConnection.OnReceiveLaunchPadListener {
 
-                sb.append('\n');
-                for (int j = 0; j < forNbTab; j++) {
-                    sb.append("    ");
-                }
-            }
+        private final LaunchPadConnection launchPadConnection;
 
-            if (charAt != '\n') {
-                sb.append(charAt);
-            }
-
-            if (charAt == ',' || charAt == ']' || charAt == '[') {
-                sb.append('\n');
-                for (int j = 0; j < nbTab; j++) {
-                    sb.append("    ");
-                }
-            }
+        private PadLogger(LaunchPadConnection launchPadConnection) {
+            this.launchPadConnection = launchPadConnection;
         }
 
-        return sb.toString();
-    }
-
-    private void enableDeviceConnection(UsbDevice device) {
-        usbDevice = device;
-        usbInterface = device.getInterface(0);
-
-        final UsbEndpoint endpoint0 = usbInterface.getEndpoint(0);
-        final UsbEndpoint endpoint1 = usbInterface.getEndpoint(1);
-        if (endpoint0.getDirection() == UsbConstants.USB_DIR_IN) {
-            inEndpoint = endpoint0;
-            outEndpoint = endpoint1;
-        } else {
-            outEndpoint = endpoint0;
-            inEndpoint = endpoint1;
-        }
-
-        usbDeviceConnection = usbManager.openDevice(usbDevice);
-        usbDeviceConnection.claimInterface(usbInterface, true);
-
-        catchDeviceBtn.setEnabled(false);
-        sendDataBtn.setEnabled(true);
-        receiveDataBtn.setEnabled(true);
-    }
-
-    private class ReceiveDataThread extends Thread {
-
-        /**
-         * The refresh interval in milliseconds.
-         */
-        private final long REFRESH_INTERVAL = 0;
-
-        private boolean isRunning;
-
-        private boolean isInterrupted;
-
-        private int color = 3;
-
         @Override
-        public void run() {
-            isRunning = true;
-            super.run();
-            while (!isInterrupted() && !isInterrupted) {
-                try {
-                    Thread.sleep(REFRESH_INTERVAL);
-                    if (isRunning) {
-                        final byte[] recordIn = new byte[inEndpoint.getMaxPacketSize()];
-                        final int receivedLength = usbDeviceConnection.bulkTransfer(inEndpoint, recordIn,
-                                recordIn.length, 0);
-
-                        if(receivedLength >= 2 && receivedLength%2 == 0){
-                            for (int i = 0; i < receivedLength; i+=2) {
-                                if(recordIn[i+1] == 127){
-                                    final byte[] sendOut = new byte[]{(byte)144, recordIn[i], (byte)color, 0, 0, 0, 0, 0};
-                                    usbDeviceConnection.bulkTransfer(outEndpoint, sendOut, sendOut.length, 0);
-                                } else if (recordIn[i+1] == 0){
-                                    final byte[] sendOut = new byte[]{(byte)144, recordIn[i], 0, 0, 0, 0, 0, 0};
-                                    usbDeviceConnection.bulkTransfer(outEndpoint, sendOut, sendOut.length, 0);
-                                }
-                            }
-                        }
-
-
-                        if (receivedLength > -1) {
-                            runOnUiThread(new Runnable() {
-                                @Override
-                                public void run() {
-                                    printLoggingText("nbData : " + receivedLength + "Data : " + Arrays.toString(recordIn) + " color : " + color);
-                                }
-                            });
-                        }
-                    }
-                } catch (InterruptedException e) {
-                    isInterrupted = true;
-                }
-            }
+        public void OnReceiveTopControlEvent(ControlTopPad controlTopPad, boolean isDown) {
+            printLoggingText(launchPadConnection.getDeviceName() + " top : " + controlTopPad + " down : " + isDown);
         }
 
-        public void setIsRunning(boolean isRunning) {
-            this.isRunning = isRunning;
+        @Override
+        public void OnReceiveRightControlEvent(ControlRightPad controlRightPad, boolean isDown) {
+            printLoggingText(launchPadConnection.getDeviceName() + " right : " + controlRightPad + " down : " + isDown);
         }
 
-        public void stopThread() {
-            setIsRunning(false);
-            isInterrupted = true;
-            interrupt();
+        @Override
+        public void OnReceiveMainPadEvent(int padId, boolean isDown) {
+            if (isDown) {
+                launchPadConnection.enablePad(padId, PadColor.Red.POWER3, PadColor.Green.DISABLE);
+            } else {
+                launchPadConnection.disablePad(padId);
+            }
+            printLoggingText(launchPadConnection.getDeviceName() + " pad : " + padId + " down : " + isDown);
         }
     }
 }
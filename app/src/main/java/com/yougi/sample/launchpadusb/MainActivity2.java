@@ -5,7 +5,6 @@ import android.content.Context;
 import android.hardware.usb.UsbManager;
 import android.os.Bundle;
 import android.os.Handler;
-import android.support.annotation.Nullable;
 import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
 import android.view.View;
@@ -18,11 +17,13 @@ import com.yougi.launchpadusb.LaunchPadConnection;
 import com.yougi.launchpadusb.LaunchpadDriver;
 import com.yougi.launchpadusb.PadColor;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Set;
+import java.util.Map;
 
 @SuppressLint("SetTextI18n")
-public class MainActivity2 extends AppCompatActivity implements View.OnClickListener, LaunchpadDriver.LaunchPadDriverObserver, LaunchPadConnection.OnReceiveLaunchPadListener {
+public class MainActivity2 extends AppCompatActivity implements View.OnClickListener, LaunchpadDriver.LaunchPadDriverObserver {
 
     private static final String TAG = "MainActivity2";
 
@@ -37,8 +38,15 @@ public class MainActivity2 extends AppCompatActivity implements View.OnClickList
     private LaunchpadDriver launchpadDriver;
     private UsbManager usbManager;
 
-    @Nullable
-    private LaunchPadConnection launchPadConnection;
+    /**
+     * Every connected Launchpad, each one echoes its own pads.
+     */
+    private final ArrayList<PadEcho> padEchoes = new ArrayList<>();
+
+    /**
+     * The detected devices waiting for their connection, asked one after the other.
+     */
+    private final ArrayDeque<String> pendingDeviceIds = new ArrayDeque<>();
 
     private boolean pendingRequestConnection;
 
@@ -76,10 +84,10 @@ public class MainActivity2 extends AppCompatActivity implements View.OnClickList
         super.onStart();
         launchpadDriver.addLaunchPadDriverObserver(this);
 
-        if(launchPadConnection != null){
-            launchPadConnection.enableSendDataProcess();
-            launchPadConnection.enableListenerDataProcess();
-            launchPadConnection.registerOnReceiveLaunchPadEvents(this);
+        for (PadEcho padEcho : padEchoes) {
+            padEcho.launchPadConnection.enableSendDataProcess();
+            padEcho.launchPadConnection.enableListenerDataProcess();
+            padEcho.launchPadConnection.registerOnReceiveLaunchPadEvents(padEcho);
         }
     }
 
@@ -87,10 +95,10 @@ public class MainActivity2 extends AppCompatActivity implements View.OnClickList
     protected void onStop() {
         launchpadDriver.removeLaunchPadDriverObserver(this);
 
-        if(launchPadConnection != null){
-            this.launchPadConnection.unregisterOnReceiveLaunchPadEvents(this);
-            launchPadConnection.disableSendDataProcess();
-            launchPadConnection.disableListenerDataProcess();
+        for (PadEcho padEcho : padEchoes) {
+            padEcho.launchPadConnection.unregisterOnReceiveLaunchPadEvents(padEcho);
+            padEcho.launchPadConnection.disableSendDataProcess();
+            padEcho.launchPadConnection.disableListenerDataProcess();
         }
 
         super.onStop();
@@ -119,7 +127,6 @@ public class MainActivity2 extends AppCompatActivity implements View.OnClickList
     public void onRequestConnectionOnDevice(String deviceId, String deviceName) {
         Log.d(TAG, "onRequestConnectionOnDevice() called with: deviceId = [" + deviceId + "], deviceName = [" + deviceName + "]");
         pendingRequestConnection = true;
-        launchPadConnection = null;
 
         deviceNameTxt.setText(deviceName);
         deviceStatusTxt.setText("Ask Connection...");
@@ -129,109 +136,83 @@ public class MainActivity2 extends AppCompatActivity implements View.OnClickList
     @Override
     public void onConnectionSucceeded(LaunchPadConnection launchPadConnection) {
         Log.d(TAG, "onConnectionSucceeded() called with: launchPadConnection = [" + launchPadConnection + "]");
-        pendingRequestConnection = false;
-        this.launchPadConnection = launchPadConnection;
-        this.launchPadConnection.registerOnReceiveLaunchPadEvents(this);
+        final PadEcho padEcho = new PadEcho(launchPadConnection);
+        padEchoes.add(padEcho);
+        launchPadConnection.registerOnReceiveLaunchPadEvents(padEcho);
         launchPadConnection.enableSendDataProcess();
         launchPadConnection.enableListenerDataProcess();
 
         deviceNameTxt.setText(launchPadConnection.getDeviceName());
-        deviceStatusTxt.setText("Connection Succeded");
-        refreshUIState();
+        deviceStatusTxt.setText(padEchoes.size() + " Connection Succeded");
+        askNextDeviceConnection();
     }
 
     @Override
     public void onConnectionFailed(String deviceId, String deviceName) {
         Log.d(TAG, "onConnectionFailed() called with: deviceId = [" + deviceId + "], deviceName = [" + deviceName + "]");
-        pendingRequestConnection = false;
-        launchPadConnection = null;
 
         deviceNameTxt.setText(deviceName);
         deviceStatusTxt.setText("Connection Failed...");
-        refreshUIState();
-    }
-
-    @Override
-    public void OnReceiveTopControlEvent(ControlTopPad controlTopPad, boolean isDown) {
-        if(launchPadConnection == null){
-            return;
-        }
-
-        if(isDown)
-            launchPadConnection.enablePadTopControl(controlTopPad, PadColor.Red.DISABLE, PadColor.Green.POWER3);
-        else
-            launchPadConnection.disablePadTopControl(controlTopPad);
-    }
-
-    @Override
-    public void OnReceiveRightControlEvent(ControlRightPad controlRightPad, boolean isDown) {
-        if(launchPadConnection == null){
-            return;
-        }
-
-        if(isDown)
-            launchPadConnection.enablePadRightControl(controlRightPad, PadColor.Red.DISABLE, PadColor.Green.POWER3);
-        else
-            launchPadConnection.disablePadRightControl(controlRightPad);
-    }
-
-    @Override
-    public void OnReceiveMainPadEvent(int padId, boolean isDown) {
-        if(launchPadConnection == null){
-            return;
-        }
-
-        if(isDown)
-            launchPadConnection.enablePad(padId, PadColor.Red.DISABLE, PadColor.Green.POWER3);
-        else
-            launchPadConnection.disablePad(padId);
+        askNextDeviceConnection();
     }
 
     private void clickOnConnectDevice(){
-        if(launchPadConnection != null){
-            throw new IllegalStateException("Cannot launch connection process with already pad connected.");
-        }
-
         final HashMap<String, String> devicesDetected = launchpadDriver.getDevicesDetected(usbManager);
-        final Set<String> deviceNameKeys = devicesDetected.keySet();
 
-        if (deviceNameKeys.size() == 0) {
+        if (devicesDetected.size() == 0) {
             Log.d(TAG, "No Device Detected...");
             deviceNameTxt.setText("No Device Detected...");
             return;
-        } else if (deviceNameKeys.size() > 1) {
-            Log.d(TAG, "Too Many Device Detected...");
-            deviceNameTxt.setText("Too Many Device Detected...");
-            return;
         }
 
-        final String key = deviceNameKeys.iterator().next();
-        final String deviceDescription = devicesDetected.get(key);
-        Log.d(TAG, "Device Detected key -> :" + key + " value -> " + deviceDescription);
-        deviceNameTxt.setText(deviceDescription);
+        for (Map.Entry<String, String> deviceDetected : devicesDetected.entrySet()) {
+            final String key = deviceDetected.getKey();
+            Log.d(TAG, "Device Detected key -> :" + key + " value -> " + deviceDetected.getValue());
+            if (launchpadDriver.getConnection(key) == null) {
+                pendingDeviceIds.add(key);
+            }
+        }
+
+        deviceNameTxt.setText(devicesDetected.size() + " Device Detected");
         deviceStatusTxt.setText("Not Connected");
+        askNextDeviceConnection();
+    }
+
+    /**
+     * The permission of the devices is asked one device at a time, once the previous one is answered.
+     */
+    private void askNextDeviceConnection() {
+        String key;
+        while ((key = pendingDeviceIds.poll()) != null) {
+            final boolean askConnect = launchpadDriver.askDeviceConnectionAsync(getApplicationContext(), usbManager, key);
+            Log.d(TAG, "Ask Connection to : " + key + " sended : " + askConnect);
+            if (askConnect) {
+                return;
+            }
+        }
 
-        final boolean askConnect = launchpadDriver.askDeviceConnectionAsync(getApplicationContext(), usbManager, key);
-        Log.d(TAG, "Ask Connection to : " + key + " sended : " + askConnect);
+        pendingRequestConnection = false;
+        refreshUIState();
     }
 
     private void clickOnReleaseDevice(){
-        if(launchPadConnection == null){
+        if(padEchoes.isEmpty()){
             throw new IllegalStateException("Cannot release device without connected device...");
         }
 
-        final String deviceName = launchPadConnection.getDeviceName();
-        //launchPadConnection.releaseDevice();
-        launchPadConnection = null;
+        for (Map.Entry<String, LaunchPadConnection> connection : launchpadDriver.getConnections().entrySet()) {
+            launchpadDriver.releaseConnection(connection.getKey());
+        }
+        padEchoes.clear();
 
-        deviceNameTxt.setText(deviceName);
+        deviceNameTxt.setText("N/A");
         deviceStatusTxt.setText("Connection Released");
         refreshUIState();
     }
 
 
     private void launchTestLaunchpadProcess() {
-        if(launchPadConnection == null){
+        if(padEchoes.isEmpty()){
             throw new IllegalStateException("Cannot launch test process without connected device...");
         }
 
@@ -244,8 +225,13 @@ public class MainActivity2 extends AppCompatActivity implements View.OnClickList
 
             @Override
             public void run() {
-                if(nbExecuted > 0) {
-                    launchPadConnection.disablePad((nbExecuted-1) % 8);
+                for (PadEcho padEcho : padEchoes) {
+                    if(nbExecuted > 0) {
+                        padEcho.launchPadConnection.disablePad((nbExecuted-1) % 8);
+                    }
+                    if(nbExecuted < NB_ITERATION){
+                        padEcho.launchPadConnection.enablePad(nbExecuted%8, PadColor.Red.DISABLE, PadColor.Green.POWER3);
+                    }
                 }
 
                 if(nbExecuted >= NB_ITERATION){
@@ -253,8 +239,6 @@ public class MainActivity2 extends AppCompatActivity implements View.OnClickList
                     return;
                 }
 
-                launchPadConnection.enablePad(nbExecuted%8, PadColor.Red.DISABLE, PadColor.Green.POWER3);
-
                 nbExecuted++;
                 //handler.post(this);
                 handler.postDelayed(this, 40);
@@ -268,15 +252,52 @@ public class MainActivity2 extends AppCompatActivity implements View.OnClickList
             connectDeviceBtn.setEnabled(false);
             releaseDeviceBtn.setEnabled(false);
             testDeviceBtn.setEnabled(false);
-        } else if (launchPadConnection == null) {
+        } else if (padEchoes.isEmpty()) {
             connectDeviceBtn.setEnabled(true);
             releaseDeviceBtn.setEnabled(false);
             testDeviceBtn.setEnabled(false);
         } else {
-            connectDeviceBtn.setEnabled(false);
+            // the Launchpads plugged later can be connected too
+            connectDeviceBtn.setEnabled(true);
             releaseDeviceBtn.setEnabled(true);
             testDeviceBtn.setEnabled(true);
 
         }
     }
+
+    /**
+     * Light the pads pressed on its own Launchpad.
+     */
+    private static final class PadEcho implements LaunchPadConnection.OnReceiveLaunchPadListener {
+
+        private final LaunchPadConnection launchPadConnection;
+
+        private PadEcho(LaunchPadConnection launchPadConnection) {
+            this.launchPadConnection = launchPadConnection;
+        }
+
+        @Override
+        public void OnReceiveTopControlEvent(ControlTopPad controlTopPad, boolean isDown) {
+            if(isDown)
+                launchPadConnection.enablePadTopControl(controlTopPad, PadColor.Red.DISABLE, PadColor.Green.POWER3);
+            else
+                launchPadConnection.disablePadTopControl(controlTopPad);
+        }
+
+        @Override
+        public void OnReceiveRightControlEvent(ControlRightPad controlRightPad, boolean isDown) {
+            if(isDown)
+                launchPadConnection.enablePadRightControl(controlRightPad, PadColor.Red.DISABLE, PadColor.Green.POWER3);
+            else
+                launchPadConnection.disablePadRightControl(controlRightPad);
+        }
+
+        @Override
+        public void OnReceiveMainPadEvent(int padId, boolean isDown) {
+            if(isDown)
+                launchPadConnection.enablePad(padId, PadColor.Red.DISABLE, PadColor.Green.POWER3);
+            else
+                launchPadConnection.disablePad(padId);
+        }
+    }
 }
@@ -0,0 +1,55 @@
+package com.yougi.launchpadusb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the public led api for the caller, with the send thread of the connection flushing to a transport
+ * which discards the packets.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConnectionWriteBenchmark {
+
+    private static final PadColor.Red[] REDS = PadColor.Red.values();
+
+    private LaunchPadConnection launchPadConnection;
+    private int step;
+
+    @Setup
+    public void setUp() {
+        final LoopbackTransport transport = new LoopbackTransport();
+        transport.setLoopbackEnabled(false);
+        launchPadConnection = new LaunchPadConnection(transport);
+        launchPadConnection.enableSendDataProcess();
+        // the writes are refused until the send thread has started running
+        while (true) {
+            try {
+                launchPadConnection.enablePad(0, PadColor.Red.DISABLE, PadColor.Green.DISABLE);
+                return;
+            } catch (IllegalStateException e) {
+                Thread.yield();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        launchPadConnection.close();
+    }
+
+    @Benchmark
+    public void enablePad() {
+        step++;
+        launchPadConnection.enablePad(step % PadIndex.GRID_COUNT, REDS[step % REDS.length], PadColor.Green.DISABLE);
+    }
+}
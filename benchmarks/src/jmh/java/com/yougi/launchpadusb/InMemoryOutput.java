@@ -0,0 +1,24 @@
+package com.yougi.launchpadusb;
+
+/**
+ * Output of the packet writer which accepts every packet at once, so the benchmarks measure the library and
+ * not the usb link.
+ */
+final class InMemoryOutput implements MidiPacketWriter.Output {
+
+    private long checksum;
+
+    @Override
+    public int transfer(byte[] buffer, int length) {
+        long sum = checksum;
+        for (int i = 0; i < length; i++) {
+            sum = 31 * sum + buffer[i];
+        }
+        checksum = sum;
+        return length;
+    }
+
+    long getChecksum() {
+        return checksum;
+    }
+}
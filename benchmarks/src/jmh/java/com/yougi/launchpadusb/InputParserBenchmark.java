@@ -0,0 +1,80 @@
+package com.yougi.launchpadusb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of input packets as the receive thread does, on a recording of presses and releases of the grid,
+ * the right column and the top row, with running status and messages split between packets.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InputParserBenchmark {
+
+    private static final int PACKET_SIZE = 8;
+
+    private byte[][] packets;
+    private int[] packetLengths;
+    private LaunchpadInputParser inputParser;
+    private CountingSink sink;
+
+    @Setup
+    public void setUp() {
+        final ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        for (int cell = 0; cell < PadIndex.COUNT; cell++) {
+            recording.write(LaunchpadProtocol.statusOf(cell));
+            recording.write(LaunchpadProtocol.keyOf(cell));
+            recording.write(127);
+            // the release uses the running status of the press
+            recording.write(LaunchpadProtocol.keyOf(cell));
+            recording.write(0);
+        }
+
+        final byte[] bytes = recording.toByteArray();
+        final int packetCount = (bytes.length + PACKET_SIZE - 1) / PACKET_SIZE;
+        packets = new byte[packetCount][PACKET_SIZE];
+        packetLengths = new int[packetCount];
+        for (int i = 0; i < packetCount; i++) {
+            packetLengths[i] = Math.min(PACKET_SIZE, bytes.length - i * PACKET_SIZE);
+            System.arraycopy(bytes, i * PACKET_SIZE, packets[i], 0, packetLengths[i]);
+        }
+
+        inputParser = new LaunchpadInputParser();
+        sink = new CountingSink();
+    }
+
+    /**
+     * One operation parses the whole recording, 160 events.
+     */
+    @Benchmark
+    public int parseRecording() {
+        for (int i = 0; i < packets.length; i++) {
+            inputParser.parse(packets[i], packetLengths[i], sink);
+        }
+        return sink.count;
+    }
+
+    private static final class CountingSink implements LaunchpadInputParser.EventSink {
+
+        private int count;
+
+        @Override
+        public void onPadEvent(int cell, boolean isDown) {
+            count += isDown ? cell : 1;
+        }
+
+        @Override
+        public void onTextScrolled() {
+            count++;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.yougi.launchpadusb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the led command queue, with producers writing while the consumer drains like the send thread.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LedCommandRingBenchmark {
+
+    @Param({"BLOCK", "DROP_OLDEST", "COALESCE"})
+    public OverflowPolicy overflowPolicy;
+
+    private LedCommandRing ledCommandRing;
+    private LedCommandRing.CommandHandler countingHandler;
+    private long drainedCount;
+
+    @Setup
+    public void setUp() {
+        ledCommandRing = new LedCommandRing(LedCommandRing.DEFAULT_CAPACITY, overflowPolicy);
+        countingHandler = new LedCommandRing.CommandHandler() {
+            @Override
+            public void onWrite(int cell, byte color) {
+                drainedCount++;
+            }
+
+            @Override
+            public boolean onFrameCommand(int type) {
+                return true;
+            }
+
+            @Override
+            public void onOverlay(int cell, byte color) {
+                drainedCount++;
+            }
+        };
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+        int cell;
+    }
+
+    /**
+     * One operation is one accepted write : a refused offer is retried, like a writer waiting for the send
+     * thread, so a full queue with the {@link OverflowPolicy#BLOCK} policy lowers the throughput.
+     */
+    @Benchmark
+    @Group("ring")
+    @GroupThreads(2)
+    public void offer(Producer producer) {
+        producer.cell = (producer.cell + 1) % PadIndex.COUNT;
+        while (!ledCommandRing.offerWrite(producer.cell, (byte) producer.cell)) {
+            Thread.yield();
+        }
+    }
+
+    @Benchmark
+    @Group("ring")
+    @GroupThreads(1)
+    public int drain() {
+        return ledCommandRing.drain(countingHandler);
+    }
+}
@@ -0,0 +1,71 @@
+package com.yougi.launchpadusb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding of the led writes, from the queue of the commands to the usb packets, as done by the send thread
+ * for {@link LaunchPadConnection#enablePad(int, PadColor.Red, PadColor.Green)} and
+ * {@link LaunchPadConnection#setFrame(byte[])}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LedEncodingBenchmark {
+
+    private static final PadColor.Red[] REDS = PadColor.Red.values();
+    private static final PadColor.Green[] GREENS = PadColor.Green.values();
+
+    /**
+     * Number of leds changed between two flushes, a full frame uses the rapid led update.
+     */
+    @Param({"1", "8", "80"})
+    public int changedCount;
+
+    private LedCommandRing ledCommandRing;
+    private LedFrameRenderer ledFrameRenderer;
+    private InMemoryOutput output;
+    private int step;
+
+    @Setup
+    public void setUp() {
+        output = new InMemoryOutput();
+        ledCommandRing = new LedCommandRing(LedCommandRing.DEFAULT_CAPACITY, OverflowPolicy.BLOCK);
+        ledFrameRenderer = new LedFrameRenderer(ledCommandRing, new LedCommandRing(64, OverflowPolicy.COALESCE),
+                new MidiPacketWriter(output, 64),
+                new AnimationPlayer(new SendScheduler(SendPolicy.IMMEDIATE)));
+    }
+
+    @Benchmark
+    public long writeAndFlush() {
+        // a new color each time, otherwise the shadow copy skips the writes
+        step++;
+        for (int cell = 0; cell < changedCount; cell++) {
+            final int colorIndex = step + cell;
+            ledCommandRing.offerWrite(cell, PadColor.of(REDS[colorIndex % REDS.length],
+                    GREENS[(colorIndex / REDS.length) % GREENS.length]));
+        }
+        ledFrameRenderer.flush();
+        return output.getChecksum();
+    }
+
+    @Benchmark
+    public long writeFrameAndFlush() {
+        step++;
+        ledCommandRing.offerFrameCommand(LedCommandRing.TYPE_BEGIN_FRAME);
+        for (int cell = 0; cell < changedCount; cell++) {
+            ledCommandRing.offerWrite(cell, (byte) ((step + cell) & 0x33));
+        }
+        ledCommandRing.offerFrameCommand(LedCommandRing.TYPE_COMMIT_FRAME);
+        ledFrameRenderer.flush();
+        return output.getChecksum();
+    }
+}
@@ -0,0 +1,91 @@
+package com.yougi.launchpadusb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fan out of the events of a packet to the listeners, with an executor running the delivery on the calling
+ * thread, so one operation measures the queueing of the receive thread and the delivery.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ListenerFanoutBenchmark {
+
+    private static final int EVENTS_PER_PACKET = 8;
+
+    @Param({"1", "4", "16"})
+    public int listenerCount;
+
+    @Param({"false", "true"})
+    public boolean isBatched;
+
+    private ListenerDispatcher listenerDispatcher;
+    private long deliveredCount;
+    private int step;
+
+    @Setup
+    public void setUp() {
+        final Executor directExecutor = new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();
+            }
+        };
+
+        listenerDispatcher = new ListenerDispatcher();
+        for (int i = 0; i < listenerCount; i++) {
+            if (isBatched) {
+                listenerDispatcher.register(new ListenerDispatcher.BatchRegistration(
+                        new LaunchPadConnection.OnReceiveLaunchPadBatchListener() {
+                            @Override
+                            public void onReceiveLaunchPadEvents(int[] padIndexes, boolean[] isDown,
+                                                                 long[] timestampsNanos, int count) {
+                                deliveredCount += count;
+                            }
+                        }, directExecutor));
+            } else {
+                listenerDispatcher.register(new ListenerDispatcher.PadEventRegistration(
+                        new CountingListener(), directExecutor));
+            }
+        }
+    }
+
+    @Benchmark
+    public long dispatchPacket() {
+        final long timestampNanos = System.nanoTime();
+        for (int i = 0; i < EVENTS_PER_PACKET; i++) {
+            listenerDispatcher.dispatch((step + i) % PadIndex.COUNT, (i & 1) == 0, timestampNanos);
+        }
+        step++;
+        listenerDispatcher.schedule();
+        return deliveredCount;
+    }
+
+    private final class CountingListener implements LaunchPadConnection.OnReceiveLaunchPadListener {
+
+        @Override
+        public void OnReceiveMainPadEvent(int padId, boolean isPressed) {
+            deliveredCount++;
+        }
+
+        @Override
+        public void OnReceiveTopControlEvent(ControlTopPad controlTopPad, boolean isPressed) {
+            deliveredCount++;
+        }
+
+        @Override
+        public void OnReceiveRightControlEvent(ControlRightPad controlRightPad, boolean isPressed) {
+            deliveredCount++;
+        }
+    }
+}
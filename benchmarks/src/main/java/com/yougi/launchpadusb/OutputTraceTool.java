@@ -0,0 +1,30 @@
+package com.yougi.launchpadusb;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Command line of the {@link OutputTraceAnalyzer}, run by the analyzeTrace task of this module : prints the
+ * analysis of a trace, or the diff of two traces.
+ */
+public final class OutputTraceTool {
+
+    private OutputTraceTool() {
+        // static access
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("usage : OutputTraceTool trace [other trace]");
+            System.exit(2);
+            return;
+        }
+
+        final OutputTraceAnalyzer first = OutputTraceAnalyzer.analyze(new File(args[0]));
+        if (args.length == 1) {
+            System.out.print(first);
+        } else {
+            System.out.print(OutputTraceAnalyzer.diff(first, OutputTraceAnalyzer.analyze(new File(args[1]))));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.yougi.launchpadusb;
+
+/**
+ * An animation playing on a connection, returned by {@link LaunchPadConnection#playAnimation(LaunchpadAnimation)}.
+ * <p>
+ * The frames are drawn by the send process when their time comes. A frame whose time passed before it could be
+ * drawn is skipped and the animation continues with the frame of the current time, so a slow device or a busy
+ * send process drops frames instead of slowing the animation down.
+ */
+public final class AnimationPlayback {
+
+    private final LaunchpadAnimation animation;
+    private final AnimationPlayer player;
+
+    // written by the send process only
+    private long startNanos;
+    private long lastFrameNumber = -1;
+
+    private volatile boolean isRunning = true;
+    private volatile long drawnFrameCount;
+    private volatile long skippedFrameCount;
+    private volatile long lastDrawNanos;
+    private volatile long startedNanos;
+
+    AnimationPlayback(LaunchpadAnimation animation, AnimationPlayer player, long startNanos) {
+        this.animation = animation;
+        this.player = player;
+        this.startNanos = startNanos;
+        this.startedNanos = startNanos;
+    }
+
+    public LaunchpadAnimation getAnimation() {
+        return animation;
+    }
+
+    /**
+     * @return false once stopped or, without loop, once its last frame is drawn.
+     */
+    public boolean isRunning() {
+        return isRunning;
+    }
+
+    /**
+     * Stop the animation, its leds keep the colors of the last drawn frame.
+     */
+    public void stop() {
+        player.stop(this);
+    }
+
+    public long getDrawnFrameCount() {
+        return drawnFrameCount;
+    }
+
+    /**
+     * @return the frames not drawn because their time passed before the send process could draw them.
+     */
+    public long getSkippedFrameCount() {
+        return skippedFrameCount;
+    }
+
+    /**
+     * @return the number of frames drawn per second since the start, up to the last drawn frame.
+     */
+    public double getAchievedFps() {
+        final long drawn = drawnFrameCount;
+        final long elapsed = lastDrawNanos - startedNanos;
+        if (drawn < 2 || elapsed <= 0) {
+            return 0;
+        }
+        // the first frame is drawn at the start
+        return (drawn - 1) * 1e9 / elapsed;
+    }
+
+    void markStopped() {
+        isRunning = false;
+    }
+
+    /**
+     * Write the frame of the current time in the buffer if it isn't drawn yet.
+     *
+     * @return the time of the next frame, or {@link Long#MAX_VALUE} after the last frame of an animation without
+     * loop.
+     */
+    long draw(long now, LedFrameBuffer ledFrameBuffer) {
+        final int frameCount = animation.frames.length;
+        long frameNumber = (now - startNanos) / animation.frameIntervalNanos;
+        boolean isLastFrame = false;
+        if (!animation.isLooping && frameNumber >= frameCount - 1) {
+            frameNumber = frameCount - 1;
+            isLastFrame = true;
+        }
+
+        if (frameNumber != lastFrameNumber) {
+            // the requested colors hold the previous frame, except the cells written by the application since
+            final boolean isFirstFrame = lastFrameNumber < 0;
+            final int[] cells = animation.regionCells;
+            final byte[] colors = animation.frames[(int) (frameNumber % frameCount)];
+            for (int i = 0; i < cells.length; i++) {
+                if (isFirstFrame || ledFrameBuffer.getRequestedColor(cells[i]) != colors[i]) {
+                    ledFrameBuffer.write(cells[i], colors[i]);
+                }
+            }
+            if (!isFirstFrame) {
+                skippedFrameCount += frameNumber - lastFrameNumber - 1;
+            }
+
+            lastFrameNumber = frameNumber;
+            lastDrawNanos = now;
+            drawnFrameCount++;
+        }
+
+        if (isLastFrame) {
+            return Long.MAX_VALUE;
+        }
+
+        // keep the frame numbers small for the long loops
+        if (animation.isLooping && frameNumber >= frameCount) {
+            final long loops = frameNumber / frameCount;
+            startNanos += loops * frameCount * animation.frameIntervalNanos;
+            lastFrameNumber -= loops * frameCount;
+            frameNumber = lastFrameNumber;
+        }
+        return startNanos + (frameNumber + 1) * animation.frameIntervalNanos;
+    }
+}
@@ -0,0 +1,105 @@
+package com.yougi.launchpadusb;
+
+/**
+ * The animations playing on a connection. The send process draws them in the {@link LedFrameBuffer} between
+ * the drain of the led commands and the collect of the changes, then arms the {@link SendScheduler} at the
+ * time of the next frame, so the animations are paced by the send pipeline without thread of their own.
+ */
+final class AnimationPlayer {
+
+    private static final AnimationPlayback[] NO_PLAYBACK = new AnimationPlayback[0];
+
+    private final SendScheduler sendScheduler;
+
+    // copy on write, read by the send process without lock
+    private volatile AnimationPlayback[] playbacks = NO_PLAYBACK;
+
+    AnimationPlayer(SendScheduler sendScheduler) {
+        this.sendScheduler = sendScheduler;
+    }
+
+    AnimationPlayback play(LaunchpadAnimation animation) {
+        final AnimationPlayback playback;
+        synchronized (this) {
+            for (AnimationPlayback playing : playbacks) {
+                if (playing.getAnimation().overlaps(animation)) {
+                    throw new IllegalStateException("You cannot play an animation on the region of a playing one");
+                }
+            }
+
+            final long now = System.nanoTime();
+            playback = new AnimationPlayback(animation, this, now);
+            final AnimationPlayback[] newPlaybacks = new AnimationPlayback[playbacks.length + 1];
+            System.arraycopy(playbacks, 0, newPlaybacks, 0, playbacks.length);
+            newPlaybacks[playbacks.length] = playback;
+            playbacks = newPlaybacks;
+        }
+
+        sendScheduler.wakeAt(System.nanoTime());
+        return playback;
+    }
+
+    synchronized void stop(AnimationPlayback playback) {
+        playback.markStopped();
+
+        final AnimationPlayback[] current = playbacks;
+        int index = -1;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == playback) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            return;
+        }
+
+        if (current.length == 1) {
+            playbacks = NO_PLAYBACK;
+            return;
+        }
+
+        final AnimationPlayback[] newPlaybacks = new AnimationPlayback[current.length - 1];
+        System.arraycopy(current, 0, newPlaybacks, 0, index);
+        System.arraycopy(current, index + 1, newPlaybacks, index, current.length - index - 1);
+        playbacks = newPlaybacks;
+    }
+
+    synchronized void stopAll() {
+        for (AnimationPlayback playback : playbacks) {
+            playback.markStopped();
+        }
+        playbacks = NO_PLAYBACK;
+    }
+
+    /**
+     * Called by the send process, draw the due frame of every animation and arm the scheduler for the next one.
+     */
+    void draw(LedFrameBuffer ledFrameBuffer) {
+        final AnimationPlayback[] current = playbacks;
+        if (current.length == 0) {
+            return;
+        }
+
+        final long now = System.nanoTime();
+        boolean hasNextFrame = false;
+        long nextFrameNanos = 0;
+        for (AnimationPlayback playback : current) {
+            if (!playback.isRunning()) {
+                continue;
+            }
+
+            final long frameNanos = playback.draw(now, ledFrameBuffer);
+            if (frameNanos == Long.MAX_VALUE) {
+                stop(playback);
+            } else if (!hasNextFrame || frameNanos - nextFrameNanos < 0) {
+                hasNextFrame = true;
+                nextFrameNanos = frameNanos;
+            }
+        }
+
+        if (hasNextFrame) {
+            sendScheduler.wakeAt(nextFrameNanos);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.yougi.launchpadusb;
+
+/**
+ * Snapshot of the delivery of the events to one listener, see
+ * {@link LaunchPadConnection#getDispatchStats(Object)}.
+ */
+public final class DispatchStats {
+
+    private final long deliveredEventCount;
+    private final long droppedEventCount;
+    private final int pendingEventCount;
+    private final long lastLagNanos;
+    private final long maxLagNanos;
+
+    DispatchStats(long deliveredEventCount, long droppedEventCount, int pendingEventCount, long lastLagNanos,
+                  long maxLagNanos) {
+        this.deliveredEventCount = deliveredEventCount;
+        this.droppedEventCount = droppedEventCount;
+        this.pendingEventCount = pendingEventCount;
+        this.lastLagNanos = lastLagNanos;
+        this.maxLagNanos = maxLagNanos;
+    }
+
+    public long getDeliveredEventCount() {
+        return deliveredEventCount;
+    }
+
+    /**
+     * @return the number of events dropped because the queue of the listener was full.
+     */
+    public long getDroppedEventCount() {
+        return droppedEventCount;
+    }
+
+    public int getPendingEventCount() {
+        return pendingEventCount;
+    }
+
+    /**
+     * @return the time between the read of the last delivered event and its delivery, in nanoseconds.
+     */
+    public long getLastLagNanos() {
+        return lastLagNanos;
+    }
+
+    public long getMaxLagNanos() {
+        return maxLagNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "DispatchStats{delivered=" + deliveredEventCount + ", dropped=" + droppedEventCount
+                + ", pending=" + pendingEventCount + ", lastLagNanos=" + lastLagNanos
+                + ", maxLagNanos=" + maxLagNanos + '}';
+    }
+}
@@ -0,0 +1,116 @@
+package com.yougi.launchpadusb;
+
+import java.util.Arrays;
+
+/**
+ * Led feedback of the pads, applied by the receive thread itself with
+ * {@link LaunchPadConnection#setEchoRules(EchoRules)} : no listener, the echo goes straight to the
+ * {@link SendLane#INTERACTIVE} lane. Only the first echo after a flush takes the lock of the send scheduler to
+ * wake up the send thread, the next ones find the flush already armed.
+ * <p>
+ * The rules are compiled into one action per cell for the press and one for the release, so a pad event costs
+ * two array reads. When several rules cover a cell, the last one added wins.
+ * <p>
+ * The color of a held pad is shown over the color written by the application, which is kept : on release the
+ * pad shows the last color written by the application again, even if it changed meanwhile.
+ */
+public final class EchoRules {
+
+    static final int NO_ACTION = -1;
+    static final int RESTORE = -2;
+
+    private final int[] downColors;
+    private final int[] upActions;
+
+    private EchoRules(int[] downColors, int[] upActions) {
+        this.downColors = downColors;
+        this.upActions = upActions;
+    }
+
+    /**
+     * @return the color shown while the pad is held, or {@link #NO_ACTION}.
+     */
+    int downColorOf(int cell) {
+        return downColors[cell];
+    }
+
+    /**
+     * @return the color written on release, {@link #RESTORE} or {@link #NO_ACTION}.
+     */
+    int upActionOf(int cell) {
+        return upActions[cell];
+    }
+
+    public static final class Builder {
+
+        private final int[] downColors = new int[PadIndex.COUNT];
+        private final int[] upActions = new int[PadIndex.COUNT];
+
+        public Builder() {
+            Arrays.fill(downColors, NO_ACTION);
+            Arrays.fill(upActions, NO_ACTION);
+        }
+
+        /**
+         * Show a color while the pads are held, then their color written by the application.
+         *
+         * @param cells the pads, indexed by {@link PadIndex}.
+         */
+        public Builder whilePressed(byte color, int... cells) {
+            checkColor(color);
+            for (int cell : checkCells(cells)) {
+                downColors[cell] = color;
+                upActions[cell] = RESTORE;
+            }
+            return this;
+        }
+
+        /**
+         * Show a color while the pads are held, then write another color on release, as if the application wrote
+         * it.
+         */
+        public Builder onPress(byte downColor, byte upColor, int... cells) {
+            checkColor(downColor);
+            checkColor(upColor);
+            for (int cell : checkCells(cells)) {
+                downColors[cell] = downColor;
+                upActions[cell] = upColor;
+            }
+            return this;
+        }
+
+        /**
+         * Remove the rules of the pads.
+         */
+        public Builder clear(int... cells) {
+            for (int cell : checkCells(cells)) {
+                downColors[cell] = NO_ACTION;
+                upActions[cell] = NO_ACTION;
+            }
+            return this;
+        }
+
+        public EchoRules build() {
+            return new EchoRules(downColors.clone(), upActions.clone());
+        }
+
+        private static void checkColor(byte color) {
+            if (color < 0) {
+                throw new IllegalArgumentException("this color isn't supported : " + color);
+            }
+        }
+
+        private static int[] checkCells(int[] cells) {
+            if (cells == null || cells.length == 0) {
+                throw new IllegalArgumentException("the cells in argument Cannot be null or empty");
+            }
+
+            for (int cell : cells) {
+                if (cell < 0 || cell >= PadIndex.COUNT) {
+                    throw new IllegalArgumentException("the cell " + cell + " isn't a valid pad index");
+                }
+            }
+            return cells;
+        }
+    }
+}
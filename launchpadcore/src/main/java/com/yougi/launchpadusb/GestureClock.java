@@ -0,0 +1,104 @@
+package com.yougi.launchpadusb;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single daemon thread waking up at the nearest long press deadline of every {@link PadGestureEngine}, so the
+ * number of threads doesn't grow with the number of connections.
+ * <p>
+ * The receive threads never take a lock to arm a deadline : they only unpark the clock when their deadline is
+ * before the planned wake up, or while the clock scans the engines and may have missed it.
+ */
+final class GestureClock implements Runnable {
+
+    private static final PadGestureEngine[] NO_ENGINE = new PadGestureEngine[0];
+
+    private static GestureClock instance;
+
+    private final Object engineLock = new Object();
+    private volatile PadGestureEngine[] engines = NO_ENGINE;
+
+    private final Thread thread;
+    private volatile boolean isScanning;
+    private volatile boolean hasWakeUp;
+    private volatile long wakeUpNanos;
+
+    private GestureClock() {
+        thread = new Thread(this, "LaunchpadGestureClock");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * @return the clock shared by the engines, started on the first call.
+     */
+    static synchronized GestureClock getInstance() {
+        if (instance == null) {
+            instance = new GestureClock();
+            instance.thread.start();
+        }
+
+        return instance;
+    }
+
+    void register(PadGestureEngine engine) {
+        synchronized (engineLock) {
+            final PadGestureEngine[] current = engines;
+            final PadGestureEngine[] updated = new PadGestureEngine[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = engine;
+            engines = updated;
+        }
+    }
+
+    void unregister(PadGestureEngine engine) {
+        synchronized (engineLock) {
+            final PadGestureEngine[] current = engines;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == engine) {
+                    final PadGestureEngine[] updated = new PadGestureEngine[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                    engines = updated;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Called by a receive thread after arming a deadline.
+     */
+    void wakeUpBefore(long deadlineNanos) {
+        if (isScanning || !hasWakeUp || deadlineNanos - wakeUpNanos < 0) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            isScanning = true;
+            final long now = System.nanoTime();
+            boolean hasDeadline = false;
+            long nextDeadline = 0;
+            for (PadGestureEngine engine : engines) {
+                final long deadline = engine.onClockTick(now);
+                if (deadline != PadGestureEngine.NO_DEADLINE && (!hasDeadline || deadline - nextDeadline < 0)) {
+                    hasDeadline = true;
+                    nextDeadline = deadline;
+                }
+            }
+
+            wakeUpNanos = nextDeadline;
+            hasWakeUp = hasDeadline;
+            isScanning = false;
+
+            // a deadline armed during the scan has unparked this thread, the park returns at once
+            if (hasDeadline) {
+                LockSupport.parkNanos(this, nextDeadline - System.nanoTime());
+            } else {
+                LockSupport.park(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.yougi.launchpadusb;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fake request queue without device, to run and test a {@link PipelinedTransport} on a plain JVM.
+ * <p>
+ * The queued reads wait for packets injected with {@link #inject(byte[], int)}, or for the written packets
+ * when the loopback is enabled. Like a device, the packets arriving without queued read are kept until the
+ * next read, up to {@link #BACKLOG_CAPACITY} packets. The writes complete at once, unless they are held with
+ * {@link #setWritesHeld(boolean)} to simulate a busy device.
+ */
+public final class InMemoryRequestQueue implements LaunchpadRequestQueue {
+
+    public static final int DEFAULT_PACKET_SIZE = 64;
+    public static final int BACKLOG_CAPACITY = 64;
+
+    private final int packetSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasCompletion = lock.newCondition();
+    private boolean isClosed;
+
+    private byte[][] readBuffers = new byte[8][];
+    private int[] pendingReads = new int[8];
+    private int pendingReadHead;
+    private int pendingReadCount;
+
+    private final byte[][] backlog;
+    private final int[] backlogLengths = new int[BACKLOG_CAPACITY];
+    private int backlogHead;
+    private int backlogCount;
+
+    private long[] heldWrites = new long[8];
+    private int heldWriteCount;
+    private boolean areWritesHeld;
+
+    private long[] completions = new long[16];
+    private int completionHead;
+    private int completionCount;
+
+    private volatile boolean isLoopbackEnabled;
+    private volatile long writtenPacketCount;
+    private volatile long droppedPacketCount;
+    private volatile int maxPendingReadCount;
+
+    public InMemoryRequestQueue() {
+        this(DEFAULT_PACKET_SIZE);
+    }
+
+    public InMemoryRequestQueue(int packetSize) {
+        if (packetSize <= 0) {
+            throw new IllegalArgumentException("the packetSize must be positive : " + packetSize);
+        }
+
+        this.packetSize = packetSize;
+        this.backlog = new byte[BACKLOG_CAPACITY][packetSize];
+    }
+
+    /**
+     * @param isLoopbackEnabled true to complete the queued reads with the written packets.
+     */
+    public void setLoopbackEnabled(boolean isLoopbackEnabled) {
+        this.isLoopbackEnabled = isLoopbackEnabled;
+    }
+
+    /**
+     * @param areWritesHeld true to keep the next writes in flight, false to complete every held write.
+     */
+    public void setWritesHeld(boolean areWritesHeld) {
+        lock.lock();
+        try {
+            this.areWritesHeld = areWritesHeld;
+            if (!areWritesHeld) {
+                for (int i = 0; i < heldWriteCount; i++) {
+                    addCompletion(heldWrites[i]);
+                }
+                heldWriteCount = 0;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Complete the oldest queued read with the packet, as if the device sent it.
+     *
+     * @return false if the packet is dropped because no read is queued and the backlog is full.
+     */
+    public boolean inject(byte[] buffer, int length) {
+        if (length > packetSize) {
+            throw new IllegalArgumentException("the packet is bigger than " + packetSize + " bytes : " + length);
+        }
+
+        lock.lock();
+        try {
+            if (isClosed || (pendingReadCount == 0 && backlogCount == BACKLOG_CAPACITY)) {
+                droppedPacketCount++;
+                return false;
+            }
+
+            if (pendingReadCount == 0) {
+                final int index = (backlogHead + backlogCount) % BACKLOG_CAPACITY;
+                System.arraycopy(buffer, 0, backlog[index], 0, length);
+                backlogLengths[index] = length;
+                backlogCount++;
+                return true;
+            }
+
+            final int requestId = pendingReads[pendingReadHead];
+            pendingReadHead = (pendingReadHead + 1) % pendingReads.length;
+            pendingReadCount--;
+
+            System.arraycopy(buffer, 0, readBuffers[requestId], 0, length);
+            addCompletion(RequestCompletion.of(requestId, length));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getWrittenPacketCount() {
+        return writtenPacketCount;
+    }
+
+    public long getDroppedPacketCount() {
+        return droppedPacketCount;
+    }
+
+    /**
+     * @return the highest number of reads queued at the same time.
+     */
+    public int getMaxPendingReadCount() {
+        return maxPendingReadCount;
+    }
+
+    @Override
+    public boolean queueRead(int requestId, byte[] buffer) {
+        lock.lock();
+        try {
+            if (isClosed) {
+                return false;
+            }
+
+            if (requestId >= readBuffers.length) {
+                readBuffers = Arrays.copyOf(readBuffers, Math.max(requestId + 1, readBuffers.length * 2));
+            }
+            readBuffers[requestId] = buffer;
+
+            if (backlogCount > 0) {
+                final int length = backlogLengths[backlogHead];
+                System.arraycopy(backlog[backlogHead], 0, buffer, 0, length);
+                backlogHead = (backlogHead + 1) % BACKLOG_CAPACITY;
+                backlogCount--;
+                addCompletion(RequestCompletion.of(requestId, length));
+                return true;
+            }
+
+            if (pendingReadCount == pendingReads.length) {
+                final int[] grown = new int[pendingReads.length * 2];
+                for (int i = 0; i < pendingReadCount; i++) {
+                    grown[i] = pendingReads[(pendingReadHead + i) % pendingReads.length];
+                }
+                pendingReads = grown;
+                pendingReadHead = 0;
+            }
+            pendingReads[(pendingReadHead + pendingReadCount) % pendingReads.length] = requestId;
+            pendingReadCount++;
+            maxPendingReadCount = Math.max(maxPendingReadCount, pendingReadCount);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean queueWrite(int requestId, byte[] buffer, int length) {
+        if (isLoopbackEnabled) {
+            inject(buffer, length);
+        }
+
+        lock.lock();
+        try {
+            if (isClosed) {
+                return false;
+            }
+
+            writtenPacketCount++;
+            final long completion = RequestCompletion.of(requestId, length);
+            if (areWritesHeld) {
+                if (heldWriteCount == heldWrites.length) {
+                    heldWrites = Arrays.copyOf(heldWrites, heldWrites.length * 2);
+                }
+                heldWrites[heldWriteCount++] = completion;
+            } else {
+                addCompletion(completion);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long awaitCompletion() {
+        lock.lock();
+        try {
+            while (completionCount == 0) {
+                if (isClosed) {
+                    return -1;
+                }
+                hasCompletion.await();
+            }
+
+            final long completion = completions[completionHead];
+            completionHead = (completionHead + 1) % completions.length;
+            completionCount--;
+            return completion;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void addCompletion(long completion) {
+        if (completionCount == completions.length) {
+            final long[] grown = new long[completions.length * 2];
+            for (int i = 0; i < completionCount; i++) {
+                grown[i] = completions[(completionHead + i) % completions.length];
+            }
+            completions = grown;
+            completionHead = 0;
+        }
+        completions[(completionHead + completionCount) % completions.length] = completion;
+        completionCount++;
+        hasCompletion.signal();
+    }
+
+    @Override
+    public int getMaxReadPacketSize() {
+        return packetSize;
+    }
+
+    @Override
+    public int getMaxWritePacketSize() {
+        return packetSize;
+    }
+
+    @Override
+    public String getName() {
+        return "In memory requests";
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            isClosed = true;
+            hasCompletion.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.yougi.launchpadusb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Record what a device sends into a binary log, set on a connection with
+ * {@link LaunchPadConnection#setInputRecorder(InputRecorder)} and read back by {@link InputReplayer}.
+ * <p>
+ * The log is a memory mapped file of a fixed capacity, so the receive thread records a packet with a few
+ * puts and without allocation. Once the capacity is reached the next records are counted as dropped. Closing
+ * the recorder truncates the file to the recorded length.
+ * <p>
+ * Format, little endian : the magic "LPIN", the version, then the records until a 0 type or the end of the
+ * file. Each record starts with its type and its time in nanoseconds since the start of the recording.
+ * <ul>
+ * <li>packet : type 1, time (8 bytes), length (2 bytes), the bytes read from the device.</li>
+ * <li>event : type 2, time (8 bytes), cell (1 byte), 1 if down else 0 (1 byte).</li>
+ * </ul>
+ */
+public final class InputRecorder {
+
+    static final int MAGIC = 0x4E49504C;
+    static final int VERSION = 1;
+    static final int HEADER_LENGTH = MappedLogFile.HEADER_LENGTH;
+
+    static final byte TYPE_END = 0;
+    static final byte TYPE_PACKET = 1;
+    static final byte TYPE_EVENT = 2;
+
+    static final int PACKET_RECORD_LENGTH = 1 + 8 + 2;
+    static final int EVENT_RECORD_LENGTH = 1 + 8 + 2;
+
+    private final MappedLogFile logFile;
+    private final MappedByteBuffer buffer;
+    private final long startNanos;
+
+    private boolean isClosed;
+    private volatile long packetCount;
+    private volatile long eventCount;
+    private volatile long droppedCount;
+
+    private InputRecorder(MappedLogFile logFile) {
+        this.logFile = logFile;
+        this.buffer = logFile.getBuffer();
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * @param capacity the max length of the log in bytes, mapped at once.
+     */
+    public static InputRecorder open(File file, int capacity) throws IOException {
+        return new InputRecorder(MappedLogFile.open(file, capacity, MAGIC, VERSION));
+    }
+
+    /**
+     * Called by the receive thread for each packet read from the device.
+     */
+    synchronized void recordPacket(long timestampNanos, byte[] packet, int length) {
+        if (isClosed) {
+            return;
+        }
+
+        if (buffer.remaining() < PACKET_RECORD_LENGTH + length) {
+            droppedCount++;
+            return;
+        }
+
+        buffer.put(TYPE_PACKET);
+        buffer.putLong(timestampNanos - startNanos);
+        buffer.putShort((short) length);
+        buffer.put(packet, 0, length);
+        packetCount++;
+    }
+
+    /**
+     * Called by the receive thread for each event decoded from the packets.
+     */
+    synchronized void recordEvent(long timestampNanos, int cell, boolean isDown) {
+        if (isClosed) {
+            return;
+        }
+
+        if (buffer.remaining() < EVENT_RECORD_LENGTH) {
+            droppedCount++;
+            return;
+        }
+
+        buffer.put(TYPE_EVENT);
+        buffer.putLong(timestampNanos - startNanos);
+        buffer.put((byte) cell);
+        buffer.put((byte) (isDown ? 1 : 0));
+        eventCount++;
+    }
+
+    public long getPacketCount() {
+        return packetCount;
+    }
+
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * @return the number of packets and events not recorded because the log was full.
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * @return the length of the log in bytes.
+     */
+    public synchronized int getLength() {
+        return buffer.position();
+    }
+
+    /**
+     * Write the log on the disk and truncate the file to its length. The records received later are ignored.
+     */
+    public synchronized void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+
+        isClosed = true;
+        logFile.close();
+    }
+}
@@ -0,0 +1,222 @@
+package com.yougi.launchpadusb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Read a log written by {@link InputRecorder}, and replay its packets into a connection : they go through the
+ * parser, the pad states, the gestures and the listeners as if the device sent them again.
+ * <p>
+ * The gestures are recognized on the recorded times of the packets, so a replay faster than the recording gives
+ * the same long presses, double taps and swipes. The input latencies of the connection measure the replay
+ * itself. A pad still held at the end of the log gets its long press from the clock of the gestures.
+ */
+public final class InputReplayer {
+
+    /**
+     * Speed replaying the packets without waiting between them, to load the listeners.
+     */
+    public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+
+    private final ByteBuffer log;
+    private final long packetCount;
+    private final long eventCount;
+    private final long durationNanos;
+    private final int maxPacketLength;
+
+    private InputReplayer(ByteBuffer log) {
+        this.log = log;
+
+        if (log.remaining() < InputRecorder.HEADER_LENGTH || log.getInt(0) != InputRecorder.MAGIC) {
+            throw new IllegalArgumentException("this file isn't an input log");
+        }
+
+        if (log.getInt(4) != InputRecorder.VERSION) {
+            throw new IllegalArgumentException("this input log version isn't supported : " + log.getInt(4));
+        }
+
+        final Counter counter = new Counter();
+        read(counter);
+        this.packetCount = counter.packetCount;
+        this.eventCount = counter.eventCount;
+        this.durationNanos = counter.lastNanos;
+        this.maxPacketLength = counter.maxPacketLength;
+    }
+
+    public static InputReplayer open(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("the file in argument Cannot be null");
+        }
+
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            final ByteBuffer log = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            log.order(ByteOrder.LITTLE_ENDIAN);
+            return new InputReplayer(log);
+        } finally {
+            // the mapping stays valid after the close of the file
+            randomAccessFile.close();
+        }
+    }
+
+    public long getPacketCount() {
+        return packetCount;
+    }
+
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * @return the time between the start of the recording and its last record.
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Visit every record of the log in order, on the calling thread.
+     */
+    public void read(LogVisitor visitor) {
+        if (visitor == null) {
+            throw new IllegalArgumentException("the visitor in argument Cannot be null");
+        }
+
+        final ByteBuffer records = log.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        records.position(InputRecorder.HEADER_LENGTH);
+        byte[] packet = new byte[Math.max(maxPacketLength, 1)];
+        while (records.hasRemaining()) {
+            final byte type = records.get();
+            if (type == InputRecorder.TYPE_PACKET) {
+                final long nanos = records.getLong();
+                final int length = records.getShort() & 0xFFFF;
+                if (length > packet.length) {
+                    packet = new byte[length];
+                }
+                records.get(packet, 0, length);
+                visitor.onPacket(nanos, packet, length);
+            } else if (type == InputRecorder.TYPE_EVENT) {
+                final long nanos = records.getLong();
+                final int cell = records.get();
+                final boolean isDown = records.get() != 0;
+                visitor.onEvent(nanos, cell, isDown);
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Replay the packets of the log into the connection, on the calling thread. The listener data process of
+     * the connection must be stopped, the replayed packets take the place of the device.
+     *
+     * @param speed 1 for the recorded pace, 2 for twice faster, or {@link #AS_FAST_AS_POSSIBLE}.
+     * @return the number of replayed packets.
+     */
+    public long replay(LaunchPadConnection connection, double speed) throws InterruptedException {
+        if (connection == null) {
+            throw new IllegalArgumentException("the connection in argument Cannot be null");
+        }
+
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("the speed in argument must be positive : " + speed);
+        }
+
+        final Replay replay = new Replay(connection, speed);
+        connection.beginReplay();
+        try {
+            read(replay);
+        } finally {
+            connection.endReplay();
+        }
+        if (replay.isInterrupted) {
+            throw new InterruptedException();
+        }
+        return replay.replayedCount;
+    }
+
+    public interface LogVisitor {
+        /**
+         * @param nanos  the time of the packet since the start of the recording.
+         * @param packet the bytes read from the device, reused by the next call.
+         */
+        void onPacket(long nanos, byte[] packet, int length);
+
+        void onEvent(long nanos, int cell, boolean isDown);
+    }
+
+    private static final class Counter implements LogVisitor {
+
+        private long packetCount;
+        private long eventCount;
+        private long lastNanos;
+        private int maxPacketLength;
+
+        @Override
+        public void onPacket(long nanos, byte[] packet, int length) {
+            packetCount++;
+            lastNanos = nanos;
+            maxPacketLength = Math.max(maxPacketLength, length);
+        }
+
+        @Override
+        public void onEvent(long nanos, int cell, boolean isDown) {
+            eventCount++;
+            lastNanos = nanos;
+        }
+    }
+
+    private static final class Replay implements LogVisitor {
+
+        private final LaunchPadConnection connection;
+        private final double speed;
+        private final long startNanos = System.nanoTime();
+        private long firstNanos = -1;
+
+        private long replayedCount;
+        private boolean isInterrupted;
+
+        private Replay(LaunchPadConnection connection, double speed) {
+            this.connection = connection;
+            this.speed = speed;
+        }
+
+        @Override
+        public void onPacket(long nanos, byte[] packet, int length) {
+            if (isInterrupted) {
+                return;
+            }
+
+            if (firstNanos < 0) {
+                firstNanos = nanos;
+            }
+
+            if (speed != AS_FAST_AS_POSSIBLE) {
+                final long deadline = startNanos + (long) ((nanos - firstNanos) / speed);
+                long remaining;
+                while ((remaining = deadline - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(remaining);
+                    if (Thread.interrupted()) {
+                        isInterrupted = true;
+                        return;
+                    }
+                }
+            }
+
+            // the recorded interval from the first packet, whatever the speed
+            connection.replayPacket(packet, length, startNanos + (nanos - firstNanos));
+            replayedCount++;
+        }
+
+        @Override
+        public void onEvent(long nanos, int cell, boolean isDown) {
+            // the events are decoded again from the packets
+        }
+    }
+}
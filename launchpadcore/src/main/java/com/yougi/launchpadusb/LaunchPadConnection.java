@@ -0,0 +1,1303 @@
+package com.yougi.launchpadusb;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+public class LaunchPadConnection {
+
+    private static final Logger LOGGER = Logger.getLogger(LaunchPadConnection.class.getName());
+
+    /**
+     * The wait of a writer when the led command queue is full, in nanoseconds.
+     */
+    private static final long FULL_QUEUE_WAIT_NANOS = 100000;
+
+    private static final int INTERACTIVE_RING_CAPACITY = 64;
+
+    /**
+     * The time the transfers must keep failing before the device is considered lost, in nanoseconds.
+     */
+    private static final long DETACH_DELAY_NANOS = 100000000;
+
+    /**
+     * The wait of the receive thread after a failed read, in nanoseconds.
+     */
+    private static final long FAILED_READ_WAIT_NANOS = 1000000;
+
+    private final LedCommandRing ledCommandRing;
+    private final LedCommandRing interactiveRing;
+    private final MidiPacketWriter midiPacketWriter;
+    private final LedFrameRenderer ledFrameRenderer;
+    private final SendScheduler sendScheduler;
+    private final AnimationPlayer animationPlayer;
+
+    private final SendDataThread sendDataThread;
+    private final ReceiveDataThread receiveDataThread;
+    private final LaunchpadSendLoop sendLoop;
+    private volatile boolean isAttachedToSendLoop;
+
+    private volatile LaunchpadTransport transport;
+    private final int maxReadPacketSize;
+    private final int maxWritePacketSize;
+    private final Object attachLock = new Object();
+    private volatile boolean isDetached;
+    private volatile OnDeviceStateListener onDeviceStateListener;
+
+    private final ListenerDispatcher listenerDispatcher;
+    private final PadStateTracker padStateTracker;
+    private final LatencyHistogram inputDispatchLatency = new LatencyHistogram();
+    private volatile PadGestureEngine padGestureEngine;
+    private boolean isReplaying;
+    private volatile InputRecorder inputRecorder;
+    private volatile EchoRules echoRules;
+
+    private volatile OnFrameFlippedListener onFrameFlippedListener;
+    private volatile TextScrolledCallback textScrolledCallback;
+    private volatile boolean isTextScrolling;
+
+    private final Object frameLock = new Object();
+    private boolean isFrameBegun;
+    private long frameCount;
+
+    public LaunchPadConnection(LaunchpadTransport transport) {
+        this(transport, null);
+    }
+
+    /**
+     * @param sendLoop the loop flushing the leds of this connection with the ones of other connections, or null
+     *                 for a send thread owned by this connection.
+     */
+    public LaunchPadConnection(LaunchpadTransport transport, LaunchpadSendLoop sendLoop) {
+        if (transport == null) {
+            throw new IllegalArgumentException("the transport in argument Cannot be null");
+        }
+
+        this.transport = transport;
+        this.maxReadPacketSize = transport.getMaxReadPacketSize();
+        this.maxWritePacketSize = transport.getMaxWritePacketSize();
+        this.sendLoop = sendLoop;
+        this.ledCommandRing = new LedCommandRing(LedCommandRing.DEFAULT_CAPACITY, OverflowPolicy.COALESCE);
+        this.interactiveRing = new LedCommandRing(INTERACTIVE_RING_CAPACITY, OverflowPolicy.COALESCE);
+        this.sendScheduler = new SendScheduler(SendPolicy.IMMEDIATE);
+        this.listenerDispatcher = new ListenerDispatcher();
+        this.padStateTracker = new PadStateTracker();
+
+        midiPacketWriter = new MidiPacketWriter(new MidiPacketWriter.Output() {
+            private final TransferFailures failures = new TransferFailures();
+
+            @Override
+            public int transfer(byte[] buffer, int length) {
+                final LaunchpadTransport currentTransport = LaunchPadConnection.this.transport;
+                final int result = currentTransport.writePacket(buffer, length);
+                if (failures.isDeviceLost(result)) {
+                    onTransportFailed(currentTransport);
+                }
+                return result;
+            }
+        }, maxWritePacketSize);
+        animationPlayer = new AnimationPlayer(sendScheduler);
+        ledFrameRenderer = new LedFrameRenderer(ledCommandRing, interactiveRing, midiPacketWriter,
+                animationPlayer);
+
+        sendDataThread = new SendDataThread();
+        receiveDataThread = new ReceiveDataThread();
+    }
+
+    public void enableSendDataProcess() {
+        if (isSendDataProcessEnabled()) {
+            throw new IllegalStateException("You cannot enable sendDataProcess if is already started");
+        }
+
+        if (sendLoop != null) {
+            sendScheduler.setSendLoop(sendLoop);
+            isAttachedToSendLoop = true;
+            sendLoop.attach(this);
+        } else {
+            sendDataThread.start();
+        }
+    }
+
+    public void enableListenerDataProcess() {
+        if (receiveDataThread.isRunning) {
+            throw new IllegalStateException("You cannot enable receiveDataProcess if is already started");
+        }
+
+        receiveDataThread.start();
+    }
+
+    public void disableSendDataProcess() {
+        if (!isSendDataProcessEnabled()) {
+            throw new IllegalStateException("You cannot disable sendDataProcess if isn't started");
+        }
+
+        internalDisableSendDataProcess();
+    }
+
+    public void disableListenerDataProcess() {
+        if (!receiveDataThread.isRunning) {
+            throw new IllegalStateException("You cannot disable receiveDataProcess if isn't started");
+        }
+
+        receiveDataThread.stopThread();
+    }
+
+    public String getDeviceName() {
+        return transport.getName();
+    }
+
+    /**
+     * @return true while the device is unplugged : the led writes are kept and sent at its reconnection, the
+     * receive thread waits for it without using the cpu.
+     */
+    public boolean isDetached() {
+        return isDetached;
+    }
+
+    /**
+     * The device is unplugged, called by the LaunchpadDriver on android. A device failing all its transfers is
+     * detached by the connection itself.
+     */
+    public void onDeviceDetached() {
+        internalDetach(null);
+    }
+
+    /**
+     * The device is plugged again, called by the LaunchpadDriver on android : the connection resumes on the new
+     * transport and the lost one is released. Every led is sent again in one burst, with the colors written
+     * while the device was unplugged.
+     *
+     * @param transport the transport of the device, with the packet sizes of the lost one.
+     */
+    public void onDeviceAttached(LaunchpadTransport transport) {
+        if (transport == null) {
+            throw new IllegalArgumentException("the transport in argument Cannot be null");
+        }
+
+        if (transport.getMaxReadPacketSize() > maxReadPacketSize
+                || transport.getMaxWritePacketSize() < maxWritePacketSize) {
+            throw new IllegalArgumentException("the transport in argument doesn't have the packet sizes of the device");
+        }
+
+        final LaunchpadTransport lostTransport;
+        synchronized (attachLock) {
+            lostTransport = this.transport;
+            this.transport = transport;
+            isDetached = false;
+            ledFrameRenderer.onDeviceFound();
+        }
+
+        if (lostTransport != transport) {
+            lostTransport.close();
+        }
+        LockSupport.unpark(receiveDataThread);
+        sendScheduler.wakeAt(System.nanoTime());
+        LOGGER.info("device attached again : " + transport.getName());
+
+        final OnDeviceStateListener listener = onDeviceStateListener;
+        if (listener != null) {
+            listener.onDeviceReattached();
+        }
+    }
+
+    /**
+     * @param listener called on the thread noticing the unplug or the reconnection of the device, null to
+     *                 remove it.
+     */
+    public void setOnDeviceStateListener(OnDeviceStateListener listener) {
+        onDeviceStateListener = listener;
+    }
+
+    /**
+     * Stop the send and receive processes if they are started, then release the device.
+     */
+    public void close() {
+        stopAnimations();
+        if (isSendDataProcessEnabled()) {
+            internalDisableSendDataProcess();
+        }
+        if (receiveDataThread.isRunning) {
+            receiveDataThread.stopThread();
+        }
+        setOnPadGestureListener(null);
+
+        transport.close();
+    }
+
+    public SendPolicy getSendPolicy() {
+        return sendScheduler.getPolicy();
+    }
+
+    public void setSendPolicy(SendPolicy sendPolicy) {
+        if (sendPolicy == null) {
+            throw new IllegalArgumentException("the sendPolicy in argument Cannot be null");
+        }
+
+        sendScheduler.setPolicy(sendPolicy);
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return ledCommandRing.getOverflowPolicy();
+    }
+
+    /**
+     * @param overflowPolicy what a led write does when the command queue is full, {@link OverflowPolicy#COALESCE}
+     *                       by default.
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("the overflowPolicy in argument Cannot be null");
+        }
+
+        ledCommandRing.setOverflowPolicy(overflowPolicy);
+    }
+
+    /**
+     * @return the number of led writes dropped with {@link OverflowPolicy#DROP_OLDEST}, and of background writes
+     * dropped because an interactive write of their led was offered after them.
+     */
+    public long getDroppedCommandCount() {
+        return ledCommandRing.getDroppedCount() + ledFrameRenderer.getStaleWriteCount();
+    }
+
+    /**
+     * @return the number of led writes coalesced with {@link OverflowPolicy#COALESCE}, in both lanes.
+     */
+    public long getCoalescedCommandCount() {
+        return ledCommandRing.getCoalescedCount() + interactiveRing.getCoalescedCount();
+    }
+
+    /**
+     * @return the number of usb transfers used by the last flush of the leds.
+     */
+    public int getLastFlushTransferCount() {
+        return midiPacketWriter.getLastFlushTransferCount();
+    }
+
+    /**
+     * @return the number of bytes sent by the last flush of the leds.
+     */
+    public int getLastFlushByteCount() {
+        return midiPacketWriter.getLastFlushByteCount();
+    }
+
+    public long getTotalTransferCount() {
+        return midiPacketWriter.getTotalTransferCount();
+    }
+
+    public long getTotalByteCount() {
+        return midiPacketWriter.getTotalByteCount();
+    }
+
+    /**
+     * @return a snapshot of the led output, read without lock.
+     */
+    public OutputMetrics getOutputMetrics() {
+        final LatencyHistogram transferDuration = midiPacketWriter.getTransferDuration();
+        final int interactiveDepth = interactiveRing.size();
+        final int interactivePeakDepth = interactiveRing.getPeakSize();
+        final long interactiveCoalescedCount = interactiveRing.getCoalescedCount();
+        final long staleCount = ledFrameRenderer.getStaleWriteCount();
+        return new OutputMetrics(ledCommandRing.size() + interactiveDepth,
+                ledCommandRing.getPeakSize() + interactivePeakDepth,
+                midiPacketWriter.getMessagesPerSecond(), midiPacketWriter.getBytesPerSecond(),
+                midiPacketWriter.getTotalMessageCount(), midiPacketWriter.getTotalTransferCount(),
+                midiPacketWriter.getTotalByteCount(), midiPacketWriter.getFailedTransferCount(),
+                midiPacketWriter.getShortTransferCount(), transferDuration.getP50Nanos(),
+                transferDuration.getP99Nanos(), transferDuration.getMaxNanos(),
+                ledCommandRing.getCoalescedCount() + interactiveCoalescedCount,
+                ledCommandRing.getDroppedCount() + staleCount, staleCount,
+                interactiveDepth, interactivePeakDepth, interactiveCoalescedCount);
+    }
+
+    /**
+     * Reset the peak queue depth and the distribution of the transfer durations of {@link #getOutputMetrics()}.
+     */
+    public void resetOutputMetrics() {
+        ledCommandRing.resetPeakSize();
+        interactiveRing.resetPeakSize();
+        midiPacketWriter.getTransferDuration().reset();
+    }
+
+    public void enablePadTopControl(ControlTopPad controlTopPad, PadColor.Red red, PadColor.Green green) {
+        enablePadTopControl(controlTopPad, red, green, PadColor.Blink.NONE);
+    }
+
+    /**
+     * @param blink the led blinks by itself on the device, without message from the host.
+     */
+    public void enablePadTopControl(ControlTopPad controlTopPad, PadColor.Red red, PadColor.Green green,
+                                    PadColor.Blink blink) {
+        checkSendDataThreadRunning();
+
+        if (blink == null) {
+            throw new IllegalArgumentException("the blink in argument Cannot be null");
+        }
+
+        internalEnablePad(PadIndex.of(controlTopPad), PadColor.of(red, green, blink));
+    }
+
+    public void disablePadTopControl(ControlTopPad controlTopPad) {
+        checkSendDataThreadRunning();
+
+        internalDisablePad(PadIndex.of(controlTopPad));
+    }
+
+    public void enablePadRightControl(ControlRightPad controlRightPad, PadColor.Red red, PadColor.Green green) {
+        enablePadRightControl(controlRightPad, red, green, PadColor.Blink.NONE);
+    }
+
+    /**
+     * @param blink the led blinks by itself on the device, without message from the host.
+     */
+    public void enablePadRightControl(ControlRightPad controlRightPad, PadColor.Red red, PadColor.Green green,
+                                      PadColor.Blink blink) {
+        checkSendDataThreadRunning();
+
+        if (blink == null) {
+            throw new IllegalArgumentException("the blink in argument Cannot be null");
+        }
+
+        internalEnablePad(PadIndex.of(controlRightPad), PadColor.of(red, green, blink));
+    }
+
+    public void disablePadRightControl(ControlRightPad controlRightPad) {
+        checkSendDataThreadRunning();
+
+        internalDisablePad(PadIndex.of(controlRightPad));
+    }
+
+    public void enablePad(int padId, PadColor.Red red, PadColor.Green green) {
+        enablePad(padId, red, green, PadColor.Blink.NONE);
+    }
+
+    /**
+     * Light a pad blinking by itself : the device flips its led buffers at its flash rate, so a blinking pad
+     * costs one message instead of two per blink.
+     *
+     * @param blink {@link PadColor.Blink#FLASH} alternates the color and off, {@link PadColor.Blink#PULSE} the
+     *              color and a dimmed color.
+     */
+    public void enablePad(int padId, PadColor.Red red, PadColor.Green green, PadColor.Blink blink) {
+        checkSendDataThreadRunning();
+
+        if (padId < 0 || padId > 63) {
+            throw new IllegalArgumentException("this pad id isn't supported : " + padId);
+        }
+
+        if (blink == null) {
+            throw new IllegalArgumentException("the blink in argument Cannot be null");
+        }
+
+        internalEnablePad(padId, PadColor.of(red, green, blink));
+    }
+
+    /**
+     * Write a led in a send lane : the {@link SendLane#INTERACTIVE} writes are sent before the background ones,
+     * like the echo of a press which must not wait behind an animation. The other led apis write in the
+     * {@link SendLane#BACKGROUND} lane.
+     *
+     * @param padIndex the led, see {@link PadIndex}.
+     * @param color    built with {@link PadColor#of(PadColor.Red, PadColor.Green, PadColor.Blink)}.
+     */
+    public void writeCell(int padIndex, byte color, SendLane lane) {
+        checkSendDataThreadRunning();
+
+        if (padIndex < 0 || padIndex >= PadIndex.COUNT) {
+            throw new IllegalArgumentException("this pad index isn't supported : " + padIndex);
+        }
+
+        if (lane == null) {
+            throw new IllegalArgumentException("the lane in argument Cannot be null");
+        }
+
+        if (lane == SendLane.INTERACTIVE) {
+            internalWriteInteractiveCell(padIndex, color);
+        } else {
+            internalWriteCell(padIndex, color);
+        }
+    }
+
+    /**
+     * @return for {@link SendLane#INTERACTIVE}, the time between each write and the end of the transfer sending
+     * it. For {@link SendLane#BACKGROUND}, the time between the oldest write of each flush and its end.
+     */
+    public LatencyHistogram getSendLatency(SendLane lane) {
+        if (lane == null) {
+            throw new IllegalArgumentException("the lane in argument Cannot be null");
+        }
+
+        return lane == SendLane.INTERACTIVE
+                ? ledFrameRenderer.getInteractiveLatency() : ledFrameRenderer.getBackgroundLatency();
+    }
+
+    /**
+     * Light the pads on press and release from the receive thread, before the listeners are called. The echo
+     * is only sent while the send data process is started.
+     *
+     * @param rules the rules to apply, null to remove them. The pads held by the previous rules show their color
+     *              written by the application again.
+     */
+    public void setEchoRules(EchoRules rules) {
+        echoRules = rules;
+
+        if (isSendDataProcessEnabled()) {
+            internalWriteOverlay(LedCommandRing.ALL_CELLS, LedFrameBuffer.NO_OVERLAY);
+        }
+    }
+
+    public EchoRules getEchoRules() {
+        return echoRules;
+    }
+
+    /**
+     * @return true while blinking leds are lit : the device flips its buffers by itself, and the frames are
+     * written in both buffers instead of the hidden one.
+     */
+    public boolean isHardwareFlashing() {
+        return ledFrameRenderer.isAutoFlashing();
+    }
+
+    public void disablePad(int padId) {
+        checkSendDataThreadRunning();
+
+        if (padId < 0 || padId > 63) {
+            throw new IllegalArgumentException("this pad id isn't supported : " + padId);
+        }
+
+        internalDisablePad(padId);
+    }
+
+    /**
+     * Set the color of every led at once, the colors are indexed by {@link PadIndex} and built with
+     * {@link PadColor#of(PadColor.Red, PadColor.Green)}.
+     * <p>
+     * When most of the leds change, the frame is sent with the rapid led update of the device, two leds per
+     * message, instead of one message per led.
+     */
+    public void setFrame(byte[] colors) {
+        checkSendDataThreadRunning();
+
+        if (colors == null || colors.length != PadIndex.COUNT) {
+            throw new IllegalArgumentException("the colors in argument must hold " + PadIndex.COUNT + " values");
+        }
+
+        for (int cell = 0; cell < PadIndex.COUNT; cell++) {
+            internalWriteCell(cell, colors[cell]);
+        }
+    }
+
+    /**
+     * Begin a frame : the leds written until {@link #commitFrame()} are held, then drawn in the hidden buffer
+     * of the device and displayed at once, without tearing.
+     */
+    public void beginFrame() {
+        checkSendDataThreadRunning();
+
+        synchronized (frameLock) {
+            if (isFrameBegun) {
+                throw new IllegalStateException("You cannot begin a frame if the previous one isn't committed");
+            }
+
+            isFrameBegun = true;
+            internalWriteFrameCommand(LedCommandRing.TYPE_BEGIN_FRAME);
+        }
+    }
+
+    /**
+     * Commit the frame begun by {@link #beginFrame()}.
+     *
+     * @return the number of the frame, compare it with {@link #getLastFlippedFrame()} to know if it is
+     * displayed.
+     */
+    public long commitFrame() {
+        checkSendDataThreadRunning();
+
+        synchronized (frameLock) {
+            if (!isFrameBegun) {
+                throw new IllegalStateException("You cannot commit a frame if it isn't begun");
+            }
+
+            internalWriteFrameCommand(LedCommandRing.TYPE_COMMIT_FRAME);
+            isFrameBegun = false;
+            return ++frameCount;
+        }
+    }
+
+    /**
+     * @return the number of the last frame displayed by the device, or 0 if none. When frames are committed
+     * faster than sent, only the last one is flipped.
+     */
+    public long getLastFlippedFrame() {
+        return ledFrameRenderer.getLastFlippedFrame();
+    }
+
+    /**
+     * Scroll a text once with the default speed of the device.
+     *
+     * @see #scrollText(String, PadColor.Red, PadColor.Green, int, boolean)
+     */
+    public void scrollText(String text, PadColor.Red red, PadColor.Green green) {
+        scrollText(text, red, green, 0, false);
+    }
+
+    /**
+     * Scroll a text on the grid, drawn by the device itself : the whole text costs a single message instead of
+     * the leds of each step. The leds written while the text scrolls are displayed once it ends.
+     *
+     * @param text      ascii characters, the bytes 1 to 7 inside the text change the speed from there.
+     * @param speed     the initial speed, from 1 (slowest) to 7, or 0 for the default speed of the device.
+     * @param isLooping true to scroll the text until {@link #stopText()}.
+     */
+    public void scrollText(String text, PadColor.Red red, PadColor.Green green, int speed, boolean isLooping) {
+        checkSendDataThreadRunning();
+
+        if (text == null) {
+            throw new IllegalArgumentException("the text in argument Cannot be null");
+        }
+
+        if (red == null || green == null) {
+            throw new IllegalArgumentException("the color in argument Cannot be null");
+        }
+
+        if (speed != 0 && (speed < LaunchpadProtocol.SCROLL_TEXT_MIN_SPEED
+                || speed > LaunchpadProtocol.SCROLL_TEXT_MAX_SPEED)) {
+            throw new IllegalArgumentException("this text speed isn't supported : " + speed);
+        }
+
+        for (int i = 0; i < text.length(); i++) {
+            final char character = text.charAt(i);
+            final boolean isSpeed = character >= LaunchpadProtocol.SCROLL_TEXT_MIN_SPEED
+                    && character <= LaunchpadProtocol.SCROLL_TEXT_MAX_SPEED;
+            if (!isSpeed && (character < 32 || character > 126)) {
+                throw new IllegalArgumentException("this character can't be scrolled : " + (int) character);
+            }
+        }
+
+        isTextScrolling = true;
+        ledFrameRenderer.offerSysex(LaunchpadProtocol.scrollText(
+                (byte) (PadColor.of(red, green) | LaunchpadProtocol.VELOCITY_FLAGS_BOTH_BUFFERS), isLooping, speed,
+                text));
+        sendScheduler.signal();
+    }
+
+    /**
+     * Stop the scrolling text, the listener of the end of the text is called.
+     */
+    public void stopText() {
+        checkSendDataThreadRunning();
+
+        ledFrameRenderer.offerSysex(LaunchpadProtocol.scrollText((byte) 0, false, 0, ""));
+        sendScheduler.signal();
+    }
+
+    /**
+     * @return true from {@link #scrollText(String, PadColor.Red, PadColor.Green, int, boolean)} until the device
+     * reports the end of the text. The end is only received while the listener data process is started.
+     */
+    public boolean isTextScrolling() {
+        return isTextScrolling;
+    }
+
+    public void setOnTextScrolledListener(OnTextScrolledListener listener) {
+        setOnTextScrolledListener(listener, ListenerDispatcher.getDefaultExecutor());
+    }
+
+    /**
+     * @param listener called on the executor when the device reports the end of a scrolling text, null to
+     *                 remove it.
+     */
+    public void setOnTextScrolledListener(OnTextScrolledListener listener, Executor executor) {
+        if (listener == null) {
+            textScrolledCallback = null;
+            return;
+        }
+
+        if (executor == null) {
+            throw new IllegalArgumentException("the executor in argument Cannot be null");
+        }
+
+        textScrolledCallback = new TextScrolledCallback(listener, executor);
+    }
+
+    /**
+     * Play an animation on its region of the pads, drawn by the send process at the rate of the animation.
+     * Several animations can play at once on regions without common cell. The writes of the application on the
+     * region of a playing animation are overwritten by its next frame.
+     *
+     * @return the playback, to stop the animation and read its achieved frame rate.
+     */
+    public AnimationPlayback playAnimation(LaunchpadAnimation animation) {
+        checkSendDataThreadRunning();
+
+        if (animation == null) {
+            throw new IllegalArgumentException("the animation in argument Cannot be null");
+        }
+
+        return animationPlayer.play(animation);
+    }
+
+    /**
+     * Stop every playing animation, their leds keep the colors of their last drawn frame.
+     */
+    public void stopAnimations() {
+        animationPlayer.stopAll();
+    }
+
+    /**
+     * @param listener called on the send thread each time a frame is flipped, null to remove it.
+     */
+    public void setOnFrameFlippedListener(OnFrameFlippedListener listener) {
+        onFrameFlippedListener = listener;
+    }
+
+    /**
+     * Register a listener called on a thread shared by the listeners of all connections.
+     */
+    public boolean registerOnReceiveLaunchPadEvents(OnReceiveLaunchPadListener listener) {
+        return registerOnReceiveLaunchPadEvents(listener, ListenerDispatcher.getDefaultExecutor());
+    }
+
+    /**
+     * Register a listener called on the given executor, on Android use a {@code HandlerExecutor} to be called on
+     * a looper. The events wait in a bounded queue until the executor runs the listener, a
+     * listener too slow misses events but never delays the reads of the device.
+     */
+    public boolean registerOnReceiveLaunchPadEvents(OnReceiveLaunchPadListener listener, Executor executor) {
+        if (!receiveDataThread.isRunning) {
+            LOGGER.warning("registerOnReceiveLaunchPadEvents: you need to call enableReceiveDataProcess for receive data...");
+        }
+
+        if (listener == null || executor == null) {
+            return false;
+        }
+
+        return listenerDispatcher.register(new ListenerDispatcher.PadEventRegistration(listener, executor));
+    }
+
+    public boolean unregisterOnReceiveLaunchPadEvents(OnReceiveLaunchPadListener listener) {
+        if (listener == null) {
+            return false;
+        }
+
+        return listenerDispatcher.unregister(listener);
+    }
+
+    /**
+     * Register a listener getting all the events of a usb packet in one call, on a thread shared by the
+     * listeners of all connections.
+     */
+    public boolean registerOnReceiveLaunchPadBatchEvents(OnReceiveLaunchPadBatchListener listener) {
+        return registerOnReceiveLaunchPadBatchEvents(listener, ListenerDispatcher.getDefaultExecutor());
+    }
+
+    /**
+     * Register a listener getting all the events of a usb packet in one call, on the given executor.
+     */
+    public boolean registerOnReceiveLaunchPadBatchEvents(OnReceiveLaunchPadBatchListener listener,
+                                                         Executor executor) {
+        if (!receiveDataThread.isRunning) {
+            LOGGER.warning("registerOnReceiveLaunchPadBatchEvents: you need to call enableReceiveDataProcess for receive data...");
+        }
+
+        if (listener == null || executor == null) {
+            return false;
+        }
+
+        return listenerDispatcher.register(new ListenerDispatcher.BatchRegistration(listener, executor));
+    }
+
+    public boolean unregisterOnReceiveLaunchPadBatchEvents(OnReceiveLaunchPadBatchListener listener) {
+        if (listener == null) {
+            return false;
+        }
+
+        return listenerDispatcher.unregister(listener);
+    }
+
+    /**
+     * @param padIndex the pad, see {@link PadIndex}.
+     * @return true if the pad is held, from the events read by the receive thread.
+     */
+    public boolean isPressed(int padIndex) {
+        if (padIndex < 0 || padIndex >= PadIndex.COUNT) {
+            throw new IllegalArgumentException("this pad index isn't supported : " + padIndex);
+        }
+
+        return padStateTracker.isPressed(padIndex);
+    }
+
+    public int pressedCount() {
+        return padStateTracker.pressedCount();
+    }
+
+    /**
+     * Copy the held pads without allocation.
+     *
+     * @param padIndexes receive the held pads, see {@link PadIndex}.
+     * @return the number of held pads, can be greater than the size of the array.
+     */
+    public int getPressedPads(int[] padIndexes) {
+        return padStateTracker.copyPressed(padIndexes);
+    }
+
+    /**
+     * Register a listener called each time all the given pads become held together, on a thread shared by the
+     * listeners of all connections.
+     */
+    public boolean registerChord(int[] padIndexes, OnChordListener listener) {
+        return registerChord(padIndexes, listener, ListenerDispatcher.getDefaultExecutor());
+    }
+
+    public boolean registerChord(int[] padIndexes, OnChordListener listener, Executor executor) {
+        if (padIndexes == null || padIndexes.length == 0) {
+            throw new IllegalArgumentException("the padIndexes in argument Cannot be empty");
+        }
+
+        if (listener == null || executor == null) {
+            return false;
+        }
+
+        return padStateTracker.registerChord(new PadStateTracker.Chord(padIndexes, listener, executor));
+    }
+
+    public boolean unregisterChord(OnChordListener listener) {
+        return padStateTracker.unregisterChord(listener);
+    }
+
+    /**
+     * Set the listener of the gestures recognized on the pads, called on a thread shared by the listeners of
+     * all connections.
+     *
+     * @param listener the listener, or null to stop the recognition.
+     */
+    public void setOnPadGestureListener(OnPadGestureListener listener) {
+        setOnPadGestureListener(listener, ListenerDispatcher.getDefaultExecutor());
+    }
+
+    public synchronized void setOnPadGestureListener(OnPadGestureListener listener, Executor executor) {
+        if (padGestureEngine != null) {
+            padGestureEngine.stop();
+            padGestureEngine = null;
+        }
+
+        if (listener == null) {
+            return;
+        }
+
+        if (executor == null) {
+            throw new IllegalArgumentException("the executor in argument Cannot be null");
+        }
+
+        final PadGestureEngine engine = new PadGestureEngine(listener, executor);
+        engine.setReplaying(isReplaying);
+        engine.start();
+        padGestureEngine = engine;
+    }
+
+    /**
+     * @param recorder record the packets read from the device and their events, null to stop recording. The
+     *                 recorder isn't closed by the connection.
+     */
+    public void setInputRecorder(InputRecorder recorder) {
+        inputRecorder = recorder;
+    }
+
+    /**
+     * @param tap observe every packet sent to the device, for instance an {@link OutputTraceWriter}, null to
+     *            remove it.
+     */
+    public void setOutputTap(OutputTap tap) {
+        midiPacketWriter.setOutputTap(tap);
+    }
+
+    /**
+     * Called by {@link InputReplayer} before its first packet : the gestures are recognized on the times of the
+     * replayed packets until {@link #endReplay()}.
+     */
+    synchronized void beginReplay() {
+        if (receiveDataThread.isRunning) {
+            throw new IllegalStateException("You cannot replay packets while the receiveDataProcess is started");
+        }
+
+        isReplaying = true;
+        if (padGestureEngine != null) {
+            padGestureEngine.setReplaying(true);
+        }
+    }
+
+    synchronized void endReplay() {
+        isReplaying = false;
+        if (padGestureEngine != null) {
+            padGestureEngine.setReplaying(false);
+        }
+    }
+
+    /**
+     * Called by {@link InputReplayer} on its thread, handle a packet as if the device sent it.
+     *
+     * @param eventNanos the time of the packet for the gestures, at the recorded pace whatever the replay speed.
+     */
+    void replayPacket(byte[] packet, int length, long eventNanos) {
+        if (receiveDataThread.isRunning) {
+            throw new IllegalStateException("You cannot replay packets while the receiveDataProcess is started");
+        }
+
+        receiveDataThread.onPacket(packet, length, eventNanos);
+    }
+
+    /**
+     * @return the time between the end of the read of a usb packet and the end of its dispatch by the receive
+     * thread : parsing, pad state, gestures and queueing for the listeners.
+     */
+    public LatencyHistogram getInputDispatchLatency() {
+        return inputDispatchLatency;
+    }
+
+    /**
+     * @return the time between the end of the read of a usb packet and the return of a listener for each of its
+     * events, for all the listeners.
+     */
+    public LatencyHistogram getInputDeliveryLatency() {
+        return listenerDispatcher.getDeliveryLatency();
+    }
+
+    /**
+     * @return the delivery counters of a registered listener, or null if it isn't registered.
+     */
+    public DispatchStats getDispatchStats(Object listener) {
+        final ListenerDispatcher.Registration registration = listenerDispatcher.getRegistration(listener);
+        if (registration == null) {
+            return null;
+        }
+
+        return new DispatchStats(registration.getDeliveredCount(), registration.getDroppedCount(),
+                registration.getPendingCount(), registration.getLastLagNanos(), registration.getMaxLagNanos());
+    }
+
+    private void onTransportFailed(LaunchpadTransport failedTransport) {
+        internalDetach(failedTransport);
+    }
+
+    /**
+     * @param lostTransport the transport failing its transfers, or null for the current one. Ignored when it
+     *                      was already replaced.
+     */
+    private void internalDetach(LaunchpadTransport lostTransport) {
+        synchronized (attachLock) {
+            if (isDetached || (lostTransport != null && lostTransport != transport)) {
+                return;
+            }
+
+            isDetached = true;
+            // the device forgets its text and its leds, the leds are kept by the renderer
+            isTextScrolling = false;
+            ledFrameRenderer.onDeviceLost();
+        }
+
+        LOGGER.warning("device detached : " + transport.getName());
+
+        final OnDeviceStateListener listener = onDeviceStateListener;
+        if (listener != null) {
+            listener.onDeviceDetached();
+        }
+    }
+
+    private void internalEnablePad(int cell, byte color) {
+        internalWriteCell(cell, color);
+    }
+
+    private void internalDisablePad(int cell) {
+        internalWriteCell(cell, (byte) 0);
+    }
+
+    private void internalWriteCell(int cell, byte color) {
+        while (!ledCommandRing.offerWrite(cell, color)) {
+            waitForSendDataThread();
+        }
+        sendScheduler.signal();
+    }
+
+    private void internalWriteInteractiveCell(int cell, byte color) {
+        // the interactive ring coalesces when full, the offer always succeeds
+        interactiveRing.offerWrite(cell, color);
+        // flush now whatever the send policy
+        sendScheduler.wakeAt(System.nanoTime());
+    }
+
+    private void internalWriteOverlay(int cell, byte color) {
+        // the interactive ring coalesces the overlays too, the receive thread never waits
+        interactiveRing.offerOverlay(cell, color);
+        sendScheduler.wakeAt(System.nanoTime());
+    }
+
+    private void applyEchoRules(int cell, boolean isDown) {
+        final EchoRules rules = echoRules;
+        if (rules == null || !isSendDataProcessEnabled()) {
+            return;
+        }
+
+        if (isDown) {
+            final int downColor = rules.downColorOf(cell);
+            if (downColor != EchoRules.NO_ACTION) {
+                internalWriteOverlay(cell, (byte) downColor);
+            }
+            return;
+        }
+
+        final int upAction = rules.upActionOf(cell);
+        if (upAction == EchoRules.NO_ACTION) {
+            return;
+        }
+
+        // the color written under the overlay is shown by its clear, in a single message
+        if (upAction != EchoRules.RESTORE) {
+            internalWriteInteractiveCell(cell, (byte) upAction);
+        }
+        internalWriteOverlay(cell, LedFrameBuffer.NO_OVERLAY);
+    }
+
+    private void internalWriteFrameCommand(int type) {
+        while (!ledCommandRing.offerFrameCommand(type)) {
+            waitForSendDataThread();
+        }
+        sendScheduler.signal();
+    }
+
+    private void waitForSendDataThread() {
+        sendScheduler.signal();
+        LockSupport.parkNanos(FULL_QUEUE_WAIT_NANOS);
+    }
+
+    private boolean isSendDataProcessEnabled() {
+        return sendDataThread.isRunning || isAttachedToSendLoop;
+    }
+
+    private void internalDisableSendDataProcess() {
+        if (isAttachedToSendLoop) {
+            isAttachedToSendLoop = false;
+            sendLoop.detach(this);
+            sendScheduler.setSendLoop(null);
+        } else {
+            sendDataThread.stopThread();
+        }
+    }
+
+    /**
+     * Called by the send loop to compute its next wake up.
+     */
+    long nanosUntilFlush(long now) {
+        return sendScheduler.nanosUntilFlush(now);
+    }
+
+    /**
+     * Called by the send loop in each pass, flush the pending changes if the send policy allows it.
+     */
+    void flushIfDue(long now) {
+        if (isAttachedToSendLoop && sendScheduler.tryBeginFlush(now)) {
+            flushPendingLeds();
+        }
+    }
+
+    private void flushPendingLeds() {
+        do {
+            final long flippedFrame = ledFrameRenderer.flush();
+            final OnFrameFlippedListener listener = onFrameFlippedListener;
+            if (flippedFrame != 0 && listener != null) {
+                listener.onFrameFlipped(flippedFrame);
+            }
+        } while (!ledCommandRing.isEmpty());
+    }
+
+    private void checkSendDataThreadRunning() {
+        if (!isSendDataProcessEnabled()) {
+            throw new IllegalStateException("You need to call enableSendDataProcess before send data...");
+        }
+    }
+
+    private class SendDataThread extends Thread {
+
+        private boolean isRunning;
+
+        private boolean isInterrupted;
+
+        @Override
+        public synchronized void start() {
+            isInterrupted = false;
+            super.start();
+        }
+
+        @Override
+        public void run() {
+            isRunning = true;
+            super.run();
+            while (!isInterrupted() && !isInterrupted) {
+                try {
+                    sendScheduler.awaitFlush();
+                    if (isRunning) {
+                        flushPendingLeds();
+                    }
+                } catch (InterruptedException e) {
+                    isInterrupted = true;
+                }
+            }
+        }
+
+        void setIsRunning(boolean isRunning) {
+            this.isRunning = isRunning;
+        }
+
+        void stopThread() {
+            setIsRunning(false);
+            isInterrupted = true;
+            interrupt();
+        }
+    }
+
+    private class ReceiveDataThread extends Thread implements LaunchpadInputParser.EventSink {
+
+        private boolean isRunning;
+
+        private boolean isInterrupted;
+
+        private final byte[] recordIn;
+        private final LaunchpadInputParser inputParser;
+        private final TransferFailures failures = new TransferFailures();
+        private final int[] pressedCells = new int[PadIndex.COUNT];
+        private long packetTimestampNanos;
+        private long eventTimestampNanos;
+
+        private ReceiveDataThread() {
+            this.recordIn = new byte[maxReadPacketSize];
+            this.inputParser = new LaunchpadInputParser();
+        }
+
+        @Override
+        public synchronized void start() {
+            isInterrupted = false;
+            super.start();
+        }
+
+        @Override
+        public void run() {
+            isRunning = true;
+            super.run();
+            while (!isInterrupted() && !isInterrupted) {
+                if (isRunning) {
+                    if (isDetached) {
+                        releasePressedPads();
+                        // woken up by the reconnection of the device or the stop of this thread
+                        LockSupport.park(this);
+                        continue;
+                    }
+
+                    final LaunchpadTransport currentTransport = transport;
+                    final int receivedLength = currentTransport.readPacket(recordIn);
+                    if (receivedLength > 0) {
+                        onPacket(recordIn, receivedLength, System.nanoTime());
+                    }
+                    if (failures.isDeviceLost(receivedLength)) {
+                        onTransportFailed(currentTransport);
+                    } else if (receivedLength < 0) {
+                        // an unplugged device fails its reads at once
+                        LockSupport.parkNanos(FAILED_READ_WAIT_NANOS);
+                    }
+                }
+            }
+        }
+
+        /**
+         * The releases of the pads held when the device was lost never come, dispatch them instead.
+         */
+        private void releasePressedPads() {
+            final int pressedCount = padStateTracker.copyPressed(pressedCells);
+            if (pressedCount == 0) {
+                return;
+            }
+
+            packetTimestampNanos = System.nanoTime();
+            eventTimestampNanos = packetTimestampNanos;
+            for (int i = 0; i < pressedCount; i++) {
+                onPadEvent(pressedCells[i], false);
+            }
+            listenerDispatcher.schedule();
+        }
+
+        /**
+         * Called by this thread, or by a replay while this thread isn't started. The latencies are measured from
+         * the call, even for a replay.
+         *
+         * @param eventNanos the time of the packet for the gestures.
+         */
+        void onPacket(byte[] packet, int length, long eventNanos) {
+            packetTimestampNanos = System.nanoTime();
+            eventTimestampNanos = eventNanos;
+
+            final InputRecorder recorder = inputRecorder;
+            if (recorder != null) {
+                recorder.recordPacket(packetTimestampNanos, packet, length);
+            }
+
+            inputParser.parse(packet, length, this);
+            listenerDispatcher.schedule();
+            inputDispatchLatency.record(System.nanoTime() - packetTimestampNanos);
+        }
+
+        @Override
+        public void onPadEvent(int cell, boolean isDown) {
+            final InputRecorder recorder = inputRecorder;
+            if (recorder != null) {
+                recorder.recordEvent(packetTimestampNanos, cell, isDown);
+            }
+
+            applyEchoRules(cell, isDown);
+            padStateTracker.update(cell, isDown);
+
+            final PadGestureEngine engine = padGestureEngine;
+            if (engine != null) {
+                engine.onPadEvent(cell, isDown, eventTimestampNanos);
+            }
+            listenerDispatcher.dispatch(cell, isDown, packetTimestampNanos);
+        }
+
+        @Override
+        public void onTextScrolled() {
+            isTextScrolling = false;
+
+            final TextScrolledCallback callback = textScrolledCallback;
+            if (callback != null) {
+                callback.executor.execute(callback);
+            }
+        }
+
+        void setIsRunning(boolean isRunning) {
+            this.isRunning = isRunning;
+        }
+
+        void stopThread() {
+            setIsRunning(false);
+            isInterrupted = true;
+            interrupt();
+        }
+    }
+
+    public interface OnReceiveLaunchPadListener {
+        void OnReceiveTopControlEvent(ControlTopPad controlTopPad, boolean isDown);
+
+        void OnReceiveRightControlEvent(ControlRightPad controlRightPad, boolean isDown);
+
+        void OnReceiveMainPadEvent(int padId, boolean isDown);
+    }
+
+    public interface OnReceiveLaunchPadBatchListener {
+        /**
+         * Called once per usb packet. The arrays are reused by the next call, only the first count values are
+         * set.
+         *
+         * @param padIndexes      the pads of the events, see {@link PadIndex}.
+         * @param isDown          the down or up state of each event.
+         * @param timestampsNanos the {@link System#nanoTime()} of the read of each event.
+         */
+        void onReceiveLaunchPadEvents(int[] padIndexes, boolean[] isDown, long[] timestampsNanos, int count);
+    }
+
+    public interface OnChordListener {
+        /**
+         * @param padIndexes the pads of the chord, must not be modified.
+         */
+        void onChordPressed(int[] padIndexes);
+    }
+
+    public interface OnPadGestureListener {
+        /**
+         * @param padIndex the pad held longer than the long press delay, see {@link PadIndex}.
+         */
+        void onLongPress(int padIndex);
+
+        void onDoubleTap(int padIndex);
+
+        /**
+         * A grid pad is pressed while a neighbouring one is still held.
+         */
+        void onDrag(int fromPadIndex, int toPadIndex);
+
+        /**
+         * Quick successive presses on adjacent grid pads in one direction.
+         *
+         * @param line the row of the grid for a horizontal swipe, the column for a vertical one.
+         */
+        void onSwipe(SwipeDirection direction, int line);
+    }
+
+    public interface OnFrameFlippedListener {
+        void onFrameFlipped(long frame);
+    }
+
+    public interface OnTextScrolledListener {
+        void onTextScrolled();
+    }
+
+    public interface OnDeviceStateListener {
+        /**
+         * The device is unplugged or fails all its transfers, the connection waits for its reconnection.
+         */
+        void onDeviceDetached();
+
+        /**
+         * The device is plugged again, its leds are restored by the next flush.
+         */
+        void onDeviceReattached();
+    }
+
+    /**
+     * Count the failed transfers of one thread, the device is lost when they keep failing for
+     * {@link #DETACH_DELAY_NANOS}.
+     */
+    private static final class TransferFailures {
+
+        private boolean isFailing;
+        private long firstFailureNanos;
+
+        /**
+         * @param result the result of a transfer, negative on failure.
+         * @return true once the transfers have been failing for too long.
+         */
+        boolean isDeviceLost(int result) {
+            if (result >= 0) {
+                isFailing = false;
+                return false;
+            }
+
+            final long now = System.nanoTime();
+            if (!isFailing) {
+                isFailing = true;
+                firstFailureNanos = now;
+                return false;
+            }
+
+            if (now - firstFailureNanos < DETACH_DELAY_NANOS) {
+                return false;
+            }
+
+            isFailing = false;
+            return true;
+        }
+    }
+
+    private static final class TextScrolledCallback implements Runnable {
+
+        private final OnTextScrolledListener listener;
+        private final Executor executor;
+
+        private TextScrolledCallback(OnTextScrolledListener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        @Override
+        public void run() {
+            listener.onTextScrolled();
+        }
+    }
+
+}
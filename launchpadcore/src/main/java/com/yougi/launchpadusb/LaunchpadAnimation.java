@@ -0,0 +1,277 @@
+package com.yougi.launchpadusb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Precomputed led animation on a region of the pads, played by
+ * {@link LaunchPadConnection#playAnimation(LaunchpadAnimation)}.
+ * <p>
+ * Every frame is computed when the animation is built. Playing a frame only writes the cells of the region whose
+ * requested color differs from the frame : the changes since the previous frame, and the cells written by the
+ * application meanwhile.
+ */
+public final class LaunchpadAnimation {
+
+    private static final int COLOR_MASK = PadColor.LEVEL_MASK | PadColor.BLINK_MASK;
+
+    final int[] regionCells;
+    final long frameIntervalNanos;
+    final boolean isLooping;
+
+    /**
+     * The colors of the region for each frame, indexed like {@link #regionCells}.
+     */
+    final byte[][] frames;
+
+    private final int framesPerSecond;
+
+    private LaunchpadAnimation(int[] regionCells, int framesPerSecond, boolean isLooping, byte[][] frames) {
+        this.regionCells = regionCells;
+        this.framesPerSecond = framesPerSecond;
+        this.frameIntervalNanos = 1000000000L / framesPerSecond;
+        this.isLooping = isLooping;
+        this.frames = frames;
+    }
+
+    public int getFrameCount() {
+        return frames.length;
+    }
+
+    public int getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    public boolean isLooping() {
+        return isLooping;
+    }
+
+    /**
+     * @return a copy of the cells drawn by this animation, indexed by {@link PadIndex}.
+     */
+    public int[] getRegion() {
+        return regionCells.clone();
+    }
+
+    boolean overlaps(LaunchpadAnimation other) {
+        for (int cell : regionCells) {
+            for (int otherCell : other.regionCells) {
+                if (cell == otherCell) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compute the colors of a frame of an animation.
+     */
+    public interface FrameGenerator {
+
+        /**
+         * @param frameIndex the frame to compute, from 0.
+         * @param colors     receive the color of every led, indexed by {@link PadIndex}. Only the cells of the
+         *                   region are used. The array holds the previous frame, or only disabled leds for the
+         *                   first one.
+         */
+        void generate(int frameIndex, byte[] colors);
+    }
+
+    public static final class Builder {
+
+        private final int framesPerSecond;
+        private int[] regionCells;
+        private boolean isLooping;
+        private boolean isInterpolated;
+
+        private final ArrayList<byte[]> keyframes = new ArrayList<>();
+        private final ArrayList<Integer> keyframeDurations = new ArrayList<>();
+
+        private FrameGenerator generator;
+        private int generatedFrameCount;
+
+        /**
+         * @param framesPerSecond the rate of the frames, between 1 and 1000.
+         */
+        public Builder(int framesPerSecond) {
+            if (framesPerSecond < 1 || framesPerSecond > 1000) {
+                throw new IllegalArgumentException("the framesPerSecond in argument must be between 1 and 1000");
+            }
+
+            this.framesPerSecond = framesPerSecond;
+        }
+
+        /**
+         * @param cells the cells drawn by the animation, indexed by {@link PadIndex}. Every cell by default.
+         */
+        public Builder setRegion(int... cells) {
+            if (cells == null || cells.length == 0) {
+                throw new IllegalArgumentException("the cells in argument Cannot be null or empty");
+            }
+
+            final boolean[] isInRegion = new boolean[PadIndex.COUNT];
+            for (int cell : cells) {
+                if (cell < 0 || cell >= PadIndex.COUNT) {
+                    throw new IllegalArgumentException("the cell " + cell + " isn't a valid pad index");
+                }
+                if (isInRegion[cell]) {
+                    throw new IllegalArgumentException("the cell " + cell + " is given twice");
+                }
+                isInRegion[cell] = true;
+            }
+
+            this.regionCells = cells.clone();
+            return this;
+        }
+
+        /**
+         * @param isLooping true to restart the animation after its last frame, otherwise the last frame stays
+         *                  on the leds.
+         */
+        public Builder setLooping(boolean isLooping) {
+            this.isLooping = isLooping;
+            return this;
+        }
+
+        /**
+         * @param isInterpolated true to fade the red and green levels from each keyframe to the next one during
+         *                       its duration, otherwise each keyframe is held.
+         */
+        public Builder setInterpolated(boolean isInterpolated) {
+            this.isInterpolated = isInterpolated;
+            return this;
+        }
+
+        /**
+         * @param colors         the color of every led, indexed by {@link PadIndex} and built with
+         *                       {@link PadColor#of(PadColor.Red, PadColor.Green)}.
+         * @param durationFrames the number of frames of this keyframe.
+         */
+        public Builder addKeyframe(byte[] colors, int durationFrames) {
+            if (colors == null || colors.length != PadIndex.COUNT) {
+                throw new IllegalArgumentException("the colors in argument must hold " + PadIndex.COUNT + " values");
+            }
+
+            if (durationFrames < 1) {
+                throw new IllegalArgumentException("the durationFrames in argument must be positive");
+            }
+
+            keyframes.add(colors.clone());
+            keyframeDurations.add(durationFrames);
+            return this;
+        }
+
+        /**
+         * Compute the frames with a generator instead of keyframes. The generator is called frameCount times by
+         * {@link #build()}.
+         */
+        public Builder setGenerator(FrameGenerator generator, int frameCount) {
+            if (generator == null) {
+                throw new IllegalArgumentException("the generator in argument Cannot be null");
+            }
+
+            if (frameCount < 1) {
+                throw new IllegalArgumentException("the frameCount in argument must be positive");
+            }
+
+            this.generator = generator;
+            this.generatedFrameCount = frameCount;
+            return this;
+        }
+
+        public LaunchpadAnimation build() {
+            if (generator != null && !keyframes.isEmpty()) {
+                throw new IllegalStateException("You cannot build an animation with both keyframes and a generator");
+            }
+
+            if (generator == null && keyframes.isEmpty()) {
+                throw new IllegalStateException("You need to add keyframes or a generator before build");
+            }
+
+            int[] cells = regionCells;
+            if (cells == null) {
+                cells = new int[PadIndex.COUNT];
+                for (int cell = 0; cell < PadIndex.COUNT; cell++) {
+                    cells[cell] = cell;
+                }
+            }
+
+            final byte[][] frames = generator != null ? generateFrames(cells) : interpolateKeyframes(cells);
+            return new LaunchpadAnimation(cells, framesPerSecond, isLooping, frames);
+        }
+
+        private byte[][] generateFrames(int[] cells) {
+            final byte[][] frames = new byte[generatedFrameCount][];
+            final byte[] colors = new byte[PadIndex.COUNT];
+            for (int i = 0; i < generatedFrameCount; i++) {
+                generator.generate(i, colors);
+                frames[i] = extractRegion(colors, cells);
+            }
+            return frames;
+        }
+
+        private byte[][] interpolateKeyframes(int[] cells) {
+            int frameCount = 0;
+            for (int duration : keyframeDurations) {
+                frameCount += duration;
+            }
+
+            final byte[][] frames = new byte[frameCount][];
+            int frame = 0;
+            for (int k = 0; k < keyframes.size(); k++) {
+                final byte[] from = extractRegion(keyframes.get(k), cells);
+                final int duration = keyframeDurations.get(k);
+
+                final byte[] to;
+                if (!isInterpolated) {
+                    to = null;
+                } else if (k + 1 < keyframes.size()) {
+                    to = extractRegion(keyframes.get(k + 1), cells);
+                } else if (isLooping) {
+                    to = extractRegion(keyframes.get(0), cells);
+                } else {
+                    to = null;
+                }
+
+                for (int step = 0; step < duration; step++) {
+                    frames[frame++] = to == null ? from : blend(from, to, step, duration);
+                }
+            }
+            return frames;
+        }
+
+        private static byte[] extractRegion(byte[] colors, int[] cells) {
+            final byte[] region = new byte[cells.length];
+            for (int i = 0; i < cells.length; i++) {
+                region[i] = (byte) (colors[cells[i]] & COLOR_MASK);
+            }
+            return region;
+        }
+
+        private static byte[] blend(byte[] from, byte[] to, int step, int duration) {
+            if (step == 0) {
+                return from;
+            }
+
+            final byte[] colors = new byte[from.length];
+            for (int i = 0; i < from.length; i++) {
+                final int red = level(from[i] & 0x03, to[i] & 0x03, step, duration);
+                final int green = level((from[i] >> 4) & 0x03, (to[i] >> 4) & 0x03, step, duration);
+                colors[i] = (byte) (red + (green << 4) + (from[i] & PadColor.BLINK_MASK));
+            }
+            return colors;
+        }
+
+        private static int level(int from, int to, int step, int duration) {
+            // rounded to the nearest of the 4 levels of the leds
+            return from + ((to - from) * step * 2 + (to > from ? duration : -duration)) / (duration * 2);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LaunchpadAnimation{frames=" + frames.length + ", fps=" + framesPerSecond + ", looping=" + isLooping
+                + ", region=" + Arrays.toString(regionCells) + '}';
+    }
+}
@@ -0,0 +1,128 @@
+package com.yougi.launchpadusb;
+
+import java.util.Arrays;
+
+/**
+ * Decode the midi stream sent by the device into pad events.
+ * <p>
+ * The parser is a state machine fed byte by byte : the running status and a partial message are kept between
+ * two calls, so a message split over two usb packets is decoded as well. A 256 entries table gives the cell
+ * of a note or control change key, so each byte is decoded in constant time and without allocation.
+ */
+final class LaunchpadInputParser {
+
+    private static final int NO_CELL = -1;
+    private static final int NO_DATA = -1;
+
+    private static final int STATUS_NOTE_OFF = 0x80;
+    private static final int STATUS_NOTE_ON = 0x90;
+    private static final int STATUS_CONTROL_CHANGE = 0xB0;
+    private static final int STATUS_PROGRAM_CHANGE = 0xC0;
+    private static final int STATUS_CHANNEL_PRESSURE = 0xD0;
+    private static final int STATUS_SYSEX_START = 0xF0;
+    private static final int STATUS_SYSEX_END = 0xF7;
+    private static final int STATUS_FIRST_REALTIME = 0xF8;
+
+    /**
+     * Cell of each key, indexed by the key for notes and by 128 + the key for control changes.
+     */
+    private static final byte[] CELL_LOOKUP = new byte[256];
+
+    static {
+        Arrays.fill(CELL_LOOKUP, (byte) NO_CELL);
+        for (int cell = 0; cell < PadIndex.COUNT; cell++) {
+            final int controlChangeOffset =
+                    LaunchpadProtocol.statusOf(cell) == LaunchpadProtocol.STATUS_CONTROL_CHANGE ? 128 : 0;
+            CELL_LOOKUP[controlChangeOffset + LaunchpadProtocol.keyOf(cell)] = (byte) cell;
+        }
+    }
+
+    private int runningStatus;
+    private int pendingData = NO_DATA;
+    private boolean isInSysex;
+
+    void parse(byte[] buffer, int length, EventSink eventSink) {
+        for (int i = 0; i < length; i++) {
+            final int value = buffer[i] & 0xFF;
+
+            if (value >= STATUS_FIRST_REALTIME) {
+                // real time messages can be inserted anywhere and don't change the state
+                continue;
+            }
+
+            if (value >= 0x80) {
+                pendingData = NO_DATA;
+                if (value == STATUS_SYSEX_START) {
+                    isInSysex = true;
+                    runningStatus = 0;
+                } else if (value == STATUS_SYSEX_END) {
+                    isInSysex = false;
+                } else if (value > STATUS_SYSEX_START) {
+                    runningStatus = 0;
+                } else {
+                    isInSysex = false;
+                    runningStatus = value & 0xF0;
+                }
+                continue;
+            }
+
+            if (isInSysex || runningStatus == 0) {
+                continue;
+            }
+
+            if (runningStatus == STATUS_PROGRAM_CHANGE || runningStatus == STATUS_CHANNEL_PRESSURE) {
+                // single data byte messages, not sent by the pads
+                continue;
+            }
+
+            if (pendingData == NO_DATA) {
+                pendingData = value;
+                continue;
+            }
+
+            final int key = pendingData;
+            pendingData = NO_DATA;
+            onMessage(key, value, eventSink);
+        }
+    }
+
+    private void onMessage(int key, int velocity, EventSink eventSink) {
+        final int cell;
+        final boolean isDown;
+        switch (runningStatus) {
+            case STATUS_NOTE_ON:
+                cell = CELL_LOOKUP[key];
+                isDown = velocity > 0;
+                break;
+            case STATUS_NOTE_OFF:
+                cell = CELL_LOOKUP[key];
+                isDown = false;
+                break;
+            case STATUS_CONTROL_CHANGE:
+                if (key == LaunchpadProtocol.KEY_BUFFER_CONTROL) {
+                    if (velocity == LaunchpadProtocol.BUFFER_CONTROL_TEXT_SCROLLED) {
+                        eventSink.onTextScrolled();
+                    }
+                    return;
+                }
+                cell = CELL_LOOKUP[128 + key];
+                isDown = velocity > 0;
+                break;
+            default:
+                return;
+        }
+
+        if (cell != NO_CELL) {
+            eventSink.onPadEvent(cell, isDown);
+        }
+    }
+
+    interface EventSink {
+        void onPadEvent(int cell, boolean isDown);
+
+        /**
+         * The text scrolled by the device ended.
+         */
+        void onTextScrolled();
+    }
+}
@@ -0,0 +1,131 @@
+package com.yougi.launchpadusb;
+
+final class LaunchpadProtocol {
+
+    static final Byte[][] PAD_MAP =
+            {{104, 105, 106, 107, 108, 109, 110, 111, null},
+                    {0, 1, 2, 3, 4, 5, 6, 7, 8},
+                    {16, 17, 18, 19, 20, 21, 22, 23, 24},
+                    {32, 33, 34, 35, 36, 37, 38, 39, 40},
+                    {48, 49, 50, 51, 52, 53, 54, 55, 56},
+                    {64, 65, 66, 67, 68, 69, 70, 71, 72},
+                    {80, 81, 82, 83, 84, 85, 86, 87, 88},
+                    {96, 97, 98, 99, 100, 101, 102, 103, 104},
+                    {112, 113, 114, 115, 116, 117, 118, 119, 120}};
+
+    static final byte STATUS_NOTE_ON = (byte) 144;
+    static final byte STATUS_CONTROL_CHANGE = (byte) 176;
+
+    static final byte STATUS_RAPID_UPDATE = (byte) 146;
+
+    /**
+     * Flags of a led velocity : write the color in both buffers of the device and clear nothing.
+     */
+    static final byte VELOCITY_FLAG_COPY = 4;
+    static final byte VELOCITY_FLAG_CLEAR = 8;
+    static final byte VELOCITY_FLAGS_BOTH_BUFFERS = VELOCITY_FLAG_COPY | VELOCITY_FLAG_CLEAR;
+
+    /**
+     * Control change selecting the displayed and the updated led buffers of the device.
+     */
+    static final byte KEY_BUFFER_CONTROL = 0;
+    private static final int BUFFER_CONTROL_BASE = 32;
+    private static final int BUFFER_CONTROL_FLAG_COPY = 16;
+    private static final int BUFFER_CONTROL_FLAG_FLASH = 8;
+
+    /**
+     * Value of the buffer control message sent by the device when a scrolling text ends.
+     */
+    static final int BUFFER_CONTROL_TEXT_SCROLLED = 3;
+
+    /**
+     * System exclusive message scrolling a text on the device : the header, the color, the text then the end.
+     */
+    private static final byte[] SCROLL_TEXT_HEADER = {(byte) 0xF0, 0x00, 0x20, 0x29, 0x09};
+    private static final byte SYSEX_END = (byte) 0xF7;
+    private static final int SCROLL_TEXT_FLAG_LOOP = 64;
+    static final int SCROLL_TEXT_MIN_SPEED = 1;
+    static final int SCROLL_TEXT_MAX_SPEED = 7;
+
+    /**
+     * Bytes of a full frame sent with the rapid led update : a note on to reset the cursor of the device, then
+     * the status and the 80 velocities with running status.
+     */
+    static final int RAPID_FRAME_LENGTH = 3 + 1 + PadIndex.COUNT;
+
+    /**
+     * Cells are the leds of the device, in the order of {@link PadIndex}.
+     */
+    private static final byte[] CELL_STATUS = new byte[PadIndex.COUNT];
+    private static final byte[] CELL_KEY = new byte[PadIndex.COUNT];
+
+    static {
+        for (int padId = 0; padId < PadIndex.GRID_COUNT; padId++) {
+            CELL_STATUS[padId] = STATUS_NOTE_ON;
+            CELL_KEY[padId] = PAD_MAP[1 + padId / 8][padId % 8];
+        }
+
+        for (ControlRightPad controlRightPad : ControlRightPad.values()) {
+            final int cell = PadIndex.of(controlRightPad);
+            CELL_STATUS[cell] = STATUS_NOTE_ON;
+            CELL_KEY[cell] = PAD_MAP[controlRightPad.padMapLine][controlRightPad.padMapColumn];
+        }
+
+        for (ControlTopPad controlTopPad : ControlTopPad.values()) {
+            final int cell = PadIndex.of(controlTopPad);
+            CELL_STATUS[cell] = STATUS_CONTROL_CHANGE;
+            CELL_KEY[cell] = PAD_MAP[controlTopPad.padMapLine][controlTopPad.padMapColumn];
+        }
+    }
+
+    private LaunchpadProtocol() {
+        // static access
+    }
+
+    static byte statusOf(int cell) {
+        return CELL_STATUS[cell];
+    }
+
+    static byte keyOf(int cell) {
+        return CELL_KEY[cell];
+    }
+
+    /**
+     * @param copy copy the leds of the new displayed buffer in the new updated buffer.
+     * @return the value of the buffer control message.
+     */
+    static byte bufferControl(int displayBuffer, int updateBuffer, boolean copy) {
+        return (byte) (BUFFER_CONTROL_BASE + displayBuffer + 4 * updateBuffer
+                + (copy ? BUFFER_CONTROL_FLAG_COPY : 0));
+    }
+
+    /**
+     * @return the value of the buffer control message flipping the displayed buffer continuously, at the flash
+     * rate of the device, while the leds are written in the given buffer.
+     */
+    static byte autoFlash(int updateBuffer) {
+        return (byte) (BUFFER_CONTROL_BASE + BUFFER_CONTROL_FLAG_FLASH + 4 * updateBuffer);
+    }
+
+    /**
+     * @param color the color of the text, 0 with an empty text stops the scrolling.
+     * @param text  ascii characters, the bytes 1 to 7 change the speed from there.
+     * @return the system exclusive message scrolling the text.
+     */
+    static byte[] scrollText(byte color, boolean isLooping, int speed, String text) {
+        final int speedLength = speed > 0 ? 1 : 0;
+        final byte[] message = new byte[SCROLL_TEXT_HEADER.length + 1 + speedLength + text.length() + 1];
+        System.arraycopy(SCROLL_TEXT_HEADER, 0, message, 0, SCROLL_TEXT_HEADER.length);
+
+        int length = SCROLL_TEXT_HEADER.length;
+        message[length++] = (byte) (color | (isLooping ? SCROLL_TEXT_FLAG_LOOP : 0));
+        if (speed > 0) {
+            message[length++] = (byte) speed;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            message[length++] = (byte) text.charAt(i);
+        }
+        message[length] = SYSEX_END;
+        return message;
+    }
+}
@@ -0,0 +1,46 @@
+package com.yougi.launchpadusb;
+
+/**
+ * Asynchronous transfers with a device, modeled on the usb requests of android : transfers are queued without
+ * waiting and their completions are reaped one by one, in any order. Used by {@link PipelinedTransport} to
+ * keep several transfers in flight.
+ * <p>
+ * A request id is always used in the same direction, and queued again only after its completion is reaped.
+ * {@link #awaitCompletion()} is never called by two threads at the same time, but the transfers can be queued
+ * while an other thread waits for a completion.
+ */
+public interface LaunchpadRequestQueue {
+
+    /**
+     * Queue the read of a packet into the buffer.
+     *
+     * @return false if the transfer cannot be queued.
+     */
+    boolean queueRead(int requestId, byte[] buffer);
+
+    /**
+     * Queue the write of the first bytes of the buffer, the buffer isn't modified until the completion.
+     *
+     * @return false if the transfer cannot be queued.
+     */
+    boolean queueWrite(int requestId, byte[] buffer, int length);
+
+    /**
+     * Wait for the completion of a queued transfer.
+     *
+     * @return the completion packed by {@link RequestCompletion#of(int, int)}, or a negative value if the queue failed
+     * or is closed.
+     */
+    long awaitCompletion();
+
+    int getMaxReadPacketSize();
+
+    int getMaxWritePacketSize();
+
+    String getName();
+
+    /**
+     * Release the device, a thread waiting for a completion gets a failure.
+     */
+    void close();
+}
@@ -0,0 +1,206 @@
+package com.yougi.launchpadusb;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One thread flushing the leds of several connections, instead of one send thread per connection.
+ * <p>
+ * A connection built with a loop attaches to it in {@link LaunchPadConnection#enableSendDataProcess()}. The
+ * thread waits without timeout while no connection has pending changes, and otherwise until the nearest
+ * deadline of their {@link SendPolicy}, then flushes every due connection in the same pass. It is started by
+ * the first attached connection and ends when the last one is detached.
+ * <p>
+ * The broadcast methods hold the passes while they queue the commands of every connection, so the frames are
+ * flushed to all the devices in the same pass. A hold never lasts more than {@link #MAX_HOLD_NANOS}, so a
+ * writer waiting for a full queue cannot block the loop.
+ */
+public final class LaunchpadSendLoop {
+
+    static final long MAX_HOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private static final LaunchPadConnection[] NO_CONNECTION = new LaunchPadConnection[0];
+
+    private volatile LaunchPadConnection[] connections = NO_CONNECTION;
+
+    private Thread thread;
+    private boolean isWoken;
+    private boolean isFlushing;
+    private int holdCount;
+    private long holdDeadlineNanos;
+
+    /**
+     * @return the connections attached to this loop.
+     */
+    public LaunchPadConnection[] getConnections() {
+        return connections.clone();
+    }
+
+    /**
+     * Set the same colors on every attached connection, see {@link LaunchPadConnection#setFrame(byte[])}.
+     */
+    public void setFrameOnAll(byte[] colors) {
+        hold();
+        try {
+            for (LaunchPadConnection connection : connections) {
+                connection.setFrame(colors);
+            }
+        } finally {
+            release();
+        }
+    }
+
+    public void beginFrameOnAll() {
+        for (LaunchPadConnection connection : connections) {
+            connection.beginFrame();
+        }
+    }
+
+    /**
+     * Commit the begun frame of every attached connection, the frames are displayed in the same pass.
+     */
+    public void commitFrameOnAll() {
+        hold();
+        try {
+            for (LaunchPadConnection connection : connections) {
+                connection.commitFrame();
+            }
+        } finally {
+            release();
+        }
+    }
+
+    synchronized void attach(LaunchPadConnection connection) {
+        final LaunchPadConnection[] current = connections;
+        final LaunchPadConnection[] updated = new LaunchPadConnection[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = connection;
+        connections = updated;
+
+        if (thread == null) {
+            thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runLoop();
+                }
+            }, "LaunchpadSendLoop");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        wakeUpLocked();
+    }
+
+    synchronized void detach(LaunchPadConnection connection) {
+        final LaunchPadConnection[] current = connections;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == connection) {
+                final LaunchPadConnection[] updated = new LaunchPadConnection[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                connections = updated;
+                break;
+            }
+        }
+        wakeUpLocked();
+    }
+
+    /**
+     * Called by the schedulers of the connections when changes become pending.
+     */
+    synchronized void wakeUp() {
+        wakeUpLocked();
+    }
+
+    private void wakeUpLocked() {
+        isWoken = true;
+        notifyAll();
+    }
+
+    private synchronized void hold() {
+        // the current pass must end, otherwise a part of the connections could be flushed before the others
+        while (isFlushing && Thread.currentThread() != thread) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        if (holdCount++ == 0) {
+            holdDeadlineNanos = System.nanoTime() + MAX_HOLD_NANOS;
+        }
+    }
+
+    private synchronized void release() {
+        holdCount--;
+        wakeUpLocked();
+    }
+
+    private void runLoop() {
+        while (true) {
+            final LaunchPadConnection[] current;
+            synchronized (this) {
+                try {
+                    if (!awaitDueConnection()) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    thread = null;
+                    return;
+                }
+                isFlushing = true;
+                current = connections;
+            }
+
+            try {
+                final long now = System.nanoTime();
+                for (LaunchPadConnection connection : current) {
+                    connection.flushIfDue(now);
+                }
+            } finally {
+                synchronized (this) {
+                    isFlushing = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false when the last connection is detached, the thread must end.
+     */
+    private boolean awaitDueConnection() throws InterruptedException {
+        while (true) {
+            if (connections.length == 0) {
+                thread = null;
+                return false;
+            }
+
+            final long now = System.nanoTime();
+            long remaining = Long.MAX_VALUE;
+            if (holdCount > 0 && holdDeadlineNanos - now > 0) {
+                remaining = holdDeadlineNanos - now;
+            } else {
+                for (LaunchPadConnection connection : connections) {
+                    remaining = Math.min(remaining, connection.nanosUntilFlush(now));
+                }
+                if (remaining <= 0) {
+                    isWoken = false;
+                    return true;
+                }
+            }
+
+            if (isWoken) {
+                // a change arrived since the last check
+                isWoken = false;
+                continue;
+            }
+
+            if (remaining == Long.MAX_VALUE) {
+                wait();
+            } else {
+                wait(remaining / 1000000, (int) (remaining % 1000000));
+            }
+        }
+    }
+}
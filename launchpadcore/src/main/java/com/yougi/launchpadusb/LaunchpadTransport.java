@@ -0,0 +1,41 @@
+package com.yougi.launchpadusb;
+
+/**
+ * Link between a {@link LaunchPadConnection} and a device, carrying raw midi bytes.
+ * <p>
+ * The receive thread of the connection is the only caller of {@link #readPacket(byte[])} and the send thread
+ * the only caller of {@link #writePacket(byte[], int)}, so an implementation only has to support one reader
+ * and one writer at the same time.
+ */
+public interface LaunchpadTransport {
+
+    /**
+     * Wait for the next packet sent by the device.
+     *
+     * @param buffer receive the packet, holds {@link #getMaxReadPacketSize()} bytes.
+     * @return the number of bytes read, 0 if nothing was read, or a negative value on failure.
+     */
+    int readPacket(byte[] buffer);
+
+    /**
+     * Send a packet to the device.
+     *
+     * @param length the number of bytes to send, at most {@link #getMaxWritePacketSize()}.
+     * @return the number of bytes sent, or a negative value on failure.
+     */
+    int writePacket(byte[] buffer, int length);
+
+    int getMaxReadPacketSize();
+
+    int getMaxWritePacketSize();
+
+    /**
+     * @return a readable name of the device.
+     */
+    String getName();
+
+    /**
+     * Release the device, the reads and writes fail after this call.
+     */
+    void close();
+}
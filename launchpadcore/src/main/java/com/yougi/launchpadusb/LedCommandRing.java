@@ -0,0 +1,373 @@
+package com.yougi.launchpadusb;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free bounded queue of the led commands, written by any thread and drained by the send thread.
+ * <p>
+ * A command is packed in an int (type, cell and color), so offering and draining never allocate. The time of each
+ * offer is kept beside its command, for the latency of the send lanes. Each slot has a sequence number telling if
+ * it is free or published for the position of the queue, producers claim a position with a compare and set on the
+ * tail. The head is also moved by compare and set, because with {@link OverflowPolicy#DROP_OLDEST} a producer
+ * removes the oldest write itself.
+ * <p>
+ * With {@link OverflowPolicy#COALESCE} a write that doesn't fit is stored in a per cell overflow slot, stamped
+ * with the tail at this time : every command queued later has a position greater than or equal to the stamp.
+ * The send thread drops an overflow color when it reads a newer queued write of the same cell, and applies
+ * the remaining ones once every command older than their stamp is drained. The overflow colors older than a frame
+ * command are applied before it, so a write of a frame is never displayed after its flip. The overlay commands
+ * have overflow slots of their own, applied after the overflow writes : an overlay clear shows the color written
+ * under it in a single message. A clear of {@link #ALL_CELLS} which doesn't fit is stored as a clear of each cell.
+ */
+final class LedCommandRing {
+
+    static final int TYPE_WRITE = 0;
+    static final int TYPE_BEGIN_FRAME = 1;
+    static final int TYPE_COMMIT_FRAME = 2;
+    static final int TYPE_OVERLAY = 3;
+
+    /**
+     * Cell of an overlay command clearing the overlay of every cell.
+     */
+    static final int ALL_CELLS = 0xFF;
+
+    static final int DEFAULT_CAPACITY = 512;
+
+    /**
+     * Offer time of the overflow colors, which aren't stamped.
+     */
+    static final long NO_OFFER_NANOS = Long.MIN_VALUE;
+
+    private final int capacity;
+    private final int mask;
+    private final int[] commands;
+    private final long[] offerNanos;
+    private long drainedOfferNanos = NO_OFFER_NANOS;
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    private final AtomicLongArray overflowColors = new AtomicLongArray(PadIndex.COUNT);
+    private final AtomicLongArray overflowOverlays = new AtomicLongArray(PadIndex.COUNT);
+    private volatile boolean hasOverflow;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicInteger peakSize = new AtomicInteger();
+
+    private volatile OverflowPolicy overflowPolicy;
+
+    LedCommandRing(int capacity, OverflowPolicy overflowPolicy) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("the capacity must be a power of two : " + capacity);
+        }
+
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.commands = new int[capacity];
+        this.offerNanos = new long[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        this.overflowPolicy = overflowPolicy;
+
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    int size() {
+        final long size = tail.get() - head.get();
+        return size < 0 ? 0 : (int) Math.min(size, capacity);
+    }
+
+    /**
+     * @return the highest number of queued commands seen by a producer since the creation or the last reset.
+     */
+    int getPeakSize() {
+        return peakSize.get();
+    }
+
+    void resetPeakSize() {
+        peakSize.set(0);
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} of the offer of the command given to the handler, or
+     * {@link #NO_OFFER_NANOS} for an overflow color. Only for the send thread, during a drain.
+     */
+    long getDrainedOfferNanos() {
+        return drainedOfferNanos;
+    }
+
+    boolean isEmpty() {
+        return tail.get() == head.get() && !hasOverflow;
+    }
+
+    /**
+     * Queue a led write following the overflow policy.
+     *
+     * @return false if the queue is full with the {@link OverflowPolicy#BLOCK} policy, or if nothing can be
+     * dropped : the caller must wait for the send thread and retry.
+     */
+    boolean offerWrite(int cell, byte color) {
+        final int command = (cell << 8) | (color & 0xFF);
+        while (!offer(command)) {
+            switch (overflowPolicy) {
+                case DROP_OLDEST:
+                    if (!dropOldestWrite()) {
+                        return false;
+                    }
+                    droppedCount.incrementAndGet();
+                    break;
+                case COALESCE:
+                    coalesce(overflowColors, cell, color);
+                    return true;
+                case BLOCK:
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Queue a frame command, never dropped nor coalesced.
+     *
+     * @return false if the queue is full : the caller must wait for the send thread and retry.
+     */
+    boolean offerFrameCommand(int type) {
+        return offer(type << 16);
+    }
+
+    /**
+     * Queue an overlay command, never dropped. With the {@link OverflowPolicy#COALESCE} policy it is coalesced
+     * like a write when the queue is full.
+     *
+     * @param cell  the cell, or {@link #ALL_CELLS} with {@link LedFrameBuffer#NO_OVERLAY}.
+     * @param color the overlay color, or {@link LedFrameBuffer#NO_OVERLAY} to clear it.
+     * @return false if the queue is full with another policy : the caller must wait for the send thread and retry.
+     */
+    boolean offerOverlay(int cell, byte color) {
+        if (offer((TYPE_OVERLAY << 16) | (cell << 8) | (color & 0xFF))) {
+            return true;
+        }
+        if (overflowPolicy != OverflowPolicy.COALESCE) {
+            return false;
+        }
+
+        if (cell == ALL_CELLS) {
+            for (int c = 0; c < PadIndex.COUNT; c++) {
+                coalesce(overflowOverlays, c, LedFrameBuffer.NO_OVERLAY);
+            }
+        } else {
+            coalesce(overflowOverlays, cell, color);
+        }
+        return true;
+    }
+
+    /**
+     * Drain the queued commands in order, then the overflow colors. Only for the send thread.
+     *
+     * @return the number of drained commands.
+     */
+    int drain(CommandHandler commandHandler) {
+        int drainedCount = 0;
+        while (true) {
+            final long position = head.get();
+            final int index = (int) (position & mask);
+            if (sequences.get(index) != position + 1) {
+                break;
+            }
+
+            final int command = commands[index];
+            final long commandOfferNanos = offerNanos[index];
+            if (!head.compareAndSet(position, position + 1)) {
+                continue;
+            }
+            sequences.lazySet(index, position + capacity);
+            drainedCount++;
+
+            final int type = command >>> 16;
+            if (type != TYPE_WRITE && type != TYPE_OVERLAY && hasOverflow) {
+                drainOverflow(commandHandler, position);
+            }
+
+            drainedOfferNanos = commandOfferNanos;
+            if (type == TYPE_OVERLAY) {
+                final int cell = (command >>> 8) & 0xFF;
+                if (cell == ALL_CELLS) {
+                    for (int c = 0; c < PadIndex.COUNT; c++) {
+                        dropOlderOverflow(overflowOverlays, c, position);
+                    }
+                } else {
+                    dropOlderOverflow(overflowOverlays, cell, position);
+                }
+                commandHandler.onOverlay(cell, (byte) command);
+                continue;
+            }
+            if (type != TYPE_WRITE) {
+                if (!commandHandler.onFrameCommand(type)) {
+                    return drainedCount;
+                }
+                continue;
+            }
+
+            final int cell = (command >>> 8) & 0xFF;
+            dropOlderOverflow(overflowColors, cell, position);
+            commandHandler.onWrite(cell, (byte) command);
+        }
+
+        if (hasOverflow) {
+            drainOverflow(commandHandler, head.get());
+        }
+        return drainedCount;
+    }
+
+    /**
+     * @param drainedPosition apply the overflow colors stamped at this position or before, every older command is
+     *                        drained.
+     */
+    private void drainOverflow(CommandHandler commandHandler, long drainedPosition) {
+        hasOverflow = false;
+        drainedOfferNanos = NO_OFFER_NANOS;
+
+        for (int cell = 0; cell < PadIndex.COUNT; cell++) {
+            final long overflowColor = overflowColors.get(cell);
+            if (overflowColor == 0) {
+                continue;
+            }
+
+            if (stampOf(overflowColor) > drainedPosition) {
+                // an older write is claimed but not yet published, keep the color for the next drain
+                hasOverflow = true;
+            } else if (overflowColors.compareAndSet(cell, overflowColor, 0)) {
+                commandHandler.onWrite(cell, (byte) overflowColor);
+            }
+        }
+
+        for (int cell = 0; cell < PadIndex.COUNT; cell++) {
+            final long overflowOverlay = overflowOverlays.get(cell);
+            if (overflowOverlay == 0) {
+                continue;
+            }
+
+            if (stampOf(overflowOverlay) > drainedPosition) {
+                hasOverflow = true;
+            } else if (overflowOverlays.compareAndSet(cell, overflowOverlay, 0)) {
+                commandHandler.onOverlay(cell, (byte) overflowOverlay);
+            }
+        }
+    }
+
+    /**
+     * Drop the overflow value of a cell stamped at the position of a queued command of the cell or before, this
+     * command is newer.
+     */
+    private static void dropOlderOverflow(AtomicLongArray overflowValues, int cell, long position) {
+        final long overflowValue = overflowValues.get(cell);
+        if (overflowValue != 0 && stampOf(overflowValue) <= position) {
+            overflowValues.compareAndSet(cell, overflowValue, 0);
+        }
+    }
+
+    private boolean offer(int command) {
+        long position = tail.get();
+        while (true) {
+            final int index = (int) (position & mask);
+            final long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    commands[index] = command;
+                    offerNanos[index] = System.nanoTime();
+                    sequences.lazySet(index, position + 1);
+                    updatePeakSize((int) (position + 1 - head.get()));
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+            position = tail.get();
+        }
+    }
+
+    private void updatePeakSize(int size) {
+        int peak = peakSize.get();
+        while (size > peak && !peakSize.compareAndSet(peak, size)) {
+            peak = peakSize.get();
+        }
+    }
+
+    private boolean dropOldestWrite() {
+        long position = head.get();
+        while (true) {
+            final int index = (int) (position & mask);
+            final long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if ((commands[index] >>> 16) != TYPE_WRITE) {
+                    return false;
+                }
+                if (head.compareAndSet(position, position + 1)) {
+                    sequences.lazySet(index, position + capacity);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+            position = head.get();
+        }
+    }
+
+    private void coalesce(AtomicLongArray overflowValues, int cell, byte color) {
+        final long stamp = tail.get();
+        final long overflowValue = ((stamp + 1) << 8) | (color & 0xFF);
+        while (true) {
+            final long current = overflowValues.get(cell);
+            if (current != 0 && stampOf(current) > stamp) {
+                break;
+            }
+            if (overflowValues.compareAndSet(cell, current, overflowValue)) {
+                break;
+            }
+        }
+
+        coalescedCount.incrementAndGet();
+        hasOverflow = true;
+    }
+
+    private static long stampOf(long overflowColor) {
+        return (overflowColor >>> 8) - 1;
+    }
+
+    interface CommandHandler {
+        void onWrite(int cell, byte color);
+
+        /**
+         * @return false to stop the drain after this command.
+         */
+        boolean onFrameCommand(int type);
+
+        void onOverlay(int cell, byte color);
+    }
+}
@@ -0,0 +1,188 @@
+package com.yougi.launchpadusb;
+
+import java.util.Arrays;
+
+/**
+ * Shadow copy of the leds of the device.
+ * <p>
+ * Writes only update the requested color of a cell, so several writes on the same cell between two
+ * collects are coalesced and only the last color survives. A collect returns the cells whose requested
+ * color differs from the color last sent to the device.
+ * <p>
+ * An overlay color hides the requested color of a cell without replacing it, like the echo of a held pad :
+ * once the overlay is cleared, the cell shows its requested color again, including the writes received
+ * meanwhile.
+ * <p>
+ * Only the send thread uses this class, the writes of the other threads go through the {@link LedCommandRing}.
+ */
+final class LedFrameBuffer {
+
+    /**
+     * Color used when the state of the led on the device isn't known, velocities are always positive.
+     */
+    private static final byte UNKNOWN_COLOR = -1;
+
+    /**
+     * Overlay color of a cell without overlay.
+     */
+    static final byte NO_OVERLAY = -1;
+
+    private final byte[] requestedColors;
+    private final byte[] sentColors;
+    private final byte[] overlayColors;
+
+    private final boolean[] dirtyCells;
+    private final int[] dirtyCellList;
+    private int dirtyCount;
+
+    private boolean isFrameBegun;
+    private long frameCount;
+    private long pendingFrame;
+    private long collectedFrame;
+
+    LedFrameBuffer() {
+        requestedColors = new byte[PadIndex.COUNT];
+        sentColors = new byte[PadIndex.COUNT];
+        dirtyCells = new boolean[PadIndex.COUNT];
+        dirtyCellList = new int[PadIndex.COUNT];
+
+        overlayColors = new byte[PadIndex.COUNT];
+
+        Arrays.fill(sentColors, UNKNOWN_COLOR);
+        Arrays.fill(overlayColors, NO_OVERLAY);
+    }
+
+    void write(int cell, byte color) {
+        requestedColors[cell] = color;
+        markDirty(cell);
+    }
+
+    private void markDirty(int cell) {
+        if (!dirtyCells[cell]) {
+            dirtyCells[cell] = true;
+            dirtyCellList[dirtyCount++] = cell;
+        }
+    }
+
+    /**
+     * @return the color to show on a cell : its overlay color if any, otherwise its requested color.
+     */
+    private byte colorOf(int cell) {
+        final byte overlayColor = overlayColors[cell];
+        return overlayColor != NO_OVERLAY ? overlayColor : requestedColors[cell];
+    }
+
+    /**
+     * @param color the color shown instead of the requested one, or {@link #NO_OVERLAY} to show it again.
+     */
+    void setOverlay(int cell, byte color) {
+        overlayColors[cell] = color;
+        markDirty(cell);
+    }
+
+    boolean hasOverlay(int cell) {
+        return overlayColors[cell] != NO_OVERLAY;
+    }
+
+    /**
+     * Collect a single cell at once, before the collect of the other changes.
+     *
+     * @return true if its color differs from the sent one, it is then marked as sent.
+     */
+    boolean collectCell(int cell) {
+        final byte color = colorOf(cell);
+        if (sentColors[cell] == color) {
+            return false;
+        }
+
+        sentColors[cell] = color;
+        return true;
+    }
+
+    byte getRequestedColor(int cell) {
+        return requestedColors[cell];
+    }
+
+    byte getSentColor(int cell) {
+        return sentColors[cell];
+    }
+
+    void beginFrame() {
+        isFrameBegun = true;
+    }
+
+    /**
+     * @return the number of the committed frame, starting at 1.
+     */
+    long commitFrame() {
+        isFrameBegun = false;
+        pendingFrame = ++frameCount;
+        return pendingFrame;
+    }
+
+    /**
+     * Collect the cells changed since the last collect, in the order of their first write, and mark them as
+     * sent. Nothing is collected while a frame is begun.
+     *
+     * @param cells  receive the changed cells, must hold {@link PadIndex#COUNT} values.
+     * @param colors receive the color of each changed cell.
+     * @return the number of changed cells.
+     */
+    int collectChanges(int[] cells, byte[] colors) {
+        if (isFrameBegun) {
+            collectedFrame = 0;
+            return 0;
+        }
+
+        collectedFrame = pendingFrame;
+        pendingFrame = 0;
+
+        int changedCount = 0;
+        for (int i = 0; i < dirtyCount; i++) {
+            final int cell = dirtyCellList[i];
+            dirtyCells[cell] = false;
+
+            final byte color = colorOf(cell);
+            if (sentColors[cell] != color) {
+                sentColors[cell] = color;
+                cells[changedCount] = cell;
+                colors[changedCount] = color;
+                changedCount++;
+            }
+        }
+
+        dirtyCount = 0;
+        return changedCount;
+    }
+
+    /**
+     * @return the number of the frame committed before the last collect, or 0 if none.
+     */
+    long getCollectedFrame() {
+        return collectedFrame;
+    }
+
+    /**
+     * Forget the colors sent to the device, like after a reset of the device : the next collect returns every
+     * cell with the color to show.
+     */
+    void forgetSentColors() {
+        Arrays.fill(sentColors, UNKNOWN_COLOR);
+        for (int cell = 0; cell < PadIndex.COUNT; cell++) {
+            markDirty(cell);
+        }
+    }
+
+    /**
+     * Copy the colors sent to the device for every cell, used to send a full frame after a collect. The cells
+     * never sent take their requested color and are marked as sent.
+     */
+    void copySentFrame(byte[] colors) {
+        for (int cell = 0; cell < PadIndex.COUNT; cell++) {
+            if (sentColors[cell] == UNKNOWN_COLOR) {
+                sentColors[cell] = colorOf(cell);
+            }
+            colors[cell] = sentColors[cell];
+        }
+    }
+}
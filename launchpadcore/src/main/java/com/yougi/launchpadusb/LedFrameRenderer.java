@@ -0,0 +1,518 @@
+package com.yougi.launchpadusb;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Consumer side of the led pipeline : drain the {@link LedCommandRing} into the {@link LedFrameBuffer}, encode
+ * the changed cells and write them through the {@link MidiPacketWriter}. Only the send thread uses this class.
+ * <p>
+ * The device has two led buffers, one displayed and one updated. Outside of a frame the leds are written in
+ * both buffers. The cells of a committed frame are written in the hidden buffer only, then a single buffer
+ * control message displays it and copies it in the other buffer, so the frame appears at once.
+ * <p>
+ * While blinking cells are lit, the device flips its buffers by itself : a flashing cell is lit in one buffer
+ * and off in the other, a pulsing cell has its dimmed color in the second buffer. The frames are then written
+ * in both buffers like the other writes, and the auto flash stops with the last blinking cell.
+ * <p>
+ * The writes of the {@link SendLane#INTERACTIVE} lane have a ring of their own, drained first and sent in a
+ * packet of their own. While the background changes are written cell by cell, the interactive ring is checked
+ * between two cells, so an interactive write waits for one packet at most. A rapid frame or a frame written in
+ * the hidden buffer isn't interrupted, a message in between would break it. As the interactive ring is drained
+ * first, a background write offered before the last interactive write of its cell is dropped, instead of
+ * overwriting the newer color.
+ * <p>
+ * While the device is lost, the writes still update the {@link LedFrameBuffer} but nothing is sent, and the
+ * animations aren't drawn. Once the device is back, it has lost its leds : the next flush sends every led in a
+ * single rapid frame, with the colors written meanwhile.
+ */
+final class LedFrameRenderer implements LedCommandRing.CommandHandler {
+
+    private final LedCommandRing ledCommandRing;
+    private final LedCommandRing interactiveRing;
+    private final InteractiveHandler interactiveHandler = new InteractiveHandler();
+    private final LedFrameBuffer ledFrameBuffer;
+    private final MidiPacketWriter midiPacketWriter;
+    private final AnimationPlayer animationPlayer;
+
+    /**
+     * The system exclusive messages to send, they don't fit in the led command ring.
+     */
+    private final ConcurrentLinkedQueue<byte[]> sysexMessages = new ConcurrentLinkedQueue<>();
+
+    private final int[] changedCells = new int[PadIndex.COUNT];
+    private final byte[] changedColors = new byte[PadIndex.COUNT];
+
+    private int displayBuffer;
+    private int updateBuffer;
+
+    private final boolean[] isBlinkingCell = new boolean[PadIndex.COUNT];
+    private int blinkingCellCount;
+    private volatile boolean isAutoFlashing;
+
+    private final int[] singleCell = new int[1];
+    private final byte[] singleColor = new byte[1];
+
+    private final long[] interactiveOfferNanos;
+    private int interactiveOfferCount;
+    private boolean hasInteractiveWrite;
+    private final LatencyHistogram interactiveLatency = new LatencyHistogram();
+
+    /**
+     * Offer time of the last interactive write of each cell, {@link LedCommandRing#NO_OFFER_NANOS} if none.
+     */
+    private final long[] interactiveWriteNanos = new long[PadIndex.COUNT];
+    private final boolean[] hasInteractiveWriteSinceDrain = new boolean[PadIndex.COUNT];
+    private boolean hasAnyInteractiveWriteSinceDrain;
+    private volatile long staleWriteCount;
+
+    private boolean hasBackgroundOffer;
+    private long oldestBackgroundOfferNanos;
+    private final LatencyHistogram backgroundLatency = new LatencyHistogram();
+
+    private volatile long lastFlippedFrame;
+
+    private volatile boolean isDeviceLost;
+    private volatile boolean isResyncRequested;
+
+    LedFrameRenderer(LedCommandRing ledCommandRing, LedCommandRing interactiveRing,
+                     MidiPacketWriter midiPacketWriter, AnimationPlayer animationPlayer) {
+        this.ledCommandRing = ledCommandRing;
+        this.interactiveRing = interactiveRing;
+        this.interactiveOfferNanos = new long[interactiveRing.getCapacity() + PadIndex.COUNT];
+        this.ledFrameBuffer = new LedFrameBuffer();
+        this.midiPacketWriter = midiPacketWriter;
+        this.animationPlayer = animationPlayer;
+
+        Arrays.fill(interactiveWriteNanos, LedCommandRing.NO_OFFER_NANOS);
+    }
+
+    /**
+     * Called by any thread, the message is sent by the next flush before the led changes.
+     */
+    void offerSysex(byte[] message) {
+        sysexMessages.offer(message);
+    }
+
+    long getLastFlippedFrame() {
+        return lastFlippedFrame;
+    }
+
+    boolean isAutoFlashing() {
+        return isAutoFlashing;
+    }
+
+    /**
+     * Called by any thread, the next flushes only update the state of the leds.
+     */
+    void onDeviceLost() {
+        isDeviceLost = true;
+    }
+
+    /**
+     * Called by any thread, the next flush sends every led to the device, reset by its reconnection.
+     */
+    void onDeviceFound() {
+        isResyncRequested = true;
+        isDeviceLost = false;
+    }
+
+    /**
+     * @return the number of background writes dropped because an interactive write of their cell was offered
+     * after them.
+     */
+    long getStaleWriteCount() {
+        return staleWriteCount;
+    }
+
+    /**
+     * @return the time between the offer of an interactive write and the end of the transfer sending it.
+     */
+    LatencyHistogram getInteractiveLatency() {
+        return interactiveLatency;
+    }
+
+    /**
+     * @return for each flush of background writes, the time between the offer of its oldest write and the end
+     * of the flush.
+     */
+    LatencyHistogram getBackgroundLatency() {
+        return backgroundLatency;
+    }
+
+    /**
+     * Send the pending changes. The drain stops after a committed frame, so call it again while the ring
+     * isn't empty.
+     *
+     * @return the number of the frame flipped by this flush, or 0 without frame.
+     */
+    long flush() {
+        if (isDeviceLost) {
+            // keep the state of the leds for the resync, without waking up for the animations
+            interactiveHandler.isSending = false;
+            interactiveRing.drain(interactiveHandler);
+            interactiveHandler.isSending = true;
+            drainBackground();
+            sysexMessages.clear();
+            return 0;
+        }
+
+        if (isResyncRequested) {
+            isResyncRequested = false;
+            resetDeviceState();
+        }
+
+        flushInteractive();
+
+        hasBackgroundOffer = false;
+        drainBackground();
+        // the animations draw over the writes of the application on their regions
+        animationPlayer.draw(ledFrameBuffer);
+
+        boolean hasSysex = false;
+        byte[] sysexMessage;
+        while ((sysexMessage = sysexMessages.poll()) != null) {
+            midiPacketWriter.writeSysex(sysexMessage);
+            hasSysex = true;
+        }
+
+        final int changedCount = ledFrameBuffer.collectChanges(changedCells, changedColors);
+        final long frame = ledFrameBuffer.getCollectedFrame();
+        if (changedCount == 0 && frame == 0) {
+            if (hasSysex || hasInteractiveWrite) {
+                midiPacketWriter.flush();
+            }
+            recordBackgroundLatency();
+            return 0;
+        }
+
+        final boolean isRapidFrame = changedCount * 2 > LaunchpadProtocol.RAPID_FRAME_LENGTH;
+        if (isRapidFrame) {
+            ledFrameBuffer.copySentFrame(changedColors);
+        }
+        updateBlinkingCells(isRapidFrame ? null : changedCells, changedColors,
+                isRapidFrame ? PadIndex.COUNT : changedCount);
+
+        if (blinkingCellCount > 0 && !isAutoFlashing) {
+            startAutoFlash();
+        }
+
+        final byte flags;
+        if (frame != 0 && !isAutoFlashing) {
+            flags = 0;
+            if (updateBuffer == displayBuffer) {
+                updateBuffer = 1 - displayBuffer;
+                midiPacketWriter.write(LaunchpadProtocol.STATUS_CONTROL_CHANGE, LaunchpadProtocol.KEY_BUFFER_CONTROL,
+                        LaunchpadProtocol.bufferControl(displayBuffer, updateBuffer, false));
+            }
+        } else {
+            flags = LaunchpadProtocol.VELOCITY_FLAGS_BOTH_BUFFERS;
+        }
+
+        // a changed led costs two bytes with running status, above that a full rapid frame is cheaper
+        if (isRapidFrame) {
+            writeRapidFrame(changedColors, flags);
+            writePulsingCells(null, changedColors, PadIndex.COUNT);
+        } else {
+            final boolean isPreemptible = frame == 0;
+            for (int i = 0; i < changedCount; i++) {
+                final int cell = changedCells[i];
+                if (isPreemptible && ledFrameBuffer.getSentColor(cell) != changedColors[i]) {
+                    // overwritten by a newer interactive write
+                    continue;
+                }
+                midiPacketWriter.write(LaunchpadProtocol.statusOf(cell), LaunchpadProtocol.keyOf(cell),
+                        velocityOf(changedColors[i], flags));
+                if (isPreemptible && !interactiveRing.isEmpty()) {
+                    flushInteractive();
+                }
+            }
+            writePulsingCells(changedCells, changedColors, changedCount);
+        }
+
+        if (blinkingCellCount == 0 && isAutoFlashing) {
+            stopAutoFlash();
+        }
+
+        if (frame != 0 && !isAutoFlashing) {
+            final int hiddenBuffer = displayBuffer;
+            displayBuffer = updateBuffer;
+            updateBuffer = hiddenBuffer;
+            midiPacketWriter.write(LaunchpadProtocol.STATUS_CONTROL_CHANGE, LaunchpadProtocol.KEY_BUFFER_CONTROL,
+                    LaunchpadProtocol.bufferControl(displayBuffer, updateBuffer, true));
+        }
+
+        midiPacketWriter.flush();
+        recordBackgroundLatency();
+
+        if (frame != 0) {
+            lastFlippedFrame = frame;
+        }
+        return frame;
+    }
+
+    /**
+     * Write the interactive changes and send them at once, with the background messages already written.
+     */
+    private void flushInteractive() {
+        interactiveOfferCount = 0;
+        hasInteractiveWrite = false;
+        interactiveRing.drain(interactiveHandler);
+
+        if (hasInteractiveWrite) {
+            if (blinkingCellCount == 0 && isAutoFlashing) {
+                stopAutoFlash();
+            }
+            midiPacketWriter.sendPendingPacket();
+        }
+
+        final long now = System.nanoTime();
+        for (int i = 0; i < interactiveOfferCount; i++) {
+            interactiveLatency.record(now - interactiveOfferNanos[i]);
+        }
+    }
+
+    private void drainBackground() {
+        ledCommandRing.drain(this);
+
+        if (hasAnyInteractiveWriteSinceDrain) {
+            hasAnyInteractiveWriteSinceDrain = false;
+            Arrays.fill(hasInteractiveWriteSinceDrain, false);
+        }
+    }
+
+    /**
+     * A reconnected device shows its first buffer, without led nor auto flash.
+     */
+    private void resetDeviceState() {
+        ledFrameBuffer.forgetSentColors();
+        Arrays.fill(isBlinkingCell, false);
+        blinkingCellCount = 0;
+        isAutoFlashing = false;
+        displayBuffer = 0;
+        updateBuffer = 0;
+    }
+
+    private void recordBackgroundLatency() {
+        if (hasBackgroundOffer) {
+            hasBackgroundOffer = false;
+            backgroundLatency.record(System.nanoTime() - oldestBackgroundOfferNanos);
+        }
+    }
+
+    @Override
+    public void onWrite(int cell, byte color) {
+        final long offerNanos = ledCommandRing.getDrainedOfferNanos();
+        if (isOlderThanInteractiveWrite(cell, offerNanos)) {
+            staleWriteCount++;
+            return;
+        }
+        ledFrameBuffer.write(cell, color);
+
+        if (offerNanos != LedCommandRing.NO_OFFER_NANOS
+                && (!hasBackgroundOffer || offerNanos - oldestBackgroundOfferNanos < 0)) {
+            hasBackgroundOffer = true;
+            oldestBackgroundOfferNanos = offerNanos;
+        }
+    }
+
+    /**
+     * An overflow color has no offer time : it was coalesced before this drain, so it loses against an
+     * interactive write drained since the previous drain.
+     */
+    private boolean isOlderThanInteractiveWrite(int cell, long offerNanos) {
+        if (offerNanos == LedCommandRing.NO_OFFER_NANOS) {
+            return hasInteractiveWriteSinceDrain[cell];
+        }
+
+        final long interactiveNanos = interactiveWriteNanos[cell];
+        return interactiveNanos != LedCommandRing.NO_OFFER_NANOS && offerNanos - interactiveNanos < 0;
+    }
+
+    @Override
+    public boolean onFrameCommand(int type) {
+        if (type == LedCommandRing.TYPE_BEGIN_FRAME) {
+            ledFrameBuffer.beginFrame();
+            return true;
+        }
+
+        ledFrameBuffer.commitFrame();
+        return false;
+    }
+
+    @Override
+    public void onOverlay(int cell, byte color) {
+        // only queued in the interactive lane, applied by the next collect otherwise
+        if (cell == LedCommandRing.ALL_CELLS) {
+            for (int c = 0; c < PadIndex.COUNT; c++) {
+                if (ledFrameBuffer.hasOverlay(c)) {
+                    ledFrameBuffer.setOverlay(c, LedFrameBuffer.NO_OVERLAY);
+                }
+            }
+        } else {
+            ledFrameBuffer.setOverlay(cell, color);
+        }
+    }
+
+    private void writeRapidFrame(byte[] colors, byte flags) {
+        // any message other than a rapid update resets the cursor of the device to the first led
+        midiPacketWriter.write(LaunchpadProtocol.statusOf(0), LaunchpadProtocol.keyOf(0), velocityOf(colors[0], flags));
+
+        for (int cell = 0; cell < PadIndex.COUNT; cell += 2) {
+            midiPacketWriter.write(LaunchpadProtocol.STATUS_RAPID_UPDATE, velocityOf(colors[cell], flags),
+                    velocityOf(colors[cell + 1], flags));
+        }
+    }
+
+    /**
+     * @param cells the cells of the colors, or null when the colors are indexed by cell.
+     */
+    private void updateBlinkingCells(int[] cells, byte[] colors, int count) {
+        for (int i = 0; i < count; i++) {
+            updateBlinkingCell(cells == null ? i : cells[i], colors[i]);
+        }
+    }
+
+    private void updateBlinkingCell(int cell, byte color) {
+        final boolean isBlinking = (color & PadColor.BLINK_MASK) != 0;
+        if (isBlinking != isBlinkingCell[cell]) {
+            isBlinkingCell[cell] = isBlinking;
+            blinkingCellCount += isBlinking ? 1 : -1;
+        }
+    }
+
+    /**
+     * Write the dimmed color of the pulsing cells in the second buffer, their color is already in both.
+     */
+    private void writePulsingCells(int[] cells, byte[] colors, int count) {
+        boolean isSecondBufferSelected = false;
+        for (int i = 0; i < count; i++) {
+            final byte color = colors[i];
+            if ((color & PadColor.FLAG_PULSE) == 0) {
+                continue;
+            }
+
+            if (!isSecondBufferSelected) {
+                isSecondBufferSelected = true;
+                midiPacketWriter.write(LaunchpadProtocol.STATUS_CONTROL_CHANGE, LaunchpadProtocol.KEY_BUFFER_CONTROL,
+                        LaunchpadProtocol.autoFlash(1));
+            }
+
+            final int cell = cells == null ? i : cells[i];
+            midiPacketWriter.write(LaunchpadProtocol.statusOf(cell), LaunchpadProtocol.keyOf(cell),
+                    PadColor.dimmed(color));
+        }
+
+        if (isSecondBufferSelected) {
+            midiPacketWriter.write(LaunchpadProtocol.STATUS_CONTROL_CHANGE, LaunchpadProtocol.KEY_BUFFER_CONTROL,
+                    LaunchpadProtocol.autoFlash(0));
+        }
+    }
+
+    private void startAutoFlash() {
+        // both buffers hold the same leds here : outside of a frame the writes go in both, a flip copies them
+        isAutoFlashing = true;
+        displayBuffer = 0;
+        updateBuffer = 0;
+        midiPacketWriter.write(LaunchpadProtocol.STATUS_CONTROL_CHANGE, LaunchpadProtocol.KEY_BUFFER_CONTROL,
+                LaunchpadProtocol.autoFlash(0));
+    }
+
+    private void stopAutoFlash() {
+        isAutoFlashing = false;
+        displayBuffer = 0;
+        updateBuffer = 0;
+        midiPacketWriter.write(LaunchpadProtocol.STATUS_CONTROL_CHANGE, LaunchpadProtocol.KEY_BUFFER_CONTROL,
+                LaunchpadProtocol.bufferControl(0, 0, false));
+    }
+
+    /**
+     * A flashing cell is written in the updated buffer and cleared in the other one, the other cells in the
+     * buffers selected by the flags.
+     */
+    private static byte velocityOf(byte color, byte flags) {
+        if ((color & PadColor.FLAG_FLASH) != 0) {
+            return (byte) ((color & PadColor.LEVEL_MASK) | LaunchpadProtocol.VELOCITY_FLAG_CLEAR);
+        }
+        return (byte) ((color & PadColor.LEVEL_MASK) | flags);
+    }
+
+    /**
+     * Write the interactive changes as soon as they are drained, in both buffers of the device.
+     */
+    private final class InteractiveHandler implements LedCommandRing.CommandHandler {
+
+        /**
+         * False while the device is lost : the leds are only updated.
+         */
+        boolean isSending = true;
+
+        @Override
+        public void onWrite(int cell, byte color) {
+            final long offerNanos = interactiveRing.getDrainedOfferNanos();
+            // an overflow color was offered before this drain
+            interactiveWriteNanos[cell] = offerNanos != LedCommandRing.NO_OFFER_NANOS ? offerNanos : System.nanoTime();
+            hasInteractiveWriteSinceDrain[cell] = true;
+            hasAnyInteractiveWriteSinceDrain = true;
+
+            keepOfferNanos();
+            ledFrameBuffer.write(cell, color);
+            sendCell(cell);
+        }
+
+        @Override
+        public void onOverlay(int cell, byte color) {
+            keepOfferNanos();
+            if (cell == LedCommandRing.ALL_CELLS) {
+                for (int c = 0; c < PadIndex.COUNT; c++) {
+                    if (ledFrameBuffer.hasOverlay(c)) {
+                        ledFrameBuffer.setOverlay(c, LedFrameBuffer.NO_OVERLAY);
+                        sendCell(c);
+                    }
+                }
+                return;
+            }
+
+            ledFrameBuffer.setOverlay(cell, color);
+            sendCell(cell);
+        }
+
+        private void keepOfferNanos() {
+            if (!isSending) {
+                return;
+            }
+
+            final long offerNanos = interactiveRing.getDrainedOfferNanos();
+            if (offerNanos != LedCommandRing.NO_OFFER_NANOS && interactiveOfferCount < interactiveOfferNanos.length) {
+                interactiveOfferNanos[interactiveOfferCount++] = offerNanos;
+            }
+        }
+
+        private void sendCell(int cell) {
+            if (!isSending || !ledFrameBuffer.collectCell(cell)) {
+                return;
+            }
+            hasInteractiveWrite = true;
+
+            final byte color = ledFrameBuffer.getSentColor(cell);
+            updateBlinkingCell(cell, color);
+            if (blinkingCellCount > 0 && !isAutoFlashing) {
+                startAutoFlash();
+            }
+
+            midiPacketWriter.write(LaunchpadProtocol.statusOf(cell), LaunchpadProtocol.keyOf(cell),
+                    velocityOf(color, LaunchpadProtocol.VELOCITY_FLAGS_BOTH_BUFFERS));
+            if ((color & PadColor.FLAG_PULSE) != 0) {
+                singleCell[0] = cell;
+                singleColor[0] = color;
+                writePulsingCells(singleCell, singleColor, 1);
+            }
+        }
+
+        @Override
+        public boolean onFrameCommand(int type) {
+            // the interactive lane has no frame
+            return true;
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package com.yougi.launchpadusb;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hand the decoded pad events of the receive thread to the listeners, on the executor chosen by each one.
+ * <p>
+ * The receive thread never runs user code and never waits : each registration has a bounded queue of packed
+ * events, and its delivery is scheduled once per usb packet. When a listener is too slow its queue fills up
+ * and the new events are dropped and counted, the other listeners and the reads are not affected. A batch
+ * registration also queues a marker at the end of each packet, so its listener gets the events of one packet
+ * in a single call. The last slot of its queue is kept for this marker, so it is never dropped. An exception
+ * thrown by a listener is logged, and the listener still gets the next events.
+ * <p>
+ * The registrations are an array replaced on each change (copy on write), so the receive thread iterates
+ * over them without lock and without allocation.
+ */
+final class ListenerDispatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(ListenerDispatcher.class.getName());
+
+    static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    private static final Registration[] NO_REGISTRATION = new Registration[0];
+
+    private static final int EVENT_FLAG_DOWN = 0x100;
+    private static final int EVENT_PACKET_END = 0x200;
+
+    private static final ControlTopPad[] CONTROL_TOP_PADS = ControlTopPad.values();
+    private static final ControlRightPad[] CONTROL_RIGHT_PADS = ControlRightPad.values();
+
+    private static ExecutorService defaultExecutor;
+
+    private final LatencyHistogram deliveryLatency = new LatencyHistogram();
+
+    private final Object registrationLock = new Object();
+    private volatile Registration[] registrations = NO_REGISTRATION;
+
+    /**
+     * @return the executor shared by the listeners registered without executor, a single daemon thread.
+     */
+    static synchronized Executor getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "LaunchpadListenerDispatch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return defaultExecutor;
+    }
+
+    /**
+     * Log the exception thrown by a listener, which must not stop the delivery of the next events.
+     */
+    static void logListenerFailure(Object listener, RuntimeException exception) {
+        LOGGER.log(Level.WARNING, "the listener " + listener + " failed on an event", exception);
+    }
+
+    /**
+     * @return the time between the read of a packet and the return of a listener for each of its events.
+     */
+    LatencyHistogram getDeliveryLatency() {
+        return deliveryLatency;
+    }
+
+    boolean register(Registration registration) {
+        synchronized (registrationLock) {
+            if (indexOf(registration.getListener()) >= 0) {
+                return false;
+            }
+
+            final Registration[] current = registrations;
+            final Registration[] updated = new Registration[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = registration;
+            registration.deliveryLatency = deliveryLatency;
+            registrations = updated;
+            return true;
+        }
+    }
+
+    boolean unregister(Object listener) {
+        synchronized (registrationLock) {
+            final int index = indexOf(listener);
+            if (index < 0) {
+                return false;
+            }
+
+            final Registration[] current = registrations;
+            final Registration[] updated = new Registration[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            registrations = updated;
+            return true;
+        }
+    }
+
+    Registration getRegistration(Object listener) {
+        final Registration[] current = registrations;
+        for (Registration registration : current) {
+            if (registration.getListener() == listener) {
+                return registration;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Queue an event for every listener, called by the receive thread.
+     */
+    void dispatch(int cell, boolean isDown, long timestampNanos) {
+        final Registration[] current = registrations;
+        for (Registration registration : current) {
+            registration.offer(cell, isDown, timestampNanos);
+        }
+    }
+
+    /**
+     * Schedule the delivery of the queued events, called by the receive thread at the end of a packet.
+     */
+    void schedule() {
+        final Registration[] current = registrations;
+        for (Registration registration : current) {
+            registration.schedule();
+        }
+    }
+
+    private int indexOf(Object listener) {
+        final Registration[] current = registrations;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].getListener() == listener) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A listener with its executor and its queue. The queue has a single producer, the receive thread, and a
+     * single consumer, the delivery task, which never runs twice at the same time.
+     */
+    abstract static class Registration implements Runnable {
+
+        private final Executor executor;
+        private final boolean isBatched;
+        private boolean hasEventInPacket;
+
+        private final int mask;
+        private final int[] events;
+        private final long[] timestamps;
+        private volatile long head;
+        private volatile long tail;
+
+        private final AtomicBoolean isScheduled = new AtomicBoolean();
+        private LatencyHistogram deliveryLatency;
+
+        private volatile long droppedCount;
+        private volatile long deliveredCount;
+        private volatile long lastLagNanos;
+        private volatile long maxLagNanos;
+
+        Registration(Executor executor, int capacity, boolean isBatched) {
+            if (Integer.bitCount(capacity) != 1) {
+                throw new IllegalArgumentException("the capacity must be a power of two : " + capacity);
+            }
+
+            this.executor = executor;
+            this.isBatched = isBatched;
+            this.mask = capacity - 1;
+            this.events = new int[capacity];
+            this.timestamps = new long[capacity];
+        }
+
+        abstract Object getListener();
+
+        /**
+         * Deliver one event to the listener, on the executor. A batch registration only keeps it until the end of
+         * its packet, and reports its delivery itself.
+         */
+        abstract void deliver(int cell, boolean isDown, long timestampNanos);
+
+        /**
+         * Called on the executor after the last event of a packet, only for a batch registration.
+         */
+        void deliverPacketEnd() {
+        }
+
+        long getDroppedCount() {
+            return droppedCount;
+        }
+
+        long getDeliveredCount() {
+            return deliveredCount;
+        }
+
+        int getPendingCount() {
+            return (int) (tail - head);
+        }
+
+        long getLastLagNanos() {
+            return lastLagNanos;
+        }
+
+        long getMaxLagNanos() {
+            return maxLagNanos;
+        }
+
+        final void offer(int cell, boolean isDown, long timestampNanos) {
+            // a batch keeps a free slot for the end of the packet
+            if (offerEvent(isDown ? cell | EVENT_FLAG_DOWN : cell, timestampNanos, isBatched ? 1 : 0)) {
+                hasEventInPacket = true;
+            } else {
+                droppedCount++;
+            }
+        }
+
+        final void schedule() {
+            if (isBatched && hasEventInPacket) {
+                offerEvent(EVENT_PACKET_END, 0, 0);
+                hasEventInPacket = false;
+            }
+
+            if (tail == head || !isScheduled.compareAndSet(false, true)) {
+                return;
+            }
+
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                isScheduled.set(false);
+            }
+        }
+
+        /**
+         * @param reservedCount the number of free slots to leave after this event.
+         */
+        private boolean offerEvent(int event, long timestampNanos, int reservedCount) {
+            final long position = tail;
+            if (position - head > mask - reservedCount) {
+                return false;
+            }
+
+            final int index = (int) (position & mask);
+            events[index] = event;
+            timestamps[index] = timestampNanos;
+            tail = position + 1;
+            return true;
+        }
+
+        @Override
+        public final void run() {
+            do {
+                long position = head;
+                final long end = tail;
+                while (position < end) {
+                    final int index = (int) (position & mask);
+                    final int event = events[index];
+                    final long timestamp = timestamps[index];
+                    position++;
+                    head = position;
+
+                    if (event == EVENT_PACKET_END) {
+                        try {
+                            deliverPacketEnd();
+                        } catch (RuntimeException e) {
+                            logListenerFailure(getListener(), e);
+                        }
+                        continue;
+                    }
+
+                    if (!isBatched) {
+                        onDelivering(timestamp);
+                    }
+                    try {
+                        deliver(event & 0xFF, (event & EVENT_FLAG_DOWN) != 0, timestamp);
+                    } catch (RuntimeException e) {
+                        logListenerFailure(getListener(), e);
+                    }
+                    if (!isBatched) {
+                        onDelivered(timestamp);
+                    }
+                }
+
+                isScheduled.set(false);
+                // an event queued after the last read of the tail must not wait for the next packet
+            } while (tail != head && isScheduled.compareAndSet(false, true));
+        }
+
+        /**
+         * Called on the executor just before the listener gets an event.
+         */
+        final void onDelivering(long timestampNanos) {
+            final long lag = System.nanoTime() - timestampNanos;
+            lastLagNanos = lag;
+            if (lag > maxLagNanos) {
+                maxLagNanos = lag;
+            }
+        }
+
+        /**
+         * Called on the executor once the listener has returned from an event.
+         */
+        final void onDelivered(long timestampNanos) {
+            deliveredCount++;
+            deliveryLatency.record(System.nanoTime() - timestampNanos);
+        }
+    }
+
+    static final class PadEventRegistration extends Registration {
+
+        private final LaunchPadConnection.OnReceiveLaunchPadListener listener;
+
+        PadEventRegistration(LaunchPadConnection.OnReceiveLaunchPadListener listener, Executor executor) {
+            super(executor, DEFAULT_QUEUE_CAPACITY, false);
+            this.listener = listener;
+        }
+
+        @Override
+        Object getListener() {
+            return listener;
+        }
+
+        @Override
+        void deliver(int cell, boolean isDown, long timestampNanos) {
+            if (cell < PadIndex.FIRST_RIGHT_CONTROL) {
+                listener.OnReceiveMainPadEvent(cell, isDown);
+            } else if (cell < PadIndex.FIRST_TOP_CONTROL) {
+                listener.OnReceiveRightControlEvent(CONTROL_RIGHT_PADS[cell - PadIndex.FIRST_RIGHT_CONTROL], isDown);
+            } else {
+                listener.OnReceiveTopControlEvent(CONTROL_TOP_PADS[cell - PadIndex.FIRST_TOP_CONTROL], isDown);
+            }
+        }
+    }
+
+    static final class BatchRegistration extends Registration {
+
+        private final LaunchPadConnection.OnReceiveLaunchPadBatchListener listener;
+
+        private final int[] padIndexes = new int[DEFAULT_QUEUE_CAPACITY];
+        private final boolean[] isDown = new boolean[DEFAULT_QUEUE_CAPACITY];
+        private final long[] timestampsNanos = new long[DEFAULT_QUEUE_CAPACITY];
+        private int count;
+
+        BatchRegistration(LaunchPadConnection.OnReceiveLaunchPadBatchListener listener, Executor executor) {
+            super(executor, DEFAULT_QUEUE_CAPACITY, true);
+            this.listener = listener;
+        }
+
+        @Override
+        Object getListener() {
+            return listener;
+        }
+
+        @Override
+        void deliver(int cell, boolean isDown, long timestampNanos) {
+            // the events of a packet fit in the queue with its end, so in these arrays
+            padIndexes[count] = cell;
+            this.isDown[count] = isDown;
+            timestampsNanos[count] = timestampNanos;
+            count++;
+        }
+
+        @Override
+        void deliverPacketEnd() {
+            if (count == 0) {
+                return;
+            }
+
+            for (int i = 0; i < count; i++) {
+                onDelivering(timestampsNanos[i]);
+            }
+            try {
+                listener.onReceiveLaunchPadEvents(padIndexes, isDown, timestampsNanos, count);
+            } finally {
+                for (int i = 0; i < count; i++) {
+                    onDelivered(timestampsNanos[i]);
+                }
+                count = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.yougi.launchpadusb;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory transport without device : the packets written by the send thread are read back by the receive
+ * thread, and packets can be injected as if the device sent them. Used to run and profile the connection on a
+ * plain JVM, a note on written for a led is read as the press of the same pad.
+ * <p>
+ * The packets are copied in a fixed ring of buffers, nothing is allocated per packet. When the ring is full
+ * the new packets are dropped and counted, so a connection without receive process never blocks its writes.
+ */
+public final class LoopbackTransport implements LaunchpadTransport {
+
+    public static final int DEFAULT_PACKET_SIZE = 64;
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final int packetSize;
+    private final byte[][] packets;
+    private final int[] packetLengths;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private int head;
+    private int count;
+    private boolean isClosed;
+
+    private volatile boolean isLoopbackEnabled = true;
+    private volatile long writtenPacketCount;
+    private volatile long droppedPacketCount;
+
+    public LoopbackTransport() {
+        this(DEFAULT_PACKET_SIZE, DEFAULT_CAPACITY);
+    }
+
+    public LoopbackTransport(int packetSize, int capacity) {
+        if (packetSize <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("the packetSize and the capacity must be positive");
+        }
+
+        this.packetSize = packetSize;
+        this.packets = new byte[capacity][packetSize];
+        this.packetLengths = new int[capacity];
+    }
+
+    /**
+     * @param isLoopbackEnabled false to discard the written packets instead of reading them back.
+     */
+    public void setLoopbackEnabled(boolean isLoopbackEnabled) {
+        this.isLoopbackEnabled = isLoopbackEnabled;
+    }
+
+    /**
+     * Queue a packet for the receive thread, as if the device sent it.
+     *
+     * @return false if the packet is dropped because the queue is full or the transport closed.
+     */
+    public boolean inject(byte[] buffer, int length) {
+        if (length > packetSize) {
+            throw new IllegalArgumentException("the packet is bigger than " + packetSize + " bytes : " + length);
+        }
+
+        lock.lock();
+        try {
+            if (isClosed || count == packets.length) {
+                droppedPacketCount++;
+                return false;
+            }
+
+            final int index = (head + count) % packets.length;
+            System.arraycopy(buffer, 0, packets[index], 0, length);
+            packetLengths[index] = length;
+            count++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getWrittenPacketCount() {
+        return writtenPacketCount;
+    }
+
+    public long getDroppedPacketCount() {
+        return droppedPacketCount;
+    }
+
+    /**
+     * Wait for a packet. An interruption of the receive thread returns 0 and keeps the interrupted status.
+     */
+    @Override
+    public int readPacket(byte[] buffer) {
+        lock.lock();
+        try {
+            while (count == 0) {
+                if (isClosed) {
+                    return -1;
+                }
+                notEmpty.await(1, TimeUnit.SECONDS);
+            }
+
+            final int length = packetLengths[head];
+            System.arraycopy(packets[head], 0, buffer, 0, length);
+            head = (head + 1) % packets.length;
+            count--;
+            return length;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int writePacket(byte[] buffer, int length) {
+        writtenPacketCount++;
+        if (!isLoopbackEnabled) {
+            return length;
+        }
+
+        return inject(buffer, length) ? length : -1;
+    }
+
+    @Override
+    public int getMaxReadPacketSize() {
+        return packetSize;
+    }
+
+    @Override
+    public int getMaxWritePacketSize() {
+        return packetSize;
+    }
+
+    @Override
+    public String getName() {
+        return "Loopback";
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            isClosed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
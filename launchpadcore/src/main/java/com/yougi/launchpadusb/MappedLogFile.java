@@ -0,0 +1,70 @@
+package com.yougi.launchpadusb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Memory mapped file of a fixed capacity, shared by the binary logs of {@link InputRecorder} and
+ * {@link OutputTraceWriter} : a little endian header of a magic and a version, followed by the records put in
+ * the buffer. Closing it writes the buffer on the disk and truncates the file to the written length.
+ */
+final class MappedLogFile {
+
+    static final int HEADER_LENGTH = 8;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    private MappedLogFile(RandomAccessFile file, int capacity, int magic, int version) throws IOException {
+        this.file = file;
+        this.channel = file.getChannel();
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.buffer.putInt(magic);
+        this.buffer.putInt(version);
+    }
+
+    /**
+     * Create or empty the file, then map its capacity at once.
+     */
+    static MappedLogFile open(File file, int capacity, int magic, int version) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("the file in argument Cannot be null");
+        }
+
+        if (capacity <= HEADER_LENGTH) {
+            throw new IllegalArgumentException("the capacity in argument is too small : " + capacity);
+        }
+
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(0);
+            return new MappedLogFile(randomAccessFile, capacity, magic, version);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the buffer receiving the records, positioned after the last one.
+     */
+    MappedByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    void close() throws IOException {
+        final int length = buffer.position();
+        buffer.force();
+        try {
+            channel.truncate(length);
+        } finally {
+            file.close();
+        }
+    }
+}
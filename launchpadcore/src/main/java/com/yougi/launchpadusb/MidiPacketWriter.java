@@ -0,0 +1,210 @@
+package com.yougi.launchpadusb;
+
+/**
+ * Pack midi messages into packets of the max packet size of the out endpoint, so a full redraw costs a few
+ * transfers instead of one transfer per message. Messages are never split between two packets, and use the
+ * running status of midi : the status byte is omitted when it is the same as the previous message of the
+ * packet.
+ * <p>
+ * Only the send thread writes into this class, the statistics can be read from any thread without lock. The
+ * rates are measured over windows of at least one second, closed by the flushes.
+ */
+final class MidiPacketWriter {
+
+    private static final int MIDI_MESSAGE_LENGTH = 3;
+    private static final long RATE_WINDOW_NANOS = 1000000000L;
+
+    private final Output output;
+    private volatile OutputTap outputTap;
+    private final byte[] packet;
+    private int packetLength;
+    private byte runningStatus;
+
+    private int currentFlushTransferCount;
+    private int currentFlushByteCount;
+
+    private volatile int lastFlushTransferCount;
+    private volatile int lastFlushByteCount;
+    private volatile long totalTransferCount;
+    private volatile long totalByteCount;
+    private volatile long totalMessageCount;
+    private volatile long failedTransferCount;
+    private volatile long shortTransferCount;
+    private final LatencyHistogram transferDuration = new LatencyHistogram();
+
+    private volatile long rateWindowStartNanos = System.nanoTime();
+    private long rateWindowStartMessageCount;
+    private long rateWindowStartByteCount;
+    private volatile double messagesPerSecond;
+    private volatile double bytesPerSecond;
+
+    MidiPacketWriter(Output output, int maxPacketSize) {
+        this.output = output;
+        this.packet = new byte[Math.max(maxPacketSize, MIDI_MESSAGE_LENGTH)];
+    }
+
+    void setOutputTap(OutputTap outputTap) {
+        this.outputTap = outputTap;
+    }
+
+    void write(byte status, byte data1, byte data2) {
+        final boolean hasSameStatus = packetLength > 0 && status == runningStatus;
+        final int messageLength = hasSameStatus ? MIDI_MESSAGE_LENGTH - 1 : MIDI_MESSAGE_LENGTH;
+        if (packetLength + messageLength > packet.length) {
+            sendPacket();
+            write(status, data1, data2);
+            return;
+        }
+
+        if (!hasSameStatus) {
+            packet[packetLength++] = status;
+            runningStatus = status;
+        }
+        packet[packetLength++] = data1;
+        packet[packetLength++] = data2;
+        totalMessageCount++;
+    }
+
+    /**
+     * Write a system exclusive message, from its F0 start to its F7 end. Unlike the other messages it is split
+     * over as many packets as needed, the device reassembles it from the byte stream.
+     */
+    void writeSysex(byte[] message) {
+        int offset = 0;
+        while (offset < message.length) {
+            if (packetLength == packet.length) {
+                sendPacket();
+            }
+
+            final int length = Math.min(message.length - offset, packet.length - packetLength);
+            System.arraycopy(message, offset, packet, packetLength, length);
+            packetLength += length;
+            offset += length;
+        }
+        // a system exclusive message cancels the running status
+        runningStatus = 0;
+        totalMessageCount++;
+    }
+
+    /**
+     * Send the pending packet now, without closing the statistics of the current flush.
+     */
+    void sendPendingPacket() {
+        sendPacket();
+    }
+
+    /**
+     * Send the pending packet and close the statistics of the current flush.
+     */
+    void flush() {
+        sendPacket();
+
+        final OutputTap tap = outputTap;
+        if (tap != null && currentFlushTransferCount > 0) {
+            tap.onFlush(System.nanoTime());
+        }
+
+        lastFlushTransferCount = currentFlushTransferCount;
+        lastFlushByteCount = currentFlushByteCount;
+        currentFlushTransferCount = 0;
+        currentFlushByteCount = 0;
+
+        final long now = System.nanoTime();
+        final long elapsedNanos = now - rateWindowStartNanos;
+        if (elapsedNanos >= RATE_WINDOW_NANOS) {
+            messagesPerSecond = (totalMessageCount - rateWindowStartMessageCount) * 1e9 / elapsedNanos;
+            bytesPerSecond = (totalByteCount - rateWindowStartByteCount) * 1e9 / elapsedNanos;
+            rateWindowStartMessageCount = totalMessageCount;
+            rateWindowStartByteCount = totalByteCount;
+            rateWindowStartNanos = now;
+        }
+    }
+
+    int getLastFlushTransferCount() {
+        return lastFlushTransferCount;
+    }
+
+    int getLastFlushByteCount() {
+        return lastFlushByteCount;
+    }
+
+    long getTotalTransferCount() {
+        return totalTransferCount;
+    }
+
+    long getTotalByteCount() {
+        return totalByteCount;
+    }
+
+    long getTotalMessageCount() {
+        return totalMessageCount;
+    }
+
+    /**
+     * @return the number of transfers which returned an error.
+     */
+    long getFailedTransferCount() {
+        return failedTransferCount;
+    }
+
+    /**
+     * @return the number of transfers which sent less bytes than the packet.
+     */
+    long getShortTransferCount() {
+        return shortTransferCount;
+    }
+
+    LatencyHistogram getTransferDuration() {
+        return transferDuration;
+    }
+
+    /**
+     * @return the messages per second of the last complete window, or 0 when the last flush is older than a
+     * window.
+     */
+    double getMessagesPerSecond() {
+        return isRateWindowStale() ? 0 : messagesPerSecond;
+    }
+
+    double getBytesPerSecond() {
+        return isRateWindowStale() ? 0 : bytesPerSecond;
+    }
+
+    private boolean isRateWindowStale() {
+        return System.nanoTime() - rateWindowStartNanos >= 2 * RATE_WINDOW_NANOS;
+    }
+
+    private void sendPacket() {
+        if (packetLength == 0) {
+            return;
+        }
+
+        final long startNanos = System.nanoTime();
+        final int sentLength = output.transfer(packet, packetLength);
+        transferDuration.record(System.nanoTime() - startNanos);
+
+        final OutputTap tap = outputTap;
+        if (tap != null) {
+            tap.onTransfer(startNanos, packet, packetLength, sentLength);
+        }
+
+        if (sentLength < 0) {
+            failedTransferCount++;
+        } else if (sentLength < packetLength) {
+            shortTransferCount++;
+        }
+
+        currentFlushTransferCount++;
+        currentFlushByteCount += packetLength;
+        totalTransferCount++;
+        totalByteCount += packetLength;
+        packetLength = 0;
+    }
+
+    interface Output {
+        /**
+         * @return the number of bytes sent, or a negative value on failure.
+         */
+        int transfer(byte[] buffer, int length);
+    }
+}
@@ -0,0 +1,189 @@
+package com.yougi.launchpadusb;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Snapshot of the led output of a connection, see {@link LaunchPadConnection#getOutputMetrics()}.
+ * <p>
+ * A queue depth close to its capacity with a low transfer duration means the producers write faster than the
+ * send thread flushes, long transfers mean the usb link is the bottleneck.
+ * <p>
+ * The queue counts add up both lanes of {@link SendLane}, the interactive lane is also reported on its own : it
+ * always coalesces when full, so a saturated interactive lane shows as interactive coalesced commands.
+ */
+public final class OutputMetrics {
+
+    private final int queueDepth;
+    private final int peakQueueDepth;
+    private final double messagesPerSecond;
+    private final double bytesPerSecond;
+    private final long messageCount;
+    private final long transferCount;
+    private final long byteCount;
+    private final long failedTransferCount;
+    private final long shortTransferCount;
+    private final long transferP50Nanos;
+    private final long transferP99Nanos;
+    private final long transferMaxNanos;
+    private final long coalescedCommandCount;
+    private final long droppedCommandCount;
+    private final long staleCommandCount;
+    private final int interactiveQueueDepth;
+    private final int interactivePeakQueueDepth;
+    private final long interactiveCoalescedCommandCount;
+
+    OutputMetrics(int queueDepth, int peakQueueDepth, double messagesPerSecond, double bytesPerSecond,
+                  long messageCount, long transferCount, long byteCount, long failedTransferCount,
+                  long shortTransferCount, long transferP50Nanos, long transferP99Nanos, long transferMaxNanos,
+                  long coalescedCommandCount, long droppedCommandCount, long staleCommandCount,
+                  int interactiveQueueDepth, int interactivePeakQueueDepth, long interactiveCoalescedCommandCount) {
+        this.queueDepth = queueDepth;
+        this.peakQueueDepth = peakQueueDepth;
+        this.messagesPerSecond = messagesPerSecond;
+        this.bytesPerSecond = bytesPerSecond;
+        this.messageCount = messageCount;
+        this.transferCount = transferCount;
+        this.byteCount = byteCount;
+        this.failedTransferCount = failedTransferCount;
+        this.shortTransferCount = shortTransferCount;
+        this.transferP50Nanos = transferP50Nanos;
+        this.transferP99Nanos = transferP99Nanos;
+        this.transferMaxNanos = transferMaxNanos;
+        this.coalescedCommandCount = coalescedCommandCount;
+        this.droppedCommandCount = droppedCommandCount;
+        this.staleCommandCount = staleCommandCount;
+        this.interactiveQueueDepth = interactiveQueueDepth;
+        this.interactivePeakQueueDepth = interactivePeakQueueDepth;
+        this.interactiveCoalescedCommandCount = interactiveCoalescedCommandCount;
+    }
+
+    /**
+     * @return the number of led commands waiting for the send thread, in both lanes.
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return the sum of the peak depth of each lane.
+     */
+    public int getPeakQueueDepth() {
+        return peakQueueDepth;
+    }
+
+    /**
+     * @return the midi messages sent per second over the last window of about one second.
+     */
+    public double getMessagesPerSecond() {
+        return messagesPerSecond;
+    }
+
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    public long getTransferCount() {
+        return transferCount;
+    }
+
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * @return the number of usb transfers which returned an error.
+     */
+    public long getFailedTransferCount() {
+        return failedTransferCount;
+    }
+
+    /**
+     * @return the number of usb transfers which sent only a part of their packet.
+     */
+    public long getShortTransferCount() {
+        return shortTransferCount;
+    }
+
+    public long getTransferP50Nanos() {
+        return transferP50Nanos;
+    }
+
+    public long getTransferP99Nanos() {
+        return transferP99Nanos;
+    }
+
+    public long getTransferMaxNanos() {
+        return transferMaxNanos;
+    }
+
+    public long getCoalescedCommandCount() {
+        return coalescedCommandCount;
+    }
+
+    /**
+     * @return the led writes dropped with {@link OverflowPolicy#DROP_OLDEST}, and the stale background writes.
+     */
+    public long getDroppedCommandCount() {
+        return droppedCommandCount;
+    }
+
+    /**
+     * @return the background writes dropped because an interactive write of their cell was offered after them,
+     * included in {@link #getDroppedCommandCount()}.
+     */
+    public long getStaleCommandCount() {
+        return staleCommandCount;
+    }
+
+    public int getInteractiveQueueDepth() {
+        return interactiveQueueDepth;
+    }
+
+    public int getInteractivePeakQueueDepth() {
+        return interactivePeakQueueDepth;
+    }
+
+    /**
+     * @return the interactive writes coalesced by a full interactive lane, included in
+     * {@link #getCoalescedCommandCount()}.
+     */
+    public long getInteractiveCoalescedCommandCount() {
+        return interactiveCoalescedCommandCount;
+    }
+
+    /**
+     * @return the metrics by name, in a stable order.
+     */
+    public Map<String, Number> toMap() {
+        final Map<String, Number> map = new LinkedHashMap<>();
+        map.put("queueDepth", queueDepth);
+        map.put("peakQueueDepth", peakQueueDepth);
+        map.put("messagesPerSecond", messagesPerSecond);
+        map.put("bytesPerSecond", bytesPerSecond);
+        map.put("messageCount", messageCount);
+        map.put("transferCount", transferCount);
+        map.put("byteCount", byteCount);
+        map.put("failedTransferCount", failedTransferCount);
+        map.put("shortTransferCount", shortTransferCount);
+        map.put("transferP50Nanos", transferP50Nanos);
+        map.put("transferP99Nanos", transferP99Nanos);
+        map.put("transferMaxNanos", transferMaxNanos);
+        map.put("coalescedCommandCount", coalescedCommandCount);
+        map.put("droppedCommandCount", droppedCommandCount);
+        map.put("staleCommandCount", staleCommandCount);
+        map.put("interactiveQueueDepth", interactiveQueueDepth);
+        map.put("interactivePeakQueueDepth", interactivePeakQueueDepth);
+        map.put("interactiveCoalescedCommandCount", interactiveCoalescedCommandCount);
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return "OutputMetrics" + toMap();
+    }
+}
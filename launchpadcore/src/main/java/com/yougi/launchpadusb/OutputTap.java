@@ -0,0 +1,23 @@
+package com.yougi.launchpadusb;
+
+/**
+ * Observe the packets sent to the device, set with {@link LaunchPadConnection#setOutputTap(OutputTap)}.
+ * <p>
+ * Called on the send process for each transfer, so an implementation must be quick and must copy the bytes
+ * it keeps.
+ */
+public interface OutputTap {
+
+    /**
+     * @param timestampNanos the {@link System#nanoTime()} of the start of the transfer.
+     * @param packet         the bytes sent, reused by the next transfer.
+     * @param result         the number of bytes sent, or a negative value on failure.
+     */
+    void onTransfer(long timestampNanos, byte[] packet, int length, int result);
+
+    /**
+     * The send process ended a flush with at least one transfer, the transfers since the previous flush are a
+     * frame.
+     */
+    void onFlush(long timestampNanos);
+}
@@ -0,0 +1,316 @@
+package com.yougi.launchpadusb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Analysis of a trace written by {@link OutputTraceWriter} : the midi messages are decoded from the traced
+ * bytes, and grouped in frames by the flushes of the send process.
+ * <p>
+ * A led write is redundant when it sends the same velocity as the previous write of the same led, the device
+ * already shows it. Comparing two traces with {@link #diff(OutputTraceAnalyzer, OutputTraceAnalyzer)} shows
+ * a rendering change that increases the traffic, the benchmarks module runs it from the command line.
+ */
+public final class OutputTraceAnalyzer {
+
+    private static final int STATUS_NOTE_ON = LaunchpadProtocol.STATUS_NOTE_ON & 0xFF;
+    private static final int STATUS_CONTROL_CHANGE = LaunchpadProtocol.STATUS_CONTROL_CHANGE & 0xFF;
+    private static final int STATUS_RAPID_UPDATE = LaunchpadProtocol.STATUS_RAPID_UPDATE & 0xFF;
+    private static final int STATUS_SYSEX_START = 0xF0;
+    private static final int STATUS_SYSEX_END = 0xF7;
+
+    private static final int NO_CELL = -1;
+    private static final int NO_DATA = -1;
+
+    /**
+     * Cell of each key, indexed by the key for notes and by 128 + the key for control changes.
+     */
+    private static final byte[] CELL_LOOKUP = new byte[256];
+
+    static {
+        Arrays.fill(CELL_LOOKUP, (byte) NO_CELL);
+        for (int cell = 0; cell < PadIndex.COUNT; cell++) {
+            final int controlChangeOffset =
+                    LaunchpadProtocol.statusOf(cell) == LaunchpadProtocol.STATUS_CONTROL_CHANGE ? 128 : 0;
+            CELL_LOOKUP[controlChangeOffset + LaunchpadProtocol.keyOf(cell)] = (byte) cell;
+        }
+    }
+
+    private long durationNanos;
+    private long transferCount;
+    private long failedTransferCount;
+    private long byteCount;
+    private long messageCount;
+    private long ledWriteCount;
+    private long redundantWriteCount;
+    private long frameCount;
+    private int maxMessagesPerFrame;
+    private int peakBurstBytes;
+
+    // decoder state
+    private int runningStatus;
+    private int pendingData = NO_DATA;
+    private boolean isInSysex;
+    private int rapidCursor;
+    private final int[] lastVelocities = new int[PadIndex.COUNT];
+    private int frameMessageCount;
+    private int frameByteCount;
+
+    private OutputTraceAnalyzer() {
+        Arrays.fill(lastVelocities, -1);
+    }
+
+    public static OutputTraceAnalyzer analyze(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("the file in argument Cannot be null");
+        }
+
+        final ByteBuffer trace;
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            trace = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            randomAccessFile.close();
+        }
+        trace.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (trace.remaining() < OutputTraceWriter.HEADER_LENGTH || trace.getInt() != OutputTraceWriter.MAGIC) {
+            throw new IllegalArgumentException("this file isn't an output trace");
+        }
+
+        final int version = trace.getInt();
+        if (version != OutputTraceWriter.VERSION) {
+            throw new IllegalArgumentException("this output trace version isn't supported : " + version);
+        }
+
+        final OutputTraceAnalyzer analyzer = new OutputTraceAnalyzer();
+        analyzer.read(trace);
+        return analyzer;
+    }
+
+    private void read(ByteBuffer trace) {
+        while (trace.hasRemaining()) {
+            final byte type = trace.get();
+            if (type == OutputTraceWriter.TYPE_TRANSFER) {
+                durationNanos = trace.getLong();
+                final int result = trace.getInt();
+                final int length = trace.getShort() & 0xFFFF;
+
+                transferCount++;
+                if (result < 0) {
+                    failedTransferCount++;
+                }
+                byteCount += length;
+                frameByteCount += length;
+                for (int i = 0; i < length; i++) {
+                    decode(trace.get() & 0xFF);
+                }
+            } else if (type == OutputTraceWriter.TYPE_FLUSH) {
+                durationNanos = trace.getLong();
+                endFrame();
+            } else {
+                break;
+            }
+        }
+        endFrame();
+    }
+
+    private void endFrame() {
+        if (frameByteCount == 0) {
+            return;
+        }
+
+        frameCount++;
+        maxMessagesPerFrame = Math.max(maxMessagesPerFrame, frameMessageCount);
+        peakBurstBytes = Math.max(peakBurstBytes, frameByteCount);
+        frameMessageCount = 0;
+        frameByteCount = 0;
+    }
+
+    private void decode(int value) {
+        if (value >= 0x80) {
+            pendingData = NO_DATA;
+            if (value == STATUS_SYSEX_START) {
+                isInSysex = true;
+                runningStatus = 0;
+            } else if (value == STATUS_SYSEX_END) {
+                if (isInSysex) {
+                    onMessage();
+                }
+                isInSysex = false;
+            } else {
+                isInSysex = false;
+                runningStatus = value;
+            }
+            return;
+        }
+
+        if (isInSysex || runningStatus == 0) {
+            return;
+        }
+
+        if (pendingData == NO_DATA) {
+            pendingData = value;
+            return;
+        }
+
+        final int data1 = pendingData;
+        pendingData = NO_DATA;
+        onMessage();
+
+        if (runningStatus == STATUS_RAPID_UPDATE) {
+            onLedWrite(rapidCursor++, data1);
+            onLedWrite(rapidCursor++, value);
+            return;
+        }
+
+        // any message other than a rapid update resets the cursor of the device to the first led
+        rapidCursor = 0;
+        if (runningStatus == STATUS_NOTE_ON) {
+            onLedWrite(CELL_LOOKUP[data1], value);
+        } else if (runningStatus == STATUS_CONTROL_CHANGE) {
+            onLedWrite(CELL_LOOKUP[128 + data1], value);
+        }
+    }
+
+    private void onMessage() {
+        messageCount++;
+        frameMessageCount++;
+    }
+
+    private void onLedWrite(int cell, int velocity) {
+        if (cell == NO_CELL || cell >= PadIndex.COUNT) {
+            return;
+        }
+
+        ledWriteCount++;
+        if (lastVelocities[cell] == velocity) {
+            redundantWriteCount++;
+        }
+        lastVelocities[cell] = velocity;
+    }
+
+    /**
+     * @return the time of the last record since the start of the trace.
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public long getTransferCount() {
+        return transferCount;
+    }
+
+    public long getFailedTransferCount() {
+        return failedTransferCount;
+    }
+
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    public long getLedWriteCount() {
+        return ledWriteCount;
+    }
+
+    /**
+     * @return the led writes sending the velocity already sent to the led.
+     */
+    public long getRedundantWriteCount() {
+        return redundantWriteCount;
+    }
+
+    /**
+     * @return the number of flushes of the send process with at least one transfer.
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public double getMessagesPerFrame() {
+        return frameCount == 0 ? 0 : (double) messageCount / frameCount;
+    }
+
+    public int getMaxMessagesPerFrame() {
+        return maxMessagesPerFrame;
+    }
+
+    /**
+     * @return the most bytes sent by a single frame.
+     */
+    public int getPeakBurstBytes() {
+        return peakBurstBytes;
+    }
+
+    /**
+     * @return the values of this analysis by name, in a stable order for logs and reports.
+     */
+    public Map<String, Number> toMap() {
+        final LinkedHashMap<String, Number> map = new LinkedHashMap<>();
+        map.put("durationNanos", durationNanos);
+        map.put("transferCount", transferCount);
+        map.put("failedTransferCount", failedTransferCount);
+        map.put("byteCount", byteCount);
+        map.put("messageCount", messageCount);
+        map.put("ledWriteCount", ledWriteCount);
+        map.put("redundantWriteCount", redundantWriteCount);
+        map.put("frameCount", frameCount);
+        map.put("messagesPerFrame", getMessagesPerFrame());
+        map.put("maxMessagesPerFrame", maxMessagesPerFrame);
+        map.put("peakBurstBytes", peakBurstBytes);
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Number> entry : toMap().entrySet()) {
+            builder.append(String.format(Locale.US, "%-22s %s%n", entry.getKey(), format(entry.getValue())));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return one line per value : the value of each trace and the ratio of the second one to the first one.
+     */
+    public static String diff(OutputTraceAnalyzer before, OutputTraceAnalyzer after) {
+        if (before == null || after == null) {
+            throw new IllegalArgumentException("the traces in argument Cannot be null");
+        }
+
+        final Map<String, Number> beforeValues = before.toMap();
+        final Map<String, Number> afterValues = after.toMap();
+        final StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.US, "%-22s %14s %14s %8s%n", "", "before", "after", "ratio"));
+        for (Map.Entry<String, Number> entry : beforeValues.entrySet()) {
+            final double beforeValue = entry.getValue().doubleValue();
+            final double afterValue = afterValues.get(entry.getKey()).doubleValue();
+            final String ratio = beforeValue == 0
+                    ? (afterValue == 0 ? "=" : "new")
+                    : String.format(Locale.US, "x%.2f", afterValue / beforeValue);
+            builder.append(String.format(Locale.US, "%-22s %14s %14s %8s%n", entry.getKey(),
+                    format(entry.getValue()), format(afterValues.get(entry.getKey())), ratio));
+        }
+        return builder.toString();
+    }
+
+    private static String format(Number value) {
+        if (value instanceof Double) {
+            return String.format(Locale.US, "%.2f", value.doubleValue());
+        }
+        return value.toString();
+    }
+}
@@ -0,0 +1,118 @@
+package com.yougi.launchpadusb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+
+/**
+ * {@link OutputTap} writing every transfer into a binary trace, read by {@link OutputTraceAnalyzer}.
+ * <p>
+ * Like the {@link InputRecorder} the trace is a memory mapped file of a fixed capacity, written without
+ * allocation by the send process. Once the capacity is reached the next records are counted as dropped.
+ * Closing the writer truncates the file to the traced length.
+ * <p>
+ * Format, little endian : the magic "LPOT", the version, then the records until a 0 type or the end of the
+ * file. Each record starts with its type and its time in nanoseconds since the start of the trace.
+ * <ul>
+ * <li>transfer : type 1, time (8 bytes), result (4 bytes), length (2 bytes), the bytes sent.</li>
+ * <li>flush : type 2, time (8 bytes).</li>
+ * </ul>
+ */
+public final class OutputTraceWriter implements OutputTap {
+
+    static final int MAGIC = 0x544F504C;
+    static final int VERSION = 1;
+    static final int HEADER_LENGTH = MappedLogFile.HEADER_LENGTH;
+
+    static final byte TYPE_END = 0;
+    static final byte TYPE_TRANSFER = 1;
+    static final byte TYPE_FLUSH = 2;
+
+    private static final int TRANSFER_RECORD_LENGTH = 1 + 8 + 4 + 2;
+    private static final int FLUSH_RECORD_LENGTH = 1 + 8;
+
+    private final MappedLogFile logFile;
+    private final MappedByteBuffer buffer;
+    private final long startNanos;
+
+    private boolean isClosed;
+    private volatile long transferCount;
+    private volatile long droppedCount;
+
+    private OutputTraceWriter(MappedLogFile logFile) {
+        this.logFile = logFile;
+        this.buffer = logFile.getBuffer();
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * @param capacity the max length of the trace in bytes, mapped at once.
+     */
+    public static OutputTraceWriter open(File file, int capacity) throws IOException {
+        return new OutputTraceWriter(MappedLogFile.open(file, capacity, MAGIC, VERSION));
+    }
+
+    @Override
+    public synchronized void onTransfer(long timestampNanos, byte[] packet, int length, int result) {
+        if (isClosed) {
+            return;
+        }
+
+        if (buffer.remaining() < TRANSFER_RECORD_LENGTH + length) {
+            droppedCount++;
+            return;
+        }
+
+        buffer.put(TYPE_TRANSFER);
+        buffer.putLong(timestampNanos - startNanos);
+        buffer.putInt(result);
+        buffer.putShort((short) length);
+        buffer.put(packet, 0, length);
+        transferCount++;
+    }
+
+    @Override
+    public synchronized void onFlush(long timestampNanos) {
+        if (isClosed) {
+            return;
+        }
+
+        if (buffer.remaining() < FLUSH_RECORD_LENGTH) {
+            droppedCount++;
+            return;
+        }
+
+        buffer.put(TYPE_FLUSH);
+        buffer.putLong(timestampNanos - startNanos);
+    }
+
+    public long getTransferCount() {
+        return transferCount;
+    }
+
+    /**
+     * @return the number of transfers and flushes not traced because the trace was full.
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * @return the length of the trace in bytes.
+     */
+    public synchronized int getLength() {
+        return buffer.position();
+    }
+
+    /**
+     * Write the trace on the disk and truncate the file to its length. The transfers sent later are ignored.
+     */
+    public synchronized void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+
+        isClosed = true;
+        logFile.close();
+    }
+}
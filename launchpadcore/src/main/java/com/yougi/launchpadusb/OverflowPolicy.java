@@ -0,0 +1,30 @@
+package com.yougi.launchpadusb;
+
+/**
+ * What a led write does when the command queue of a {@link LaunchPadConnection} is full, because the
+ * producers write faster than the device accepts.
+ * <p>
+ * Frame commands ({@link LaunchPadConnection#beginFrame()} and {@link LaunchPadConnection#commitFrame()})
+ * are never dropped nor coalesced, they always wait for a free slot.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The writer waits until the send thread frees a slot. No write is lost, but the caller can be slowed
+     * down to the speed of the device.
+     */
+    BLOCK,
+
+    /**
+     * The oldest pending led write is dropped to make room. The caller never waits, the dropped writes are
+     * counted by {@link LaunchPadConnection#getDroppedCommandCount()}.
+     */
+    DROP_OLDEST,
+
+    /**
+     * The write is kept aside as the last color of its led and merged by the send thread after the queued
+     * writes. The caller never waits and the final color of each led is always right, only the intermediate
+     * colors are lost. They are counted by {@link LaunchPadConnection#getCoalescedCommandCount()}.
+     */
+    COALESCE
+}
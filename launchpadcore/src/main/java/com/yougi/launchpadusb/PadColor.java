@@ -0,0 +1,88 @@
+package com.yougi.launchpadusb;
+
+public final class PadColor {
+
+    /**
+     * Bits of a color : the red and green levels, then the blink attributes, which the send process turns into
+     * the velocity flags of the device.
+     */
+    static final byte LEVEL_MASK = 0x33;
+    static final byte FLAG_FLASH = 8;
+    static final byte FLAG_PULSE = 64;
+    static final byte BLINK_MASK = FLAG_FLASH | FLAG_PULSE;
+
+    private PadColor(){
+        // static access
+    }
+
+    /**
+     * @return the color of a led as expected by the frame apis of {@link LaunchPadConnection}.
+     */
+    public static byte of(Red red, Green green) {
+        return (byte) (red.colorId + green.colorId);
+    }
+
+    /**
+     * @return the color of a led blinking by itself, the device blinks it without message from the host.
+     */
+    public static byte of(Red red, Green green, Blink blink) {
+        return (byte) (red.colorId + green.colorId + blink.colorId);
+    }
+
+    /**
+     * @return the color with each level lowered, shown by a pulsing led between its full color.
+     */
+    static byte dimmed(byte color) {
+        final int red = (color & 0x03) >> 1;
+        final int green = ((color >> 4) & 0x03) >> 1;
+        return (byte) (red + (green << 4));
+    }
+
+    public enum Red {
+        DISABLE((byte)0),
+        POWER1((byte)1),
+        POWER2((byte)2),
+        POWER3((byte)3);
+
+        final byte colorId;
+
+        Red(byte colorId) {
+            this.colorId = colorId;
+        }
+    }
+
+    public enum Blink {
+        /**
+         * Steady led.
+         */
+        NONE((byte)0),
+        /**
+         * The led alternates between its color and off, at the flash rate of the device.
+         */
+        FLASH(FLAG_FLASH),
+        /**
+         * The led alternates between its color and a dimmed color, at the flash rate of the device.
+         */
+        PULSE(FLAG_PULSE);
+
+        final byte colorId;
+
+        Blink(byte colorId) {
+            this.colorId = colorId;
+        }
+    }
+
+    public enum Green {
+        DISABLE((byte)0),
+        POWER1((byte)16),
+        POWER2((byte)32),
+        POWER3((byte)48);
+
+        final byte colorId;
+
+        Green(byte colorId) {
+            this.colorId = colorId;
+        }
+    }
+
+}
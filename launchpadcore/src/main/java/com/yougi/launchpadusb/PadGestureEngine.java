@@ -0,0 +1,299 @@
+package com.yougi.launchpadusb;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Recognize gestures from the pad events of the receive thread : long press, double tap, drag between two
+ * neighbouring grid pads and swipe along a row or a column of the grid.
+ * <p>
+ * The state of each pad is a few fixed arrays updated with the monotonic timestamps of the events, nothing is
+ * allocated per event. A long press is detected without event, by the {@link GestureClock} shared by the
+ * engines. The pressed state of a pad is an atomic word with the number of its press, so the clock marks a
+ * long press with a compare and set, without lock and never on a later press of the pad. The gestures are
+ * queued as packed ints and delivered to the listener on its executor.
+ * <p>
+ * While an {@link InputReplayer} feeds the events, the clock leaves the engine alone : the long presses are
+ * checked on the time of each replayed event, so the gestures follow the recorded times at any replay speed.
+ */
+final class PadGestureEngine implements Runnable {
+
+    static final long LONG_PRESS_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    static final long DOUBLE_TAP_NANOS = TimeUnit.MILLISECONDS.toNanos(300);
+    static final long SWIPE_STEP_NANOS = TimeUnit.MILLISECONDS.toNanos(150);
+    static final int SWIPE_MIN_LENGTH = 3;
+
+    private static final int GESTURE_LONG_PRESS = 0;
+    private static final int GESTURE_DOUBLE_TAP = 1;
+    private static final int GESTURE_DRAG = 2;
+    private static final int GESTURE_SWIPE = 3;
+
+    /**
+     * Deadline returned by {@link #onClockTick(long)} when no pad is waiting for a long press.
+     */
+    static final long NO_DEADLINE = Long.MIN_VALUE;
+
+    private static final int QUEUE_CAPACITY = 64;
+    private static final int NO_CELL = -1;
+
+    private static final int PRESS_UP = 0;
+    private static final int PRESS_DOWN = 1;
+    private static final int PRESS_LONG = 2;
+    private static final int PRESS_STATE_MASK = 3;
+
+    private static final SwipeDirection[] SWIPE_DIRECTIONS = SwipeDirection.values();
+
+    private final LaunchPadConnection.OnPadGestureListener listener;
+    private final Executor executor;
+
+    /**
+     * For each pad the number of its press shifted by 2, and its press state.
+     */
+    private final AtomicIntegerArray pressWords = new AtomicIntegerArray(PadIndex.COUNT);
+    private final AtomicLongArray downNanos = new AtomicLongArray(PadIndex.COUNT);
+    private final int[] pressCounts = new int[PadIndex.COUNT];
+
+    // receive thread only
+    private final long[] lastTapUpNanos = new long[PadIndex.COUNT];
+    private final boolean[] isSecondTap = new boolean[PadIndex.COUNT];
+
+    private int dragCell = NO_CELL;
+
+    private int swipeLastCell = NO_CELL;
+    private long swipeLastNanos;
+    private int swipeColumnStep;
+    private int swipeRowStep;
+    private int swipeLength;
+
+    private final Object gestureLock = new Object();
+    private final int[] gestures = new int[QUEUE_CAPACITY];
+    private int gestureHead;
+    private int gestureCount;
+    private boolean isScheduled;
+
+    private volatile GestureClock clock;
+    private volatile boolean isReplaying;
+
+    PadGestureEngine(LaunchPadConnection.OnPadGestureListener listener, Executor executor) {
+        this.listener = listener;
+        this.executor = executor;
+        Arrays.fill(lastTapUpNanos, Long.MIN_VALUE);
+    }
+
+    synchronized void start() {
+        clock = GestureClock.getInstance();
+        clock.register(this);
+    }
+
+    synchronized void stop() {
+        if (clock != null) {
+            clock.unregister(this);
+            clock = null;
+        }
+    }
+
+    /**
+     * @param isReplaying true while the events are replayed, with the recorded times.
+     */
+    void setReplaying(boolean isReplaying) {
+        this.isReplaying = isReplaying;
+    }
+
+    /**
+     * Called by the receive thread for each event.
+     */
+    void onPadEvent(int cell, boolean isDownEvent, long nanos) {
+        if (isReplaying) {
+            // the long presses due before this event, as the clock saw them during the recording
+            checkLongPresses(nanos);
+        }
+
+        if (isDownEvent) {
+            onDown(cell, nanos);
+        } else {
+            onUp(cell, nanos);
+        }
+    }
+
+    private void onDown(int cell, long nanos) {
+        downNanos.set(cell, nanos);
+        pressWords.set(cell, (++pressCounts[cell] << 2) | PRESS_DOWN);
+        isSecondTap[cell] = lastTapUpNanos[cell] != Long.MIN_VALUE
+                && nanos - lastTapUpNanos[cell] <= DOUBLE_TAP_NANOS;
+
+        final GestureClock currentClock = clock;
+        if (currentClock != null && !isReplaying) {
+            currentClock.wakeUpBefore(nanos + LONG_PRESS_NANOS);
+        }
+
+        if (cell >= PadIndex.GRID_COUNT) {
+            return;
+        }
+
+        if (dragCell != NO_CELL && dragCell != cell && isDown(dragCell) && areNeighbours(dragCell, cell)) {
+            queue(GESTURE_DRAG, dragCell, cell);
+        }
+        dragCell = cell;
+
+        updateSwipe(cell, nanos);
+    }
+
+    private boolean isDown(int cell) {
+        return (pressWords.get(cell) & PRESS_STATE_MASK) != PRESS_UP;
+    }
+
+    private void onUp(int cell, long nanos) {
+        final int pressState = pressWords.getAndSet(cell, pressCounts[cell] << 2) & PRESS_STATE_MASK;
+        if (pressState == PRESS_UP) {
+            return;
+        }
+
+        if (pressState == PRESS_LONG) {
+            lastTapUpNanos[cell] = Long.MIN_VALUE;
+        } else if (isSecondTap[cell]) {
+            queue(GESTURE_DOUBLE_TAP, cell, 0);
+            lastTapUpNanos[cell] = Long.MIN_VALUE;
+        } else {
+            lastTapUpNanos[cell] = nanos;
+        }
+    }
+
+    private void updateSwipe(int cell, long nanos) {
+        if (swipeLastCell != NO_CELL && nanos - swipeLastNanos <= SWIPE_STEP_NANOS) {
+            final int columnStep = cell % 8 - swipeLastCell % 8;
+            final int rowStep = cell / 8 - swipeLastCell / 8;
+            final boolean isStep = Math.abs(columnStep) + Math.abs(rowStep) == 1;
+            if (isStep && (swipeLength == 1 || (columnStep == swipeColumnStep && rowStep == swipeRowStep))) {
+                swipeColumnStep = columnStep;
+                swipeRowStep = rowStep;
+                swipeLength++;
+            } else {
+                swipeLength = 1;
+            }
+        } else {
+            swipeLength = 1;
+        }
+
+        swipeLastCell = cell;
+        swipeLastNanos = nanos;
+
+        if (swipeLength == SWIPE_MIN_LENGTH) {
+            final SwipeDirection direction;
+            if (swipeColumnStep != 0) {
+                direction = swipeColumnStep > 0 ? SwipeDirection.RIGHT : SwipeDirection.LEFT;
+            } else {
+                direction = swipeRowStep > 0 ? SwipeDirection.DOWN : SwipeDirection.UP;
+            }
+            final int line = swipeColumnStep != 0 ? cell / 8 : cell % 8;
+            queue(GESTURE_SWIPE, direction.ordinal(), line);
+        }
+    }
+
+    private static boolean areNeighbours(int firstCell, int secondCell) {
+        return Math.abs(firstCell % 8 - secondCell % 8) <= 1 && Math.abs(firstCell / 8 - secondCell / 8) <= 1;
+    }
+
+    /**
+     * Called by the {@link GestureClock}, queue the long presses due at this time.
+     *
+     * @return the nearest deadline of a held pad, or {@link #NO_DEADLINE}.
+     */
+    long onClockTick(long now) {
+        return isReplaying ? NO_DEADLINE : checkLongPresses(now);
+    }
+
+    private long checkLongPresses(long now) {
+        long nextDeadline = NO_DEADLINE;
+        for (int cell = 0; cell < PadIndex.COUNT; cell++) {
+            final int pressWord = pressWords.get(cell);
+            if ((pressWord & PRESS_STATE_MASK) != PRESS_DOWN) {
+                continue;
+            }
+
+            final long deadline = downNanos.get(cell) + LONG_PRESS_NANOS;
+            if (deadline - now <= 0) {
+                // fails if the pad was released or pressed again meanwhile
+                if (pressWords.compareAndSet(cell, pressWord, (pressWord & ~PRESS_STATE_MASK) | PRESS_LONG)) {
+                    queue(GESTURE_LONG_PRESS, cell, 0);
+                }
+            } else if (nextDeadline == NO_DEADLINE || deadline - nextDeadline < 0) {
+                nextDeadline = deadline;
+            }
+        }
+        return nextDeadline;
+    }
+
+    /**
+     * Called by the receive thread or the clock.
+     */
+    private void queue(int type, int first, int second) {
+        synchronized (gestureLock) {
+            if (gestureCount == QUEUE_CAPACITY) {
+                // the listener is too slow, the oldest gestures are kept
+                return;
+            }
+
+            gestures[(gestureHead + gestureCount) % QUEUE_CAPACITY] = (type << 16) | (first << 8) | second;
+            gestureCount++;
+
+            if (isScheduled) {
+                return;
+            }
+            isScheduled = true;
+        }
+
+        try {
+            executor.execute(this);
+        } catch (RejectedExecutionException e) {
+            synchronized (gestureLock) {
+                isScheduled = false;
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            final int gesture;
+            synchronized (gestureLock) {
+                if (gestureCount == 0) {
+                    isScheduled = false;
+                    return;
+                }
+                gesture = gestures[gestureHead];
+                gestureHead = (gestureHead + 1) % QUEUE_CAPACITY;
+                gestureCount--;
+            }
+
+            try {
+                deliver(gesture);
+            } catch (RuntimeException e) {
+                ListenerDispatcher.logListenerFailure(listener, e);
+            }
+        }
+    }
+
+    private void deliver(int gesture) {
+        final int first = (gesture >>> 8) & 0xFF;
+        final int second = gesture & 0xFF;
+        switch (gesture >>> 16) {
+            case GESTURE_LONG_PRESS:
+                listener.onLongPress(first);
+                break;
+            case GESTURE_DOUBLE_TAP:
+                listener.onDoubleTap(first);
+                break;
+            case GESTURE_DRAG:
+                listener.onDrag(first, second);
+                break;
+            case GESTURE_SWIPE:
+            default:
+                listener.onSwipe(SWIPE_DIRECTIONS[first], second);
+                break;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.yougi.launchpadusb;
+
+/**
+ * Index of the 80 leds of the device, used by the frame apis of {@link LaunchPadConnection}.
+ * <p>
+ * The 8x8 grid comes first (0 - 63, the pad id), then the right controls from top to bottom (64 - 71) and
+ * the top controls from left to right (72 - 79). It is the order of the rapid led update of the device.
+ */
+public final class PadIndex {
+
+    public static final int GRID_COUNT = 64;
+    public static final int FIRST_RIGHT_CONTROL = 64;
+    public static final int FIRST_TOP_CONTROL = 72;
+    public static final int COUNT = 80;
+
+    private PadIndex() {
+        // static access
+    }
+
+    public static int of(int padId) {
+        if (padId < 0 || padId >= GRID_COUNT) {
+            throw new IllegalArgumentException("this pad id isn't supported : " + padId);
+        }
+
+        return padId;
+    }
+
+    public static int of(ControlRightPad controlRightPad) {
+        return FIRST_RIGHT_CONTROL + controlRightPad.ordinal();
+    }
+
+    public static int of(ControlTopPad controlTopPad) {
+        return FIRST_TOP_CONTROL + controlTopPad.ordinal();
+    }
+}
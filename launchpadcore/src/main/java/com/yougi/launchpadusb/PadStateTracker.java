@@ -0,0 +1,202 @@
+package com.yougi.launchpadusb;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pressed state of the 80 pads, as a bitmap written by the receive thread and read by any thread without lock.
+ * <p>
+ * The bitmap is two longs, the grid and the controls. A version number is incremented before and after each
+ * update, so a reader needing both longs retries when it reads them during an update.
+ * <p>
+ * The chords are the masks of a set of pads, checked on each down event with two and operations. A chord
+ * fires once when all its pads are held, and again only after one of them is released.
+ */
+final class PadStateTracker {
+
+    private static final Chord[] NO_CHORD = new Chord[0];
+
+    private volatile int version;
+    private volatile long gridBits;
+    private volatile long controlBits;
+
+    private final Object chordLock = new Object();
+    private volatile Chord[] chords = NO_CHORD;
+
+    /**
+     * Called by the receive thread for each event.
+     */
+    void update(int cell, boolean isDown) {
+        long grid = gridBits;
+        long control = controlBits;
+        if (cell < PadIndex.GRID_COUNT) {
+            grid = isDown ? grid | (1L << cell) : grid & ~(1L << cell);
+        } else {
+            final long bit = 1L << (cell - PadIndex.GRID_COUNT);
+            control = isDown ? control | bit : control & ~bit;
+        }
+
+        version++;
+        gridBits = grid;
+        controlBits = control;
+        version++;
+
+        final Chord[] current = chords;
+        for (Chord chord : current) {
+            chord.update(grid, control);
+        }
+    }
+
+    boolean isPressed(int cell) {
+        if (cell < PadIndex.GRID_COUNT) {
+            return (gridBits & (1L << cell)) != 0;
+        }
+        return (controlBits & (1L << (cell - PadIndex.GRID_COUNT))) != 0;
+    }
+
+    int pressedCount() {
+        while (true) {
+            final int startVersion = version;
+            final long grid = gridBits;
+            final long control = controlBits;
+            if ((startVersion & 1) == 0 && startVersion == version) {
+                return Long.bitCount(grid) + Long.bitCount(control);
+            }
+        }
+    }
+
+    /**
+     * @param cells receive the pressed cells, in the order of {@link PadIndex}.
+     * @return the number of pressed cells, only the cells fitting in the array are copied.
+     */
+    int copyPressed(int[] cells) {
+        long grid;
+        long control;
+        while (true) {
+            final int startVersion = version;
+            grid = gridBits;
+            control = controlBits;
+            if ((startVersion & 1) == 0 && startVersion == version) {
+                break;
+            }
+        }
+
+        int count = 0;
+        while (grid != 0) {
+            final int cell = Long.numberOfTrailingZeros(grid);
+            if (count < cells.length) {
+                cells[count] = cell;
+            }
+            count++;
+            grid &= grid - 1;
+        }
+        while (control != 0) {
+            final int cell = PadIndex.GRID_COUNT + Long.numberOfTrailingZeros(control);
+            if (count < cells.length) {
+                cells[count] = cell;
+            }
+            count++;
+            control &= control - 1;
+        }
+        return count;
+    }
+
+    boolean registerChord(Chord chord) {
+        synchronized (chordLock) {
+            final Chord[] current = chords;
+            for (Chord registered : current) {
+                if (registered.listener == chord.listener) {
+                    return false;
+                }
+            }
+
+            final Chord[] updated = new Chord[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = chord;
+            chords = updated;
+            return true;
+        }
+    }
+
+    boolean unregisterChord(LaunchPadConnection.OnChordListener listener) {
+        synchronized (chordLock) {
+            final Chord[] current = chords;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].listener == listener) {
+                    final Chord[] updated = new Chord[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                    chords = updated;
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    static final class Chord implements Runnable {
+
+        private final int[] cells;
+        private final long gridMask;
+        private final long controlMask;
+        private final LaunchPadConnection.OnChordListener listener;
+        private final Executor executor;
+
+        private boolean isHeld;
+        private final AtomicInteger pendingCount = new AtomicInteger();
+        private final AtomicBoolean isScheduled = new AtomicBoolean();
+
+        Chord(int[] cells, LaunchPadConnection.OnChordListener listener, Executor executor) {
+            long grid = 0;
+            long control = 0;
+            for (int cell : cells) {
+                if (cell < 0 || cell >= PadIndex.COUNT) {
+                    throw new IllegalArgumentException("this pad index isn't supported : " + cell);
+                }
+
+                if (cell < PadIndex.GRID_COUNT) {
+                    grid |= 1L << cell;
+                } else {
+                    control |= 1L << (cell - PadIndex.GRID_COUNT);
+                }
+            }
+
+            this.cells = cells.clone();
+            this.gridMask = grid;
+            this.controlMask = control;
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        private void update(long grid, long control) {
+            final boolean isHeldNow = (grid & gridMask) == gridMask && (control & controlMask) == controlMask;
+            if (isHeldNow && !isHeld) {
+                pendingCount.incrementAndGet();
+                if (isScheduled.compareAndSet(false, true)) {
+                    try {
+                        executor.execute(this);
+                    } catch (RejectedExecutionException e) {
+                        isScheduled.set(false);
+                    }
+                }
+            }
+            isHeld = isHeldNow;
+        }
+
+        @Override
+        public void run() {
+            do {
+                for (int count = pendingCount.getAndSet(0); count > 0; count--) {
+                    try {
+                        listener.onChordPressed(cells);
+                    } catch (RuntimeException e) {
+                        ListenerDispatcher.logListenerFailure(listener, e);
+                    }
+                }
+                isScheduled.set(false);
+            } while (pendingCount.get() > 0 && isScheduled.compareAndSet(false, true));
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.yougi.launchpadusb;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Transport keeping several transfers in flight on a {@link LaunchpadRequestQueue}, instead of one blocking
+ * transfer per direction.
+ * <p>
+ * The reads are always queued, so the device never waits for the receive thread between two packets, and a
+ * write only waits when every write request is in flight. The buffers of the requests are allocated once.
+ * <p>
+ * Only one thread waits for the completions of the queue at a time, the reaper : the receive thread when it
+ * waits for a packet, or the send thread when every write request is busy. The reaper stores the completions
+ * of the other direction and wakes the thread waiting for them.
+ * <p>
+ * An interrupted read or write returns 0 : nothing was transferred, and the interrupt status is kept for the
+ * thread to stop.
+ */
+public final class PipelinedTransport implements LaunchpadTransport {
+
+    public static final int DEFAULT_READ_REQUEST_COUNT = 4;
+    public static final int DEFAULT_WRITE_REQUEST_COUNT = 4;
+
+    private final LaunchpadRequestQueue requestQueue;
+    private final int readRequestCount;
+    private final int writeRequestCount;
+
+    /**
+     * The read requests have the ids 0 to readRequestCount - 1, followed by the write requests.
+     */
+    private final byte[][] buffers;
+    private final int[] lengths;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition completed = lock.newCondition();
+    private boolean isReaping;
+    private boolean isFailed;
+    private boolean areReadsQueued;
+
+    private final int[] completedReads;
+    private int completedReadHead;
+    private int completedReadCount;
+
+    private final boolean[] isWriteBusy;
+    private int nextWrite;
+
+    private volatile long failedWriteCount;
+
+    public PipelinedTransport(LaunchpadRequestQueue requestQueue) {
+        this(requestQueue, DEFAULT_READ_REQUEST_COUNT, DEFAULT_WRITE_REQUEST_COUNT);
+    }
+
+    public PipelinedTransport(LaunchpadRequestQueue requestQueue, int readRequestCount, int writeRequestCount) {
+        if (requestQueue == null) {
+            throw new IllegalArgumentException("the requestQueue in argument Cannot be null");
+        }
+
+        if (readRequestCount <= 0 || writeRequestCount <= 0) {
+            throw new IllegalArgumentException("the request counts must be positive");
+        }
+
+        this.requestQueue = requestQueue;
+        this.readRequestCount = readRequestCount;
+        this.writeRequestCount = writeRequestCount;
+
+        buffers = new byte[readRequestCount + writeRequestCount][];
+        lengths = new int[readRequestCount + writeRequestCount];
+        for (int requestId = 0; requestId < buffers.length; requestId++) {
+            buffers[requestId] = new byte[requestId < readRequestCount
+                    ? requestQueue.getMaxReadPacketSize() : requestQueue.getMaxWritePacketSize()];
+        }
+
+        completedReads = new int[readRequestCount];
+        isWriteBusy = new boolean[writeRequestCount];
+    }
+
+    /**
+     * @return the number of queued writes which failed or were cut, a write returns before its completion.
+     */
+    public long getFailedWriteCount() {
+        return failedWriteCount;
+    }
+
+    @Override
+    public int readPacket(byte[] buffer) {
+        lock.lock();
+        try {
+            if (!areReadsQueued) {
+                if (isFailed) {
+                    return -1;
+                }
+
+                for (int requestId = 0; requestId < readRequestCount; requestId++) {
+                    if (!requestQueue.queueRead(requestId, buffers[requestId])) {
+                        // the reads queued before are in flight, they can't be queued again
+                        isFailed = true;
+                        return -1;
+                    }
+                }
+                areReadsQueued = true;
+            }
+
+            while (completedReadCount == 0) {
+                if (isFailed) {
+                    return -1;
+                }
+                reapOrAwait();
+            }
+
+            final int requestId = completedReads[completedReadHead];
+            completedReadHead = (completedReadHead + 1) % readRequestCount;
+            completedReadCount--;
+
+            final int length = Math.min(lengths[requestId], buffer.length);
+            if (length > 0) {
+                System.arraycopy(buffers[requestId], 0, buffer, 0, length);
+            }
+
+            if (!requestQueue.queueRead(requestId, buffers[requestId])) {
+                isFailed = true;
+            }
+            return length < 0 ? -1 : length;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queue the packet and return without waiting for its completion, unless every write request is busy.
+     */
+    @Override
+    public int writePacket(byte[] buffer, int length) {
+        lock.lock();
+        try {
+            while (isWriteBusy[nextWrite]) {
+                if (isFailed) {
+                    return -1;
+                }
+                reapOrAwait();
+            }
+
+            // the writes are queued in turn, so the oldest write is always the next one to be free
+            final int write = nextWrite;
+            final int requestId = readRequestCount + write;
+            System.arraycopy(buffer, 0, buffers[requestId], 0, length);
+            lengths[requestId] = length;
+
+            if (!requestQueue.queueWrite(requestId, buffers[requestId], length)) {
+                return -1;
+            }
+
+            isWriteBusy[write] = true;
+            nextWrite = (write + 1) % writeRequestCount;
+            return length;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called with the lock : reap one completion if no other thread does it, otherwise wait for its signal.
+     */
+    private void reapOrAwait() throws InterruptedException {
+        if (isReaping) {
+            completed.await();
+            return;
+        }
+
+        isReaping = true;
+        long completion = -1;
+        lock.unlock();
+        try {
+            completion = requestQueue.awaitCompletion();
+        } finally {
+            lock.lock();
+            isReaping = false;
+            onCompletion(completion);
+            completed.signalAll();
+        }
+    }
+
+    private void onCompletion(long completion) {
+        if (completion < 0) {
+            isFailed = true;
+            return;
+        }
+
+        final int requestId = RequestCompletion.requestIdOf(completion);
+        final int length = RequestCompletion.lengthOf(completion);
+        if (requestId < readRequestCount) {
+            lengths[requestId] = length;
+            completedReads[(completedReadHead + completedReadCount) % readRequestCount] = requestId;
+            completedReadCount++;
+        } else if (requestId < readRequestCount + writeRequestCount) {
+            if (length < lengths[requestId]) {
+                failedWriteCount++;
+            }
+            isWriteBusy[requestId - readRequestCount] = false;
+        }
+    }
+
+    @Override
+    public int getMaxReadPacketSize() {
+        return requestQueue.getMaxReadPacketSize();
+    }
+
+    @Override
+    public int getMaxWritePacketSize() {
+        return requestQueue.getMaxWritePacketSize();
+    }
+
+    @Override
+    public String getName() {
+        return requestQueue.getName();
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            isFailed = true;
+            completed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        requestQueue.close();
+    }
+}
@@ -0,0 +1,31 @@
+package com.yougi.launchpadusb;
+
+/**
+ * Completion of a transfer of a {@link LaunchpadRequestQueue}, packed in a long : the request id in the high
+ * int and the number of transferred bytes in the low int, so reaping a completion never allocates.
+ */
+public final class RequestCompletion {
+
+    private RequestCompletion() {
+        // static access
+    }
+
+    /**
+     * @param length the number of bytes transferred, or a negative value if the transfer failed.
+     */
+    public static long of(int requestId, int length) {
+        if (requestId < 0) {
+            throw new IllegalArgumentException("the request id cannot be negative : " + requestId);
+        }
+
+        return ((long) requestId << 32) | (length & 0xFFFFFFFFL);
+    }
+
+    public static int requestIdOf(long completion) {
+        return (int) (completion >>> 32);
+    }
+
+    public static int lengthOf(long completion) {
+        return (int) completion;
+    }
+}
@@ -0,0 +1,16 @@
+package com.yougi.launchpadusb;
+
+/**
+ * Priority of a led write, see {@link LaunchPadConnection#writeCell(int, byte, SendLane)}.
+ */
+public enum SendLane {
+    /**
+     * Feedback of the user, like the echo of a press : sent first by the next flush, in a packet of its own,
+     * without waiting for the {@link SendPolicy}. It also preempts the background writes being sent.
+     */
+    INTERACTIVE,
+    /**
+     * Every other write, including the frames and the animations.
+     */
+    BACKGROUND
+}
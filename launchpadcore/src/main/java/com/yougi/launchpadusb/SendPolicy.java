@@ -0,0 +1,55 @@
+package com.yougi.launchpadusb;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Choose when the pending led changes of a {@link LaunchPadConnection} are sent to the device.
+ */
+public final class SendPolicy {
+
+    /**
+     * Send the changes as soon as they are written, the lowest latency.
+     */
+    public static final SendPolicy IMMEDIATE = new SendPolicy(Type.IMMEDIATE, 0);
+
+    final Type type;
+    final long intervalNanos;
+
+    private SendPolicy(Type type, long intervalNanos) {
+        this.type = type;
+        this.intervalNanos = intervalNanos;
+    }
+
+    /**
+     * Send the changes at most once per frame, frames are paced on a fixed clock. Use it for animations.
+     */
+    public static SendPolicy fixedFrameRate(int framesPerSecond) {
+        if (framesPerSecond <= 0) {
+            throw new IllegalArgumentException("the frame rate must be positive : " + framesPerSecond);
+        }
+
+        return new SendPolicy(Type.FIXED_FRAME_RATE, TimeUnit.SECONDS.toNanos(1) / framesPerSecond);
+    }
+
+    /**
+     * Wait for more changes after the first pending one, but never longer than maxLatencyMillis.
+     */
+    public static SendPolicy maxLatency(long maxLatencyMillis) {
+        if (maxLatencyMillis < 0) {
+            throw new IllegalArgumentException("the max latency cannot be negative : " + maxLatencyMillis);
+        }
+
+        return new SendPolicy(Type.MAX_LATENCY, TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis));
+    }
+
+    @Override
+    public String toString() {
+        return "SendPolicy{" + type + ", intervalNanos=" + intervalNanos + '}';
+    }
+
+    enum Type {
+        IMMEDIATE,
+        FIXED_FRAME_RATE,
+        MAX_LATENCY
+    }
+}
@@ -0,0 +1,181 @@
+package com.yougi.launchpadusb;
+
+/**
+ * Wake the send thread when led changes are pending, following the current {@link SendPolicy}.
+ * <p>
+ * Without pending changes the send thread waits without timeout, so an idle connection uses no cpu. A
+ * connection flushed by a {@link LaunchpadSendLoop} has no send thread : the scheduler wakes the loop instead,
+ * which polls {@link #nanosUntilFlush(long)} and {@link #tryBeginFlush(long)}.
+ * <p>
+ * A flush can also be armed at a given time with {@link #wakeAt(long)}, used by the animations for their next
+ * frame. The timer is disarmed by each flush.
+ */
+final class SendScheduler {
+
+    private SendPolicy policy;
+
+    private volatile boolean pending;
+    private long firstPendingNanos;
+    private long nextFrameNanos;
+
+    private volatile boolean hasTimer;
+    private volatile long timerNanos;
+
+    private volatile LaunchpadSendLoop sendLoop;
+
+    SendScheduler(SendPolicy policy) {
+        this.policy = policy;
+        this.nextFrameNanos = System.nanoTime();
+    }
+
+    synchronized SendPolicy getPolicy() {
+        return policy;
+    }
+
+    void setPolicy(SendPolicy policy) {
+        synchronized (this) {
+            this.policy = policy;
+            notifyAll();
+        }
+        wakeUpSendLoop();
+    }
+
+    void setSendLoop(LaunchpadSendLoop sendLoop) {
+        this.sendLoop = sendLoop;
+    }
+
+    /**
+     * Called by the producers after a change, only the first change of a flush takes the lock.
+     */
+    void signal() {
+        if (pending) {
+            return;
+        }
+
+        synchronized (this) {
+            if (pending) {
+                return;
+            }
+
+            pending = true;
+            firstPendingNanos = System.nanoTime();
+            notifyAll();
+        }
+        // outside of the lock of the scheduler, the loop takes it while holding its own lock
+        wakeUpSendLoop();
+    }
+
+    /**
+     * Arm a flush at the given time, even without pending changes. The earliest time wins, so only the first
+     * call before an armed timer takes the lock.
+     */
+    void wakeAt(long deadlineNanos) {
+        if (hasTimer && deadlineNanos - timerNanos >= 0) {
+            return;
+        }
+
+        synchronized (this) {
+            if (hasTimer && deadlineNanos - timerNanos >= 0) {
+                return;
+            }
+
+            // the time first, a caller seeing the timer armed reads its time
+            timerNanos = deadlineNanos;
+            hasTimer = true;
+            notifyAll();
+        }
+        wakeUpSendLoop();
+    }
+
+    private void wakeUpSendLoop() {
+        final LaunchpadSendLoop loop = sendLoop;
+        if (loop != null) {
+            loop.wakeUp();
+        }
+    }
+
+    /**
+     * @return the time before the pending changes can be flushed, negative or 0 if they can now, or
+     * {@link Long#MAX_VALUE} if nothing is pending.
+     */
+    synchronized long nanosUntilFlush(long now) {
+        if (!pending && !hasTimer) {
+            return Long.MAX_VALUE;
+        }
+
+        return flushDeadline() - now;
+    }
+
+    /**
+     * Start a flush if changes are pending and the policy allows to flush them, without waiting.
+     *
+     * @return true if the caller must flush.
+     */
+    synchronized boolean tryBeginFlush(long now) {
+        if ((!pending && !hasTimer) || flushDeadline() - now > 0) {
+            return false;
+        }
+
+        beginFlush();
+        return true;
+    }
+
+    /**
+     * Block until changes are pending and the policy allows to flush them.
+     */
+    synchronized void awaitFlush() throws InterruptedException {
+        while (true) {
+            if (!pending && !hasTimer) {
+                wait();
+                continue;
+            }
+
+            final long deadline = flushDeadline();
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+
+            wait(remaining / 1000000, (int) (remaining % 1000000));
+        }
+
+        beginFlush();
+    }
+
+    private void beginFlush() {
+        pending = false;
+        hasTimer = false;
+
+        if (policy.type == SendPolicy.Type.FIXED_FRAME_RATE) {
+            final long now = System.nanoTime();
+            nextFrameNanos += policy.intervalNanos;
+            if (nextFrameNanos - now < 0) {
+                nextFrameNanos = now + policy.intervalNanos;
+            }
+        }
+    }
+
+    private long flushDeadline() {
+        if (!pending) {
+            return timerNanos;
+        }
+
+        final long deadline = pendingDeadline();
+        if (hasTimer && timerNanos - deadline < 0) {
+            return timerNanos;
+        }
+        return deadline;
+    }
+
+    private long pendingDeadline() {
+        switch (policy.type) {
+            case FIXED_FRAME_RATE:
+                return nextFrameNanos;
+            case MAX_LATENCY:
+                return firstPendingNanos + policy.intervalNanos;
+            case IMMEDIATE:
+            default:
+                return firstPendingNanos;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.yougi.launchpadusb;
+
+/**
+ * Direction of a swipe on the grid, the first row of the grid is at the top.
+ */
+public enum SwipeDirection {
+    LEFT,
+    RIGHT,
+    UP,
+    DOWN
+}
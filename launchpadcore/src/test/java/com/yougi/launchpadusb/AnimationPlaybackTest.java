@@ -0,0 +1,69 @@
+package com.yougi.launchpadusb;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AnimationPlaybackTest {
+
+    private static final long FRAME_NANOS = 100000000L;
+
+    private final byte red = PadColor.of(PadColor.Red.POWER3, PadColor.Green.DISABLE);
+    private final byte green = PadColor.of(PadColor.Red.DISABLE, PadColor.Green.POWER3);
+    private final byte amber = PadColor.of(PadColor.Red.POWER3, PadColor.Green.POWER3);
+
+    private LedFrameBuffer ledFrameBuffer;
+    private AnimationPlayback playback;
+
+    @Before
+    public void setUp() {
+        // the first cell changes on each frame, the second one keeps its color
+        final byte[] first = new byte[PadIndex.COUNT];
+        first[0] = red;
+        first[1] = red;
+        final byte[] second = first.clone();
+        second[0] = green;
+
+        final LaunchpadAnimation animation = new LaunchpadAnimation.Builder(10)
+                .setRegion(0, 1)
+                .setLooping(true)
+                .addKeyframe(first, 1)
+                .addKeyframe(second, 1)
+                .build();
+        ledFrameBuffer = new LedFrameBuffer();
+        playback = new AnimationPlayback(animation, new AnimationPlayer(new SendScheduler(SendPolicy.IMMEDIATE)), 0);
+    }
+
+    @Test
+    public void nextFrameOverwritesTheWritesOfTheApplication() {
+        playback.draw(0, ledFrameBuffer);
+        ledFrameBuffer.write(1, amber);
+
+        playback.draw(FRAME_NANOS, ledFrameBuffer);
+
+        assertEquals(green, ledFrameBuffer.getRequestedColor(0));
+        assertEquals(red, ledFrameBuffer.getRequestedColor(1));
+        assertEquals(0, playback.getSkippedFrameCount());
+    }
+
+    @Test
+    public void writesOfTheApplicationLastUntilTheNextFrame() {
+        playback.draw(0, ledFrameBuffer);
+        ledFrameBuffer.write(1, amber);
+
+        playback.draw(FRAME_NANOS / 2, ledFrameBuffer);
+
+        assertEquals(amber, ledFrameBuffer.getRequestedColor(1));
+    }
+
+    @Test
+    public void lateFrameIsCountedAsSkipped() {
+        playback.draw(0, ledFrameBuffer);
+        playback.draw(3 * FRAME_NANOS, ledFrameBuffer);
+
+        assertEquals(green, ledFrameBuffer.getRequestedColor(0));
+        assertEquals(2, playback.getSkippedFrameCount());
+        assertEquals(2, playback.getDrawnFrameCount());
+    }
+}
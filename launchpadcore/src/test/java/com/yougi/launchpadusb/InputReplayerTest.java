@@ -0,0 +1,185 @@
+package com.yougi.launchpadusb;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InputReplayerTest {
+
+    private static final int LOG_CAPACITY = 4096;
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private File logFile;
+
+    @Before
+    public void setUp() throws IOException {
+        logFile = File.createTempFile("input", ".log");
+    }
+
+    @After
+    public void tearDown() {
+        logFile.delete();
+    }
+
+    @Test
+    public void replayDeliversTheRecordedEvents() throws IOException, InterruptedException {
+        final LoopbackTransport transport = new LoopbackTransport();
+        final LaunchPadConnection recordedConnection = new LaunchPadConnection(transport);
+        final List<String> recordedEvents = Collections.synchronizedList(new ArrayList<String>());
+        final InputRecorder recorder = InputRecorder.open(logFile, LOG_CAPACITY);
+        try {
+            recordedConnection.setInputRecorder(recorder);
+            recordedConnection.registerOnReceiveLaunchPadEvents(new EventLogger(recordedEvents), DIRECT_EXECUTOR);
+            recordedConnection.enableListenerDataProcess();
+
+            inject(transport, note(0, true), note(PadIndex.of(ControlRightPad.ARM), true));
+            inject(transport, note(0, false), note(PadIndex.of(ControlTopPad.MIXER), true));
+            inject(transport, note(PadIndex.of(ControlRightPad.ARM), false));
+            assertTrue(awaitSize(recordedEvents, 5));
+        } finally {
+            recordedConnection.close();
+            recorder.close();
+        }
+
+        final InputReplayer replayer = InputReplayer.open(logFile);
+        assertEquals(3, replayer.getPacketCount());
+        assertEquals(5, replayer.getEventCount());
+
+        final LaunchPadConnection replayedConnection = new LaunchPadConnection(new LoopbackTransport());
+        final List<String> replayedEvents = Collections.synchronizedList(new ArrayList<String>());
+        try {
+            replayedConnection.registerOnReceiveLaunchPadEvents(new EventLogger(replayedEvents), DIRECT_EXECUTOR);
+            assertEquals(3, replayer.replay(replayedConnection, InputReplayer.AS_FAST_AS_POSSIBLE));
+        } finally {
+            replayedConnection.close();
+        }
+
+        assertEquals("[pad 0 true, ARM true, pad 0 false, MIXER true, ARM false]", recordedEvents.toString());
+        assertEquals(recordedEvents, replayedEvents);
+    }
+
+    @Test
+    public void fastReplayKeepsTheRecordedGestures() throws IOException, InterruptedException {
+        final InputRecorder recorder = InputRecorder.open(logFile, LOG_CAPACITY);
+        final long start = System.nanoTime();
+        // a long press on the pad 5, then a double tap on the pad 9
+        record(recorder, start, 0, note(5, true));
+        record(recorder, start, 600, note(5, false));
+        record(recorder, start, 1000, note(9, true));
+        record(recorder, start, 1050, note(9, false));
+        record(recorder, start, 1200, note(9, true));
+        record(recorder, start, 1250, note(9, false));
+        recorder.close();
+
+        final LaunchPadConnection connection = new LaunchPadConnection(new LoopbackTransport());
+        final List<String> gestures = Collections.synchronizedList(new ArrayList<String>());
+        try {
+            connection.setOnPadGestureListener(new GestureLogger(gestures), DIRECT_EXECUTOR);
+            InputReplayer.open(logFile).replay(connection, InputReplayer.AS_FAST_AS_POSSIBLE);
+        } finally {
+            connection.close();
+        }
+
+        assertEquals("[long 5, double 9]", gestures.toString());
+    }
+
+    private static void record(InputRecorder recorder, long start, long millis, byte[] packet) {
+        recorder.recordPacket(start + TimeUnit.MILLISECONDS.toNanos(millis), packet, packet.length);
+    }
+
+    private static void inject(LoopbackTransport transport, byte[]... messages) {
+        final byte[] packet = new byte[messages.length * 3];
+        for (int i = 0; i < messages.length; i++) {
+            System.arraycopy(messages[i], 0, packet, i * 3, 3);
+        }
+        assertTrue(transport.inject(packet, packet.length));
+    }
+
+    /**
+     * @return the note or control change of the pad, as sent by the device.
+     */
+    private static byte[] note(int cell, boolean isDown) {
+        return new byte[]{LaunchpadProtocol.statusOf(cell), LaunchpadProtocol.keyOf(cell), (byte) (isDown ? 0x7F : 0)};
+    }
+
+    private static boolean awaitSize(List<String> events, int size) throws InterruptedException {
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (events.size() < size) {
+            if (System.nanoTime() - end > 0) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    private static final class EventLogger implements LaunchPadConnection.OnReceiveLaunchPadListener {
+
+        private final List<String> events;
+
+        private EventLogger(List<String> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void OnReceiveTopControlEvent(ControlTopPad controlTopPad, boolean isDown) {
+            events.add(controlTopPad + " " + isDown);
+        }
+
+        @Override
+        public void OnReceiveRightControlEvent(ControlRightPad controlRightPad, boolean isDown) {
+            events.add(controlRightPad + " " + isDown);
+        }
+
+        @Override
+        public void OnReceiveMainPadEvent(int padId, boolean isDown) {
+            events.add("pad " + padId + " " + isDown);
+        }
+    }
+
+    private static final class GestureLogger implements LaunchPadConnection.OnPadGestureListener {
+
+        private final List<String> gestures;
+
+        private GestureLogger(List<String> gestures) {
+            this.gestures = gestures;
+        }
+
+        @Override
+        public void onLongPress(int padIndex) {
+            gestures.add("long " + padIndex);
+        }
+
+        @Override
+        public void onDoubleTap(int padIndex) {
+            gestures.add("double " + padIndex);
+        }
+
+        @Override
+        public void onDrag(int fromPadIndex, int toPadIndex) {
+            gestures.add("drag " + fromPadIndex + " " + toPadIndex);
+        }
+
+        @Override
+        public void onSwipe(SwipeDirection direction, int line) {
+            gestures.add("swipe " + direction + " " + line);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.yougi.launchpadusb;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LaunchPadConnectionTest {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final CountDownLatch writeStarted = new CountDownLatch(1);
+    private final CountDownLatch writeReleased = new CountDownLatch(1);
+
+    private LaunchPadConnection launchPadConnection;
+
+    @Before
+    public void setUp() {
+        // attached to a loop, the connection accepts the writes as soon as enabled
+        launchPadConnection = new LaunchPadConnection(new HeldTransport(), new LaunchpadSendLoop());
+        launchPadConnection.enableSendDataProcess();
+    }
+
+    @After
+    public void tearDown() {
+        writeReleased.countDown();
+        launchPadConnection.close();
+    }
+
+    @Test
+    public void metricsReportAFullInteractiveLane() throws InterruptedException {
+        final byte red = PadColor.of(PadColor.Red.POWER3, PadColor.Green.DISABLE);
+        // the send thread is held in its first transfer, the next writes stay queued
+        launchPadConnection.writeCell(PadIndex.COUNT - 1, red, SendLane.INTERACTIVE);
+        assertTrue(writeStarted.await(1, TimeUnit.SECONDS));
+
+        final int pendingCount = launchPadConnection.getOutputMetrics().getInteractiveQueueDepth();
+        final int freeCount = 64 - pendingCount;
+        for (int cell = 0; cell <= freeCount; cell++) {
+            launchPadConnection.writeCell(cell, red, SendLane.INTERACTIVE);
+        }
+        launchPadConnection.writeCell(0, red, SendLane.BACKGROUND);
+
+        final Map<String, Number> metrics = launchPadConnection.getOutputMetrics().toMap();
+        assertEquals(64, metrics.get("interactiveQueueDepth").intValue());
+        assertEquals(64, metrics.get("interactivePeakQueueDepth").intValue());
+        assertEquals(1, metrics.get("interactiveCoalescedCommandCount").longValue());
+        assertEquals(65, metrics.get("queueDepth").intValue());
+        assertEquals(1, metrics.get("coalescedCommandCount").longValue());
+        assertEquals(1, launchPadConnection.getCoalescedCommandCount());
+    }
+
+    @Test
+    public void detachReleasesTheHeldPads() throws InterruptedException {
+        final LoopbackTransport transport = new LoopbackTransport();
+        final LaunchPadConnection connection = new LaunchPadConnection(transport);
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        try {
+            connection.enableListenerDataProcess();
+            connection.registerOnReceiveLaunchPadEvents(new LaunchPadConnection.OnReceiveLaunchPadListener() {
+                @Override
+                public void OnReceiveTopControlEvent(ControlTopPad controlTopPad, boolean isDown) {
+                    events.add(controlTopPad + " " + isDown);
+                }
+
+                @Override
+                public void OnReceiveRightControlEvent(ControlRightPad controlRightPad, boolean isDown) {
+                    events.add(controlRightPad + " " + isDown);
+                }
+
+                @Override
+                public void OnReceiveMainPadEvent(int padId, boolean isDown) {
+                    events.add(padId + " " + isDown);
+                }
+            }, DIRECT_EXECUTOR);
+
+            // the last pad of the grid and the first right control, one in each long of the bitmap
+            final int gridCell = PadIndex.GRID_COUNT - 1;
+            final int controlCell = PadIndex.of(ControlRightPad.VOL);
+            final byte[] packet = {LaunchpadProtocol.statusOf(gridCell), LaunchpadProtocol.keyOf(gridCell), 0x7F,
+                    LaunchpadProtocol.statusOf(controlCell), LaunchpadProtocol.keyOf(controlCell), 0x7F};
+            transport.inject(packet, packet.length);
+            assertTrue(awaitPressedCount(connection, 2));
+
+            // an unplugged device fails its reads
+            connection.onDeviceDetached();
+            transport.close();
+            assertTrue(awaitPressedCount(connection, 0));
+            assertEquals("[63 true, VOL true, 63 false, VOL false]", events.toString());
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static boolean awaitPressedCount(LaunchPadConnection connection, int count) throws InterruptedException {
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (connection.pressedCount() != count) {
+            if (System.nanoTime() - end > 0) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    /**
+     * Hold the first transfer until the end of the test.
+     */
+    private class HeldTransport implements LaunchpadTransport {
+
+        @Override
+        public int readPacket(byte[] buffer) {
+            return 0;
+        }
+
+        @Override
+        public int writePacket(byte[] buffer, int length) {
+            writeStarted.countDown();
+            try {
+                writeReleased.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 0;
+            }
+            return length;
+        }
+
+        @Override
+        public int getMaxReadPacketSize() {
+            return LoopbackTransport.DEFAULT_PACKET_SIZE;
+        }
+
+        @Override
+        public int getMaxWritePacketSize() {
+            return LoopbackTransport.DEFAULT_PACKET_SIZE;
+        }
+
+        @Override
+        public String getName() {
+            return "held";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.yougi.launchpadusb;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class LaunchpadInputParserTest {
+
+    private static final int NOTE_ON = 0x90;
+    private static final int CONTROL_CHANGE = 0xB0;
+    private static final int DOWN = 0x7F;
+    private static final int UP = 0x00;
+
+    private final List<String> events = new ArrayList<>();
+    private final LaunchpadInputParser.EventSink eventSink = new LaunchpadInputParser.EventSink() {
+        @Override
+        public void onPadEvent(int cell, boolean isDown) {
+            events.add(cell + (isDown ? " down" : " up"));
+        }
+
+        @Override
+        public void onTextScrolled() {
+            events.add("scrolled");
+        }
+    };
+
+    private LaunchpadInputParser parser;
+
+    @Before
+    public void setUp() {
+        parser = new LaunchpadInputParser();
+    }
+
+    @Test
+    public void noteSplitAcrossTwoPackets() {
+        final int cell = PadIndex.of(9);
+        parse(LaunchpadProtocol.statusOf(cell), LaunchpadProtocol.keyOf(cell));
+        assertEquals("[]", events.toString());
+
+        parse(DOWN);
+        assertEquals("[9 down]", events.toString());
+    }
+
+    @Test
+    public void controlChangeSplitAcrossTwoPackets() {
+        final int cell = PadIndex.of(ControlTopPad.SESSION);
+        parse(CONTROL_CHANGE);
+        parse(LaunchpadProtocol.keyOf(cell), DOWN);
+        parse(CONTROL_CHANGE, LaunchpadProtocol.keyOf(cell));
+        parse(UP);
+
+        assertEquals("[" + cell + " down, " + cell + " up]", events.toString());
+    }
+
+    @Test
+    public void runningStatusCarriedAcrossPackets() {
+        parse(NOTE_ON, LaunchpadProtocol.keyOf(0), DOWN);
+        parse(LaunchpadProtocol.keyOf(63), DOWN);
+        parse(LaunchpadProtocol.keyOf(0));
+        parse(UP, LaunchpadProtocol.keyOf(63), UP);
+
+        assertEquals("[0 down, 63 down, 0 up, 63 up]", events.toString());
+    }
+
+    @Test
+    public void strayDataBytesAreIgnored() {
+        // data bytes before any status, then inside a system exclusive message
+        parse(LaunchpadProtocol.keyOf(1), DOWN);
+        parse(0xF0, 0x00, 0x20, 0x29);
+        parse(LaunchpadProtocol.keyOf(2), DOWN, 0xF7);
+        // a real time byte inside a message doesn't break it
+        parse(NOTE_ON, LaunchpadProtocol.keyOf(3), 0xF8, DOWN);
+
+        assertEquals("[3 down]", events.toString());
+    }
+
+    @Test
+    public void newStatusDropsThePendingKey() {
+        parse(NOTE_ON, LaunchpadProtocol.keyOf(4));
+        parse(NOTE_ON, LaunchpadProtocol.keyOf(5), DOWN);
+
+        assertEquals("[5 down]", events.toString());
+    }
+
+    @Test
+    public void topControlsAreDecoded() {
+        for (ControlTopPad controlTopPad : ControlTopPad.values()) {
+            final int cell = PadIndex.of(controlTopPad);
+            assertEquals(CONTROL_CHANGE, LaunchpadProtocol.statusOf(cell) & 0xFF);
+            parse(LaunchpadProtocol.statusOf(cell), LaunchpadProtocol.keyOf(cell), DOWN);
+            assertEquals(controlTopPad.name(), cell + " down", events.remove(0));
+        }
+        assertEquals("[]", events.toString());
+    }
+
+    @Test
+    public void rightControlsAreDecoded() {
+        for (ControlRightPad controlRightPad : ControlRightPad.values()) {
+            final int cell = PadIndex.of(controlRightPad);
+            assertEquals(NOTE_ON, LaunchpadProtocol.statusOf(cell) & 0xFF);
+            parse(LaunchpadProtocol.statusOf(cell), LaunchpadProtocol.keyOf(cell), DOWN);
+            parse(LaunchpadProtocol.keyOf(cell), UP);
+            assertEquals(controlRightPad.name(), cell + " down", events.remove(0));
+            assertEquals(controlRightPad.name(), cell + " up", events.remove(0));
+        }
+        assertEquals("[]", events.toString());
+    }
+
+    @Test
+    public void endOfScrolledText() {
+        parse(CONTROL_CHANGE, LaunchpadProtocol.KEY_BUFFER_CONTROL, LaunchpadProtocol.BUFFER_CONTROL_TEXT_SCROLLED);
+
+        assertEquals("[scrolled]", events.toString());
+    }
+
+    private void parse(int... values) {
+        final byte[] packet = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            packet[i] = (byte) values[i];
+        }
+        parser.parse(packet, packet.length, eventSink);
+    }
+}
@@ -0,0 +1,103 @@
+package com.yougi.launchpadusb;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LedCommandRingTest {
+
+    @Test
+    public void overlaysOfAFullRingAreCoalescedPerCell() {
+        final LedCommandRing ring = new LedCommandRing(2, OverflowPolicy.COALESCE);
+
+        assertTrue(ring.offerOverlay(1, (byte) 10));
+        assertTrue(ring.offerOverlay(2, (byte) 20));
+        assertTrue(ring.offerOverlay(1, (byte) 11));
+        assertTrue(ring.offerOverlay(1, (byte) 12));
+        assertTrue(ring.offerOverlay(3, (byte) 30));
+
+        assertEquals("[overlay 1=10, overlay 2=20, overlay 1=12, overlay 3=30]", drain(ring).toString());
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void newerQueuedOverlayDropsTheOverflowOverlay() {
+        final LedCommandRing ring = new LedCommandRing(2, OverflowPolicy.COALESCE);
+
+        ring.offerOverlay(1, (byte) 10);
+        ring.offerOverlay(2, (byte) 20);
+        ring.offerOverlay(1, (byte) 11);
+
+        final List<String> commands = new ArrayList<>();
+        ring.drain(new RecordingHandler(commands) {
+            @Override
+            public void onOverlay(int cell, byte color) {
+                super.onOverlay(cell, color);
+                if (cell == 1 && color == 10) {
+                    // queued while the ring is drained, after the overflow overlay
+                    ring.offerOverlay(1, (byte) 12);
+                }
+            }
+        });
+
+        assertEquals("[overlay 1=10, overlay 2=20, overlay 1=12]", commands.toString());
+    }
+
+    @Test
+    public void clearOfAllCellsOfAFullRingClearsEachCell() {
+        final LedCommandRing ring = new LedCommandRing(2, OverflowPolicy.COALESCE);
+
+        ring.offerOverlay(1, (byte) 10);
+        ring.offerOverlay(2, (byte) 20);
+        assertTrue(ring.offerOverlay(LedCommandRing.ALL_CELLS, LedFrameBuffer.NO_OVERLAY));
+
+        final List<String> commands = drain(ring);
+        assertEquals(2 + PadIndex.COUNT, commands.size());
+        assertEquals("overlay 0=-1", commands.get(2));
+        assertEquals("overlay 79=-1", commands.get(commands.size() - 1));
+    }
+
+    @Test
+    public void overlaysOfAFullBlockingRingAreRefused() {
+        final LedCommandRing ring = new LedCommandRing(2, OverflowPolicy.BLOCK);
+
+        assertTrue(ring.offerOverlay(1, (byte) 10));
+        assertTrue(ring.offerOverlay(2, (byte) 20));
+        assertEquals(false, ring.offerOverlay(3, (byte) 30));
+    }
+
+    private static List<String> drain(LedCommandRing ring) {
+        final List<String> commands = new ArrayList<>();
+        ring.drain(new RecordingHandler(commands));
+        return commands;
+    }
+
+    private static class RecordingHandler implements LedCommandRing.CommandHandler {
+
+        private final List<String> commands;
+
+        RecordingHandler(List<String> commands) {
+            this.commands = commands;
+        }
+
+        @Override
+        public void onWrite(int cell, byte color) {
+            commands.add("write " + cell + "=" + color);
+        }
+
+        @Override
+        public boolean onFrameCommand(int type) {
+            commands.add("frame " + type);
+            return true;
+        }
+
+        @Override
+        public void onOverlay(int cell, byte color) {
+            commands.add("overlay " + cell + "=" + color);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.yougi.launchpadusb;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LedFrameRendererTest {
+
+    private static final int CELL = 5;
+
+    private final ByteArrayOutputStream sentBytes = new ByteArrayOutputStream();
+    private final List<byte[]> sentPackets = new ArrayList<>();
+
+    private LedCommandRing backgroundRing;
+    private LedCommandRing interactiveRing;
+    private LedFrameRenderer renderer;
+
+    @Before
+    public void setUp() {
+        backgroundRing = new LedCommandRing(LedCommandRing.DEFAULT_CAPACITY, OverflowPolicy.COALESCE);
+        interactiveRing = new LedCommandRing(64, OverflowPolicy.COALESCE);
+        final MidiPacketWriter writer = new MidiPacketWriter(new MidiPacketWriter.Output() {
+            @Override
+            public int transfer(byte[] buffer, int length) {
+                sentBytes.write(buffer, 0, length);
+                final byte[] packet = new byte[length];
+                System.arraycopy(buffer, 0, packet, 0, length);
+                sentPackets.add(packet);
+                return length;
+            }
+        }, 64);
+        renderer = new LedFrameRenderer(backgroundRing, interactiveRing, writer,
+                new AnimationPlayer(new SendScheduler(SendPolicy.IMMEDIATE)));
+    }
+
+    @Test
+    public void olderBackgroundWriteDoesNotOverwriteInteractiveWrite() throws InterruptedException {
+        final byte red = PadColor.of(PadColor.Red.POWER3, PadColor.Green.DISABLE);
+        final byte green = PadColor.of(PadColor.Red.DISABLE, PadColor.Green.POWER3);
+
+        backgroundRing.offerWrite(CELL, red);
+        Thread.sleep(1);
+        interactiveRing.offerWrite(CELL, green);
+        renderer.flush();
+
+        assertEquals(green, lastSentColor());
+        assertEquals(1, renderer.getStaleWriteCount());
+    }
+
+    @Test
+    public void newerBackgroundWriteOverwritesInteractiveWrite() throws InterruptedException {
+        final byte red = PadColor.of(PadColor.Red.POWER3, PadColor.Green.DISABLE);
+        final byte green = PadColor.of(PadColor.Red.DISABLE, PadColor.Green.POWER3);
+
+        interactiveRing.offerWrite(CELL, green);
+        Thread.sleep(1);
+        backgroundRing.offerWrite(CELL, red);
+        renderer.flush();
+
+        assertEquals(red, lastSentColor());
+        assertEquals(0, renderer.getStaleWriteCount());
+    }
+
+    @Test
+    public void smallChangeIsSentAsNotesWithRunningStatus() {
+        backgroundRing.offerWrite(5, PadColor.of(PadColor.Red.POWER3, PadColor.Green.DISABLE));
+        backgroundRing.offerWrite(9, PadColor.of(PadColor.Red.DISABLE, PadColor.Green.POWER3));
+        renderer.flush();
+
+        // the pads 5 and 9 are the keys 0x05 and 0x11, the velocities write both buffers
+        assertArrayEquals(bytes(0x90, 0x05, 0x0F, 0x11, 0x3C), sentBytes.toByteArray());
+    }
+
+    @Test
+    public void fortyTwoChangesAreSentAsNotes() {
+        final byte amber = PadColor.of(PadColor.Red.POWER3, PadColor.Green.POWER3);
+        for (int cell = 0; cell < 42; cell++) {
+            backgroundRing.offerWrite(cell, amber);
+        }
+        renderer.flush();
+
+        // a status then two bytes per led, cheaper than the 84 bytes of a rapid frame
+        final byte[] sent = sentBytes.toByteArray();
+        assertEquals(42 * 2 + 2, sent.length);
+        for (byte value : sent) {
+            assertTrue((value & 0xFF) != 0x92);
+        }
+    }
+
+    @Test
+    public void fullFrameIsSentWithTheRapidUpdate() {
+        final byte[] velocities = new byte[PadIndex.COUNT];
+        for (int cell = 0; cell < 43; cell++) {
+            final byte color = cell % 2 == 0
+                    ? PadColor.of(PadColor.Red.POWER3, PadColor.Green.DISABLE)
+                    : PadColor.of(PadColor.Red.DISABLE, PadColor.Green.POWER1);
+            backgroundRing.offerWrite(cell, color);
+            velocities[cell] = (byte) (color | 0x0C);
+        }
+        for (int cell = 43; cell < PadIndex.COUNT; cell++) {
+            // never written, sent off
+            velocities[cell] = 0x0C;
+        }
+        renderer.flush();
+
+        // a note on the first led resets the cursor, then the 80 velocities in pairs with running status
+        final byte[] first = new byte[64];
+        first[0] = (byte) 0x90;
+        first[1] = 0x00;
+        first[2] = velocities[0];
+        first[3] = (byte) 0x92;
+        System.arraycopy(velocities, 0, first, 4, 60);
+        final byte[] second = new byte[21];
+        second[0] = (byte) 0x92;
+        System.arraycopy(velocities, 60, second, 1, 20);
+
+        assertEquals(2, sentPackets.size());
+        assertArrayEquals(first, sentPackets.get(0));
+        assertArrayEquals(second, sentPackets.get(1));
+    }
+
+    @Test
+    public void committedFramesFlipTheBuffers() {
+        final byte red = PadColor.of(PadColor.Red.POWER3, PadColor.Green.DISABLE);
+        backgroundRing.offerFrameCommand(LedCommandRing.TYPE_BEGIN_FRAME);
+        backgroundRing.offerWrite(5, red);
+        backgroundRing.offerFrameCommand(LedCommandRing.TYPE_COMMIT_FRAME);
+
+        assertEquals(1, renderer.flush());
+        // update the hidden buffer 1, write the led there only, then display the buffer 1 and copy it in the 0
+        assertArrayEquals(bytes(0xB0, 0x00, 0x24, 0x90, 0x05, 0x03, 0xB0, 0x00, 0x31), sentBytes.toByteArray());
+        assertEquals(1, renderer.getLastFlippedFrame());
+
+        sentBytes.reset();
+        backgroundRing.offerFrameCommand(LedCommandRing.TYPE_BEGIN_FRAME);
+        backgroundRing.offerWrite(5, (byte) 0);
+        backgroundRing.offerFrameCommand(LedCommandRing.TYPE_COMMIT_FRAME);
+
+        assertEquals(2, renderer.flush());
+        // the buffer 0 is already the updated one, the flip displays it and updates the buffer 1
+        assertArrayEquals(bytes(0x90, 0x05, 0x00, 0xB0, 0x00, 0x34), sentBytes.toByteArray());
+    }
+
+    @Test
+    public void writesOutsideOfAFrameGoInBothBuffers() {
+        backgroundRing.offerFrameCommand(LedCommandRing.TYPE_BEGIN_FRAME);
+        backgroundRing.offerWrite(5, PadColor.of(PadColor.Red.POWER3, PadColor.Green.DISABLE));
+        renderer.flush();
+        // nothing is sent before the commit
+        assertEquals(0, sentBytes.size());
+
+        backgroundRing.offerFrameCommand(LedCommandRing.TYPE_COMMIT_FRAME);
+        backgroundRing.offerWrite(9, PadColor.of(PadColor.Red.POWER3, PadColor.Green.DISABLE));
+        assertEquals(1, renderer.flush());
+        assertEquals(0, renderer.flush());
+        assertArrayEquals(bytes(0xB0, 0x00, 0x24, 0x90, 0x05, 0x03, 0xB0, 0x00, 0x31, 0x90, 0x11, 0x0F),
+                sentBytes.toByteArray());
+    }
+
+    private static byte[] bytes(int... values) {
+        final byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the level bits of the last note sent, the messages have a status byte each.
+     */
+    private byte lastSentColor() {
+        final byte[] bytes = sentBytes.toByteArray();
+        assertEquals(0, bytes.length % 3);
+        assertEquals(LaunchpadProtocol.statusOf(CELL), bytes[bytes.length - 3]);
+        assertEquals(LaunchpadProtocol.keyOf(CELL), bytes[bytes.length - 2]);
+        return (byte) (bytes[bytes.length - 1] & PadColor.LEVEL_MASK);
+    }
+}
@@ -0,0 +1,170 @@
+package com.yougi.launchpadusb;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ListenerDispatcherTest {
+
+    private ListenerDispatcher dispatcher;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        dispatcher = new ListenerDispatcher();
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test(timeout = 5000)
+    public void throwingListenerReceivesTheNextPacket() throws InterruptedException {
+        final CountDownLatch firstPacket = new CountDownLatch(1);
+        final CountDownLatch secondPacket = new CountDownLatch(1);
+        dispatcher.register(new ListenerDispatcher.PadEventRegistration(new MainPadListener() {
+            @Override
+            public void OnReceiveMainPadEvent(int padId, boolean isDown) {
+                if (padId == 1) {
+                    firstPacket.countDown();
+                    throw new IllegalStateException("failure of the listener");
+                }
+                secondPacket.countDown();
+            }
+        }, executor));
+
+        dispatcher.dispatch(1, true, System.nanoTime());
+        dispatcher.schedule();
+        assertTrue(firstPacket.await(2, TimeUnit.SECONDS));
+
+        dispatcher.dispatch(2, true, System.nanoTime());
+        dispatcher.schedule();
+        assertTrue("the second packet must be delivered", secondPacket.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 5000)
+    public void throwingBatchListenerReceivesTheNextPacket() throws InterruptedException {
+        final CountDownLatch firstPacket = new CountDownLatch(1);
+        final CountDownLatch secondPacket = new CountDownLatch(1);
+        dispatcher.register(new ListenerDispatcher.BatchRegistration(
+                new LaunchPadConnection.OnReceiveLaunchPadBatchListener() {
+                    @Override
+                    public void onReceiveLaunchPadEvents(int[] padIndexes, boolean[] isDown, long[] timestampsNanos,
+                                                         int count) {
+                        if (padIndexes[0] == 1) {
+                            firstPacket.countDown();
+                            throw new IllegalStateException("failure of the listener");
+                        }
+                        if (count == 1 && padIndexes[0] == 2) {
+                            secondPacket.countDown();
+                        }
+                    }
+                }, executor));
+
+        dispatcher.dispatch(1, true, System.nanoTime());
+        dispatcher.schedule();
+        assertTrue(firstPacket.await(2, TimeUnit.SECONDS));
+
+        dispatcher.dispatch(2, true, System.nanoTime());
+        dispatcher.schedule();
+        assertTrue("the second packet must be delivered alone", secondPacket.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void batchOfAFullQueueHoldsASinglePacket() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final Executor heldExecutor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        };
+        final List<String> batches = new ArrayList<>();
+        final ListenerDispatcher.BatchRegistration registration = new ListenerDispatcher.BatchRegistration(
+                new LaunchPadConnection.OnReceiveLaunchPadBatchListener() {
+                    @Override
+                    public void onReceiveLaunchPadEvents(int[] padIndexes, boolean[] isDown, long[] timestampsNanos,
+                                                         int count) {
+                        int firstPadCount = 0;
+                        for (int i = 0; i < count; i++) {
+                            if (padIndexes[i] == 1) {
+                                firstPadCount++;
+                            }
+                        }
+                        batches.add(firstPadCount + "/" + count);
+                    }
+                }, heldExecutor);
+        dispatcher.register(registration);
+
+        // the listener doesn't run while the queue fills up
+        for (int i = 0; i < 200; i++) {
+            dispatcher.dispatch(1, true, System.nanoTime());
+        }
+        dispatcher.schedule();
+        for (int i = 0; i < 100; i++) {
+            dispatcher.dispatch(2, true, System.nanoTime());
+        }
+        dispatcher.schedule();
+
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+
+        final int secondPacketCount = ListenerDispatcher.DEFAULT_QUEUE_CAPACITY - 200 - 2;
+        assertEquals(2, batches.size());
+        assertEquals("200/200", batches.get(0));
+        assertEquals("0/" + secondPacketCount, batches.get(1));
+        assertEquals(100 - secondPacketCount, registration.getDroppedCount());
+    }
+
+    @Test
+    public void batchLatencyIncludesTheListener() {
+        final Executor directExecutor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        dispatcher.register(new ListenerDispatcher.BatchRegistration(
+                new LaunchPadConnection.OnReceiveLaunchPadBatchListener() {
+                    @Override
+                    public void onReceiveLaunchPadEvents(int[] padIndexes, boolean[] isDown, long[] timestampsNanos,
+                                                         int count) {
+                        final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20);
+                        while (System.nanoTime() < end) {
+                            Thread.yield();
+                        }
+                    }
+                }, directExecutor));
+
+        dispatcher.dispatch(1, true, System.nanoTime());
+        dispatcher.dispatch(2, true, System.nanoTime());
+        dispatcher.schedule();
+
+        assertEquals(2, dispatcher.getDeliveryLatency().getCount());
+        assertTrue(dispatcher.getDeliveryLatency().getP50Nanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    private abstract static class MainPadListener implements LaunchPadConnection.OnReceiveLaunchPadListener {
+
+        @Override
+        public void OnReceiveTopControlEvent(ControlTopPad controlTopPad, boolean isDown) {
+        }
+
+        @Override
+        public void OnReceiveRightControlEvent(ControlRightPad controlRightPad, boolean isDown) {
+        }
+    }
+}
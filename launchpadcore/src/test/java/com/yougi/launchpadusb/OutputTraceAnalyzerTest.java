@@ -0,0 +1,133 @@
+package com.yougi.launchpadusb;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OutputTraceAnalyzerTest {
+
+    private static final int TRACE_CAPACITY = 4096;
+
+    private static final int NOTE_ON = 0x90;
+    private static final int RAPID_UPDATE = 0x92;
+    private static final int FULL = 0x0F;
+    private static final int DIMMED = 0x0D;
+
+    private final int topCell = PadIndex.of(ControlTopPad.MIXER);
+
+    private File beforeFile;
+    private File afterFile;
+
+    @Before
+    public void setUp() throws IOException {
+        beforeFile = File.createTempFile("before", ".trace");
+        afterFile = File.createTempFile("after", ".trace");
+    }
+
+    @After
+    public void tearDown() {
+        beforeFile.delete();
+        afterFile.delete();
+    }
+
+    @Test
+    public void analysisOfAKnownSequence() throws IOException {
+        writeTrace(beforeFile, false);
+        final OutputTraceAnalyzer analyzer = OutputTraceAnalyzer.analyze(beforeFile);
+
+        final Map<String, Number> values = analyzer.toMap();
+        assertEquals(4L, values.get("transferCount"));
+        assertEquals(1L, values.get("failedTransferCount"));
+        assertEquals(29L, values.get("byteCount"));
+        assertEquals(9L, values.get("messageCount"));
+        assertEquals(10L, values.get("ledWriteCount"));
+        assertEquals(3L, values.get("redundantWriteCount"));
+        assertEquals(3L, values.get("frameCount"));
+        assertEquals(3.0, values.get("messagesPerFrame"));
+        assertEquals(5, values.get("maxMessagesPerFrame"));
+        assertEquals(19, values.get("peakBurstBytes"));
+
+        final long durationNanos = analyzer.getDurationNanos();
+        assertTrue(durationNanos >= TimeUnit.MILLISECONDS.toNanos(30)
+                && durationNanos < TimeUnit.SECONDS.toNanos(10));
+    }
+
+    @Test
+    public void diffGivesTheRatioOfEachValue() throws IOException {
+        writeTrace(beforeFile, false);
+        writeTrace(afterFile, true);
+        final OutputTraceAnalyzer before = OutputTraceAnalyzer.analyze(beforeFile);
+        final OutputTraceAnalyzer after = OutputTraceAnalyzer.analyze(afterFile);
+
+        final String[] lines = OutputTraceAnalyzer.diff(before, after).split("\r?\n");
+        assertEquals(before.toMap().size() + 1, lines.length);
+        assertEquals(row("", "before", "after", "ratio"), lines[0]);
+        assertEquals(row("messageCount", "9", "10", "x1.11"), lines[5]);
+        assertEquals(row("failedTransferCount", "1", "1", "x1.00"), lines[3]);
+        assertEquals(row("messagesPerFrame", "3.00", "2.50", "x0.83"), lines[9]);
+    }
+
+    /**
+     * Three frames : notes with a running status across two transfers, then rapid updates around a control
+     * change and a system exclusive message, then a failed transfer. The after trace has one more frame.
+     */
+    private void writeTrace(File file, boolean hasExtraFrame) throws IOException {
+        final OutputTraceWriter writer = OutputTraceWriter.open(file, TRACE_CAPACITY);
+        final long start = System.nanoTime();
+
+        transfer(writer, start, 0, 0, NOTE_ON, key(0), FULL, key(1), FULL);
+        // the running status continues in the next transfer, the led already shows this velocity
+        transfer(writer, start, 1, 0, key(0), FULL);
+        flush(writer, start, 2);
+
+        transfer(writer, start, 10, 0,
+                RAPID_UPDATE, FULL, 0x0C,
+                LaunchpadProtocol.statusOf(topCell), key(topCell), FULL,
+                // the control change moved the cursor of the rapid update back to the first led
+                RAPID_UPDATE, DIMMED, DIMMED,
+                0xF0, 0x00, 0x20, 0x29, 0x09, 0x7C, 0xF7,
+                NOTE_ON, key(0), DIMMED);
+        flush(writer, start, 11);
+
+        transfer(writer, start, 20, -1, NOTE_ON, key(2), FULL);
+        flush(writer, start, 21);
+
+        if (hasExtraFrame) {
+            transfer(writer, start, 30, 0, NOTE_ON, key(3), FULL);
+            flush(writer, start, 31);
+        } else {
+            flush(writer, start, 31);
+        }
+        writer.close();
+    }
+
+    private static void transfer(OutputTraceWriter writer, long start, long millis, int result, int... values) {
+        final byte[] packet = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            packet[i] = (byte) values[i];
+        }
+        writer.onTransfer(start + TimeUnit.MILLISECONDS.toNanos(millis), packet, packet.length,
+                result < 0 ? result : packet.length);
+    }
+
+    private static void flush(OutputTraceWriter writer, long start, long millis) {
+        writer.onFlush(start + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    private static int key(int cell) {
+        return LaunchpadProtocol.keyOf(cell);
+    }
+
+    private static String row(String name, String before, String after, String ratio) {
+        return String.format(Locale.US, "%-22s %14s %14s %8s", name, before, after, ratio);
+    }
+}
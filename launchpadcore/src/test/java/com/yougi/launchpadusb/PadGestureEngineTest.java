@@ -0,0 +1,123 @@
+package com.yougi.launchpadusb;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class PadGestureEngineTest {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final List<String> gestures = Collections.synchronizedList(new ArrayList<String>());
+    private final List<PadGestureEngine> engines = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        gestures.clear();
+    }
+
+    @After
+    public void tearDown() {
+        for (PadGestureEngine engine : engines) {
+            engine.stop();
+        }
+    }
+
+    @Test
+    public void longPressIsFiredOnceByTheSharedClock() throws InterruptedException {
+        final PadGestureEngine first = startEngine("first");
+        final PadGestureEngine second = startEngine("second");
+
+        first.onPadEvent(3, true, System.nanoTime());
+        second.onPadEvent(4, true, System.nanoTime());
+        sleepPastLongPress();
+        first.onPadEvent(3, false, System.nanoTime());
+        second.onPadEvent(4, false, System.nanoTime());
+
+        assertEquals(2, gestures.size());
+        assertEquals(true, gestures.contains("first long 3"));
+        assertEquals(true, gestures.contains("second long 4"));
+        assertEquals(1, countThreads("LaunchpadGestureClock"));
+    }
+
+    @Test
+    public void releaseBeforeTheDeadlineIsNotALongPress() throws InterruptedException {
+        final PadGestureEngine engine = startEngine("engine");
+
+        engine.onPadEvent(5, true, System.nanoTime());
+        engine.onPadEvent(5, false, System.nanoTime());
+        // pressed again later, its own deadline isn't reached yet
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(PadGestureEngine.LONG_PRESS_NANOS) / 2);
+        engine.onPadEvent(5, true, System.nanoTime());
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(PadGestureEngine.LONG_PRESS_NANOS) * 3 / 4);
+
+        assertEquals("[]", gestures.toString());
+    }
+
+    @Test
+    public void doubleTap() {
+        final PadGestureEngine engine = startEngine("engine");
+
+        final long now = System.nanoTime();
+        engine.onPadEvent(6, true, now);
+        engine.onPadEvent(6, false, now + 1000);
+        engine.onPadEvent(6, true, now + 2000);
+        engine.onPadEvent(6, false, now + 3000);
+
+        assertEquals("[engine double 6]", gestures.toString());
+    }
+
+    private PadGestureEngine startEngine(final String name) {
+        final PadGestureEngine engine = new PadGestureEngine(new LaunchPadConnection.OnPadGestureListener() {
+            @Override
+            public void onLongPress(int padIndex) {
+                gestures.add(name + " long " + padIndex);
+            }
+
+            @Override
+            public void onDoubleTap(int padIndex) {
+                gestures.add(name + " double " + padIndex);
+            }
+
+            @Override
+            public void onDrag(int fromPadIndex, int toPadIndex) {
+                gestures.add(name + " drag " + fromPadIndex + " " + toPadIndex);
+            }
+
+            @Override
+            public void onSwipe(SwipeDirection direction, int line) {
+                gestures.add(name + " swipe " + direction + " " + line);
+            }
+        }, DIRECT_EXECUTOR);
+        engine.start();
+        engines.add(engine);
+        return engine;
+    }
+
+    private static void sleepPastLongPress() throws InterruptedException {
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(PadGestureEngine.LONG_PRESS_NANOS) + 200);
+    }
+
+    private static int countThreads(String name) {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (name.equals(thread.getName())) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
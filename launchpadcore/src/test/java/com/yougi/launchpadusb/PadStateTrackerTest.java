@@ -0,0 +1,147 @@
+package com.yougi.launchpadusb;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PadStateTrackerTest {
+
+    private static final int LAST_GRID_CELL = PadIndex.GRID_COUNT - 1;
+    private static final int FIRST_CONTROL_CELL = PadIndex.GRID_COUNT;
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final List<String> chords = new ArrayList<>();
+    private final LaunchPadConnection.OnChordListener chordListener = new LaunchPadConnection.OnChordListener() {
+        @Override
+        public void onChordPressed(int[] padIndexes) {
+            chords.add(Arrays.toString(padIndexes));
+        }
+    };
+
+    private PadStateTracker padStateTracker;
+
+    @Before
+    public void setUp() {
+        padStateTracker = new PadStateTracker();
+    }
+
+    @Test
+    public void pressAndReleaseAcrossBothLongs() {
+        padStateTracker.update(LAST_GRID_CELL, true);
+        padStateTracker.update(FIRST_CONTROL_CELL, true);
+
+        assertTrue(padStateTracker.isPressed(LAST_GRID_CELL));
+        assertTrue(padStateTracker.isPressed(FIRST_CONTROL_CELL));
+        assertFalse(padStateTracker.isPressed(0));
+        assertFalse(padStateTracker.isPressed(PadIndex.COUNT - 1));
+        assertEquals(2, padStateTracker.pressedCount());
+
+        final int[] cells = new int[PadIndex.COUNT];
+        assertEquals(2, padStateTracker.copyPressed(cells));
+        assertEquals(LAST_GRID_CELL, cells[0]);
+        assertEquals(FIRST_CONTROL_CELL, cells[1]);
+
+        padStateTracker.update(LAST_GRID_CELL, false);
+        assertFalse(padStateTracker.isPressed(LAST_GRID_CELL));
+        assertTrue(padStateTracker.isPressed(FIRST_CONTROL_CELL));
+        assertEquals(1, padStateTracker.pressedCount());
+
+        padStateTracker.update(FIRST_CONTROL_CELL, false);
+        assertEquals(0, padStateTracker.pressedCount());
+    }
+
+    @Test
+    public void copyReturnsTheCountBeyondTheArray() {
+        padStateTracker.update(1, true);
+        padStateTracker.update(2, true);
+        padStateTracker.update(PadIndex.COUNT - 1, true);
+
+        final int[] cells = new int[2];
+        assertEquals(3, padStateTracker.copyPressed(cells));
+        assertArrayEquals(new int[]{1, 2}, cells);
+    }
+
+    @Test
+    public void chordFiresOnceUntilOnePadIsReleased() {
+        padStateTracker.registerChord(new PadStateTracker.Chord(new int[]{LAST_GRID_CELL, FIRST_CONTROL_CELL},
+                chordListener, DIRECT_EXECUTOR));
+
+        padStateTracker.update(LAST_GRID_CELL, true);
+        assertEquals("[]", chords.toString());
+
+        padStateTracker.update(FIRST_CONTROL_CELL, true);
+        assertEquals(1, chords.size());
+        assertEquals("[" + LAST_GRID_CELL + ", " + FIRST_CONTROL_CELL + "]", chords.get(0));
+
+        // another pad keeps the chord held
+        padStateTracker.update(0, true);
+        padStateTracker.update(0, false);
+        assertEquals(1, chords.size());
+
+        padStateTracker.update(FIRST_CONTROL_CELL, false);
+        padStateTracker.update(FIRST_CONTROL_CELL, true);
+        assertEquals(2, chords.size());
+    }
+
+    @Test
+    public void unregisteredChordDoesNotFire() {
+        assertTrue(padStateTracker.registerChord(new PadStateTracker.Chord(new int[]{0, 1}, chordListener,
+                DIRECT_EXECUTOR)));
+        assertFalse(padStateTracker.registerChord(new PadStateTracker.Chord(new int[]{2}, chordListener,
+                DIRECT_EXECUTOR)));
+        assertTrue(padStateTracker.unregisterChord(chordListener));
+
+        padStateTracker.update(0, true);
+        padStateTracker.update(1, true);
+        assertEquals("[]", chords.toString());
+    }
+
+    @Test
+    public void readerNeverSeesHalfAnUpdateOfBothLongs() throws InterruptedException {
+        // the control pad is only held with the grid pad, a torn read shows it alone
+        final AtomicBoolean isRunning = new AtomicBoolean(true);
+        final Thread receiveThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (isRunning.get()) {
+                    padStateTracker.update(LAST_GRID_CELL, true);
+                    padStateTracker.update(FIRST_CONTROL_CELL, true);
+                    padStateTracker.update(FIRST_CONTROL_CELL, false);
+                    padStateTracker.update(LAST_GRID_CELL, false);
+                }
+            }
+        });
+        receiveThread.start();
+
+        final int[] cells = new int[PadIndex.COUNT];
+        final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+        try {
+            while (System.nanoTime() - end < 0) {
+                final int count = padStateTracker.copyPressed(cells);
+                if (count == 1) {
+                    assertEquals(LAST_GRID_CELL, cells[0]);
+                }
+            }
+        } finally {
+            isRunning.set(false);
+            receiveThread.join();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.yougi.launchpadusb;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PipelinedTransportTest {
+
+    private static final int READ_REQUEST_COUNT = 2;
+    private static final int WRITE_REQUEST_COUNT = 2;
+
+    private InMemoryRequestQueue requestQueue;
+    private PipelinedTransport transport;
+
+    @Before
+    public void setUp() {
+        requestQueue = new InMemoryRequestQueue();
+        transport = new PipelinedTransport(requestQueue, READ_REQUEST_COUNT, WRITE_REQUEST_COUNT);
+    }
+
+    @After
+    public void tearDown() {
+        transport.close();
+    }
+
+    @Test
+    public void packetsSentBeforeTheReadsAreKeptInTheBacklog() {
+        for (int i = 0; i < InMemoryRequestQueue.BACKLOG_CAPACITY; i++) {
+            assertTrue(requestQueue.inject(new byte[]{(byte) i}, 1));
+        }
+        assertFalse(requestQueue.inject(new byte[]{-1}, 1));
+        assertEquals(1, requestQueue.getDroppedPacketCount());
+
+        final byte[] buffer = new byte[transport.getMaxReadPacketSize()];
+        for (int i = 0; i < InMemoryRequestQueue.BACKLOG_CAPACITY; i++) {
+            assertEquals(1, transport.readPacket(buffer));
+            assertEquals((byte) i, buffer[0]);
+        }
+    }
+
+    @Test
+    public void heldWritesBlockTheWriterOnceEveryRequestIsBusy() throws InterruptedException {
+        requestQueue.setWritesHeld(true);
+        final byte[] packet = new byte[]{1, 2, 3};
+        for (int i = 0; i < WRITE_REQUEST_COUNT; i++) {
+            assertEquals(3, transport.writePacket(packet, 3));
+        }
+
+        final CountDownLatch written = new CountDownLatch(1);
+        final Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                transport.writePacket(packet, 3);
+                written.countDown();
+            }
+        });
+        writer.start();
+
+        assertFalse(written.await(100, TimeUnit.MILLISECONDS));
+        requestQueue.setWritesHeld(false);
+        assertTrue(written.await(1, TimeUnit.SECONDS));
+        assertEquals(WRITE_REQUEST_COUNT + 1, requestQueue.getWrittenPacketCount());
+    }
+
+    @Test
+    public void readerReapsTheWriteCompletions() throws InterruptedException {
+        final CountDownLatch isReading = new CountDownLatch(1);
+        final AtomicInteger readLength = new AtomicInteger();
+        final Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                isReading.countDown();
+                readLength.set(transport.readPacket(new byte[transport.getMaxReadPacketSize()]));
+            }
+        });
+        reader.start();
+        isReading.await();
+        Thread.sleep(50);
+
+        // the reader waits for the completions, the writer waits for its signal
+        final byte[] packet = new byte[]{1, 2, 3};
+        for (int i = 0; i < WRITE_REQUEST_COUNT * 4; i++) {
+            assertEquals(3, transport.writePacket(packet, 3));
+        }
+
+        requestQueue.inject(new byte[]{9}, 1);
+        reader.join(1000);
+        assertEquals(1, readLength.get());
+    }
+
+    @Test
+    public void writerReapsTheReadCompletions() throws InterruptedException {
+        final byte[] buffer = new byte[transport.getMaxReadPacketSize()];
+        requestQueue.inject(new byte[]{7}, 1);
+        assertEquals(1, transport.readPacket(buffer));
+
+        // every write request is busy, the writer reaps until a write completes
+        requestQueue.setWritesHeld(true);
+        final byte[] packet = new byte[]{1, 2, 3};
+        for (int i = 0; i < WRITE_REQUEST_COUNT; i++) {
+            transport.writePacket(packet, 3);
+        }
+        final Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                transport.writePacket(packet, 3);
+            }
+        });
+        writer.start();
+        Thread.sleep(50);
+
+        requestQueue.inject(new byte[]{8}, 1);
+        requestQueue.setWritesHeld(false);
+        writer.join(1000);
+        assertFalse(writer.isAlive());
+
+        // the read completion reaped by the writer is kept for the reader
+        assertEquals(1, transport.readPacket(buffer));
+        assertEquals(8, buffer[0]);
+    }
+
+    @Test
+    public void interruptedReadAndWriteReturnZero() throws InterruptedException {
+        final Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                transport.readPacket(new byte[transport.getMaxReadPacketSize()]);
+            }
+        });
+        reader.start();
+        Thread.sleep(50);
+
+        requestQueue.setWritesHeld(true);
+        final byte[] packet = new byte[]{1, 2, 3};
+        for (int i = 0; i < WRITE_REQUEST_COUNT; i++) {
+            transport.writePacket(packet, 3);
+        }
+
+        // the reader reaps, this thread waits for its signal
+        Thread.currentThread().interrupt();
+        final int writeLength = transport.writePacket(packet, 3);
+        assertTrue(Thread.interrupted());
+        assertEquals(0, writeLength);
+
+        final InMemoryRequestQueue otherQueue = new InMemoryRequestQueue();
+        final PipelinedTransport otherTransport = new PipelinedTransport(otherQueue, READ_REQUEST_COUNT,
+                WRITE_REQUEST_COUNT);
+        final Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                otherQueue.setWritesHeld(true);
+                for (int i = 0; i < WRITE_REQUEST_COUNT + 1; i++) {
+                    otherTransport.writePacket(packet, 3);
+                }
+            }
+        });
+        writer.start();
+        Thread.sleep(50);
+
+        Thread.currentThread().interrupt();
+        final int readLength = otherTransport.readPacket(new byte[otherTransport.getMaxReadPacketSize()]);
+        assertTrue(Thread.interrupted());
+        assertEquals(0, readLength);
+        otherTransport.close();
+        writer.join(1000);
+        reader.join(1000);
+    }
+
+    @Test
+    public void failedQueueOfTheFirstReadsFailsTheTransport() {
+        final AtomicInteger queuedReadCount = new AtomicInteger();
+        final PipelinedTransport failingTransport = new PipelinedTransport(new LaunchpadRequestQueue() {
+            @Override
+            public boolean queueRead(int requestId, byte[] buffer) {
+                return queuedReadCount.incrementAndGet() < READ_REQUEST_COUNT
+                        && requestQueue.queueRead(requestId, buffer);
+            }
+
+            @Override
+            public boolean queueWrite(int requestId, byte[] buffer, int length) {
+                return requestQueue.queueWrite(requestId, buffer, length);
+            }
+
+            @Override
+            public long awaitCompletion() {
+                return requestQueue.awaitCompletion();
+            }
+
+            @Override
+            public int getMaxReadPacketSize() {
+                return requestQueue.getMaxReadPacketSize();
+            }
+
+            @Override
+            public int getMaxWritePacketSize() {
+                return requestQueue.getMaxWritePacketSize();
+            }
+
+            @Override
+            public String getName() {
+                return requestQueue.getName();
+            }
+
+            @Override
+            public void close() {
+                requestQueue.close();
+            }
+        }, READ_REQUEST_COUNT, WRITE_REQUEST_COUNT);
+
+        final byte[] buffer = new byte[failingTransport.getMaxReadPacketSize()];
+        assertEquals(-1, failingTransport.readPacket(buffer));
+        assertEquals(-1, failingTransport.readPacket(buffer));
+        // the first read isn't queued a second time while in flight
+        assertEquals(READ_REQUEST_COUNT, queuedReadCount.get());
+    }
+}
@@ -0,0 +1,46 @@
+package com.yougi.launchpadusb;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+public class SendSchedulerTest {
+
+    @Test
+    public void laterWakeUpDoesNotTakeTheLock() throws InterruptedException {
+        final SendScheduler sendScheduler = new SendScheduler(SendPolicy.IMMEDIATE);
+        final long deadline = System.nanoTime();
+        sendScheduler.wakeAt(deadline);
+
+        final CountDownLatch woken = new CountDownLatch(1);
+        final Thread echoThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                sendScheduler.wakeAt(deadline + 1);
+                woken.countDown();
+            }
+        });
+
+        // the send thread holds the lock of the scheduler while it checks the deadlines
+        synchronized (sendScheduler) {
+            echoThread.start();
+            assertTrue(woken.await(1, TimeUnit.SECONDS));
+        }
+        echoThread.join();
+    }
+
+    @Test
+    public void earlierWakeUpArmsTheTimer() {
+        final SendScheduler sendScheduler = new SendScheduler(SendPolicy.IMMEDIATE);
+        final long now = System.nanoTime();
+        sendScheduler.wakeAt(now + TimeUnit.SECONDS.toNanos(10));
+        assertTrue(sendScheduler.nanosUntilFlush(now) > 0);
+
+        sendScheduler.wakeAt(now);
+        assertTrue(sendScheduler.tryBeginFlush(now));
+        assertTrue(sendScheduler.nanosUntilFlush(now) == Long.MAX_VALUE);
+    }
+}
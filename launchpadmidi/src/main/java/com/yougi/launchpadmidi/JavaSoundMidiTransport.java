@@ -0,0 +1,271 @@
+package com.yougi.launchpadmidi;
+
+import com.yougi.launchpadusb.LaunchpadTransport;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequencer;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Synthesizer;
+import javax.sound.midi.SysexMessage;
+import javax.sound.midi.Transmitter;
+
+/**
+ * Transport over the midi devices of the JVM (javax.sound.midi), for a Launchpad plugged in a desktop or a
+ * build server.
+ * <p>
+ * The written packets are a stream of midi bytes with running status : they are split back into messages for
+ * the receiver of the output device. The messages of the input device are queued as bytes in a fixed ring,
+ * read by the receive thread of the connection.
+ */
+public final class JavaSoundMidiTransport implements LaunchpadTransport {
+
+    public static final int PACKET_SIZE = 64;
+
+    private static final int INPUT_CAPACITY = 4096;
+    private static final int MAX_SYSEX_LENGTH = 1024;
+
+    private final MidiDevice inputDevice;
+    private final MidiDevice outputDevice;
+    private final Transmitter transmitter;
+    private final Receiver receiver;
+
+    private final ReentrantLock inputLock = new ReentrantLock();
+    private final Condition inputNotEmpty = inputLock.newCondition();
+    private final byte[] input = new byte[INPUT_CAPACITY];
+    private int inputHead;
+    private int inputCount;
+    private boolean isClosed;
+    private volatile long droppedInputByteCount;
+
+    // state of the output decoder, only used by the send thread
+    private int runningStatus;
+    private final byte[] data = new byte[2];
+    private int dataCount;
+    private final byte[] sysex = new byte[MAX_SYSEX_LENGTH];
+    private int sysexLength = -1;
+
+    /**
+     * Open the first input and output devices whose name or description contains the given text.
+     */
+    public static JavaSoundMidiTransport open(String deviceName) throws MidiUnavailableException {
+        if (deviceName == null) {
+            throw new IllegalArgumentException("the deviceName in argument Cannot be null");
+        }
+
+        MidiDevice inputDevice = null;
+        MidiDevice outputDevice = null;
+        for (MidiDevice.Info info : MidiSystem.getMidiDeviceInfo()) {
+            if (!info.getName().contains(deviceName) && !info.getDescription().contains(deviceName)) {
+                continue;
+            }
+
+            final MidiDevice device = MidiSystem.getMidiDevice(info);
+            if (device instanceof Sequencer || device instanceof Synthesizer) {
+                continue;
+            }
+
+            if (inputDevice == null && device.getMaxTransmitters() != 0) {
+                inputDevice = device;
+            } else if (outputDevice == null && device.getMaxReceivers() != 0) {
+                outputDevice = device;
+            }
+        }
+
+        if (inputDevice == null || outputDevice == null) {
+            throw new MidiUnavailableException("no midi input and output found for : " + deviceName);
+        }
+
+        return new JavaSoundMidiTransport(inputDevice, outputDevice);
+    }
+
+    public JavaSoundMidiTransport(MidiDevice inputDevice, MidiDevice outputDevice) throws MidiUnavailableException {
+        if (inputDevice == null) {
+            throw new IllegalArgumentException("the inputDevice in argument Cannot be null");
+        }
+
+        if (outputDevice == null) {
+            throw new IllegalArgumentException("the outputDevice in argument Cannot be null");
+        }
+
+        this.inputDevice = inputDevice;
+        this.outputDevice = outputDevice;
+
+        inputDevice.open();
+        if (outputDevice != inputDevice) {
+            outputDevice.open();
+        }
+
+        receiver = outputDevice.getReceiver();
+        transmitter = inputDevice.getTransmitter();
+        transmitter.setReceiver(new Receiver() {
+            @Override
+            public void send(MidiMessage message, long timeStamp) {
+                queueInput(message.getMessage(), message.getLength());
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+    }
+
+    /**
+     * @return the number of input bytes dropped because the receive thread didn't read them in time.
+     */
+    public long getDroppedInputByteCount() {
+        return droppedInputByteCount;
+    }
+
+    private void queueInput(byte[] bytes, int length) {
+        inputLock.lock();
+        try {
+            if (isClosed) {
+                return;
+            }
+
+            if (inputCount + length > INPUT_CAPACITY) {
+                // never queue a part of a message
+                droppedInputByteCount += length;
+                return;
+            }
+
+            for (int i = 0; i < length; i++) {
+                input[(inputHead + inputCount + i) % INPUT_CAPACITY] = bytes[i];
+            }
+            inputCount += length;
+            inputNotEmpty.signal();
+        } finally {
+            inputLock.unlock();
+        }
+    }
+
+    @Override
+    public int readPacket(byte[] buffer) {
+        inputLock.lock();
+        try {
+            while (inputCount == 0) {
+                if (isClosed) {
+                    return -1;
+                }
+                inputNotEmpty.await(1, TimeUnit.SECONDS);
+            }
+
+            final int length = Math.min(inputCount, buffer.length);
+            for (int i = 0; i < length; i++) {
+                buffer[i] = input[(inputHead + i) % INPUT_CAPACITY];
+            }
+            inputHead = (inputHead + length) % INPUT_CAPACITY;
+            inputCount -= length;
+            return length;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } finally {
+            inputLock.unlock();
+        }
+    }
+
+    @Override
+    public int writePacket(byte[] buffer, int length) {
+        try {
+            for (int i = 0; i < length; i++) {
+                writeByte(buffer[i] & 0xFF);
+            }
+            return length;
+        } catch (InvalidMidiDataException | IllegalStateException e) {
+            return -1;
+        }
+    }
+
+    private void writeByte(int value) throws InvalidMidiDataException {
+        if (value >= 0xF8) {
+            // realtime messages can be anywhere, even inside a sysex
+            receiver.send(new ShortMessage(value), -1);
+            return;
+        }
+
+        if (value == 0xF0) {
+            sysex[0] = (byte) value;
+            sysexLength = 1;
+            return;
+        }
+
+        if (sysexLength >= 0) {
+            if (sysexLength == MAX_SYSEX_LENGTH && value == 0xF7) {
+                // a too long sysex is truncated but still terminated
+                sysexLength--;
+            }
+            if (sysexLength < MAX_SYSEX_LENGTH) {
+                sysex[sysexLength++] = (byte) value;
+            }
+            if (value == 0xF7) {
+                receiver.send(new SysexMessage(sysex, sysexLength), -1);
+                sysexLength = -1;
+            }
+            return;
+        }
+
+        if (value >= 0x80) {
+            // system common messages aren't sent to a Launchpad, they only cancel the running status
+            runningStatus = value < 0xF0 ? value : 0;
+            dataCount = 0;
+            return;
+        }
+
+        if (runningStatus == 0) {
+            return;
+        }
+
+        data[dataCount++] = (byte) value;
+        final int command = runningStatus & 0xF0;
+        final int expectedCount = command == ShortMessage.PROGRAM_CHANGE || command == ShortMessage.CHANNEL_PRESSURE
+                ? 1 : 2;
+        if (dataCount == expectedCount) {
+            receiver.send(new ShortMessage(runningStatus, data[0], expectedCount == 2 ? data[1] : 0), -1);
+            dataCount = 0;
+        }
+    }
+
+    @Override
+    public int getMaxReadPacketSize() {
+        return PACKET_SIZE;
+    }
+
+    @Override
+    public int getMaxWritePacketSize() {
+        return PACKET_SIZE;
+    }
+
+    @Override
+    public String getName() {
+        final MidiDevice.Info info = outputDevice.getDeviceInfo();
+        return info.getName() + " - " + info.getVendor() + " - " + info.getDescription();
+    }
+
+    @Override
+    public void close() {
+        inputLock.lock();
+        try {
+            isClosed = true;
+            inputNotEmpty.signalAll();
+        } finally {
+            inputLock.unlock();
+        }
+
+        transmitter.close();
+        receiver.close();
+        inputDevice.close();
+        if (outputDevice != inputDevice) {
+            outputDevice.close();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.yougi.launchpadusb;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Run the listeners of a {@link LaunchPadConnection} on the thread of a {@link Looper}, for example the main
+ * thread.
+ */
+public final class HandlerExecutor implements Executor {
+
+    private final Handler handler;
+
+    public HandlerExecutor(Looper looper) {
+        if (looper == null) {
+            throw new IllegalArgumentException("the looper in argument Cannot be null");
+        }
+
+        this.handler = new Handler(looper);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (!handler.post(command)) {
+            throw new RejectedExecutionException("the looper is exiting, cannot run : " + command);
+        }
+    }
+}
@@ -11,6 +11,9 @@ import android.util.Log;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public final class LaunchpadDriver {
 
@@ -18,10 +21,38 @@ public final class LaunchpadDriver {
 
     private static final String ACTION_USB_PERMISSION = "com.yougi.launchpadusb.USB_PERMISSION";
 
+    /**
+     * The connections share the send loop, a write to a device which stops reading fails after this delay
+     * instead of stalling the other devices. A packet takes about a millisecond to send.
+     */
+    private static final int SEND_LOOP_WRITE_TIMEOUT_MILLIS = 50;
+
     private static LaunchpadDriver INSTANCE;
 
     private ArrayList<LaunchPadDriverObserver> launchPadDriverObservers;
 
+    /**
+     * The connections opened by this driver, keyed by device id. They share one send loop, so the number of
+     * threads flushing the leds doesn't grow with the number of devices.
+     */
+    private final HashMap<String, LaunchPadConnection> launchPadConnections = new HashMap<>();
+    private final LaunchpadSendLoop sendLoop = new LaunchpadSendLoop();
+
+    private UsbIoMode defaultUsbIoMode = UsbIoMode.BLOCKING;
+    private final HashMap<String, UsbIoMode> requestedUsbIoModes = new HashMap<>();
+    private final HashMap<String, UsbIoMode> connectionUsbIoModes = new HashMap<>();
+
+    /**
+     * The connections of the unplugged devices, keyed by device id in the order of their unplug. The next
+     * Launchpad plugged resumes the first one.
+     */
+    private final LinkedHashMap<String, LaunchPadConnection> detachedConnections = new LinkedHashMap<>();
+
+    /**
+     * The devices plugged again whose permission is asked, to resume a detached connection once granted.
+     */
+    private final HashSet<String> reattachRequests = new HashSet<>();
+
     public static LaunchpadDriver getInstance() {
         if (INSTANCE == null) {
             INSTANCE = new LaunchpadDriver();
@@ -41,7 +72,15 @@ public final class LaunchpadDriver {
                         if (device != null) {
                             Log.i(TAG, "Permission GRANTED for device : " + device);
                             UsbManager usbManager = (UsbManager) context.getSystemService(Context.USB_SERVICE);
-                            LaunchPadConnection launchPadConnection = new LaunchPadConnection(usbManager, device);
+                            if (isReattachRequested(device.getDeviceName())) {
+                                reattachConnection(usbManager, device);
+                                return;
+                            }
+
+                            final UsbIoMode usbIoMode = takeRequestedUsbIoMode(device.getDeviceName());
+                            LaunchPadConnection launchPadConnection = new LaunchPadConnection(
+                                    createTransport(usbManager, device, usbIoMode), sendLoop);
+                            putConnection(device.getDeviceName(), launchPadConnection, usbIoMode);
                             notifyOnConnectionSuccessed(launchPadConnection);
                         }
                     } else {
@@ -54,6 +93,30 @@ public final class LaunchpadDriver {
         }
     };
 
+    /**
+     * Park the connection of an unplugged Launchpad, and resume it on the next Launchpad plugged without the
+     * application : the leds written meanwhile are sent to the device in one burst.
+     * <p>
+     * The permission on a device is lost with its unplug, it is asked again unless the application is the
+     * default one for the Launchpad, with a usb device filter in its manifest.
+     */
+    private final BroadcastReceiver usbHotPlugReceiver = new BroadcastReceiver() {
+
+        public void onReceive(Context context, Intent intent) {
+            final UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
+            if (device == null) {
+                return;
+            }
+
+            final String action = intent.getAction();
+            if (UsbManager.ACTION_USB_DEVICE_DETACHED.equals(action)) {
+                onDeviceDetached(device.getDeviceName());
+            } else if (UsbManager.ACTION_USB_DEVICE_ATTACHED.equals(action) && isSupportedLaunchPad(device)) {
+                onDeviceAttached(context, device);
+            }
+        }
+    };
+
     private LaunchpadDriver() {
         launchPadDriverObservers = new ArrayList<>();
     }
@@ -65,6 +128,10 @@ public final class LaunchpadDriver {
 
         IntentFilter filter = new IntentFilter(ACTION_USB_PERMISSION);
         context.registerReceiver(usbAccessPermissionReceiver, filter);
+
+        IntentFilter hotPlugFilter = new IntentFilter(UsbManager.ACTION_USB_DEVICE_DETACHED);
+        hotPlugFilter.addAction(UsbManager.ACTION_USB_DEVICE_ATTACHED);
+        context.registerReceiver(usbHotPlugReceiver, hotPlugFilter);
     }
 
     public void releaseLaunchpadDriver(Context context){
@@ -73,6 +140,7 @@ public final class LaunchpadDriver {
         }
 
         context.unregisterReceiver(usbAccessPermissionReceiver);
+        context.unregisterReceiver(usbHotPlugReceiver);
     }
 
     public HashMap<String, String> getDevicesDetected(UsbManager usbManager) {
@@ -101,6 +169,18 @@ public final class LaunchpadDriver {
     }
 
     public boolean askDeviceConnectionAsync(Context context, UsbManager usbManager, String id) {
+        return askDeviceConnectionAsync(context, usbManager, id, getDefaultUsbIoMode());
+    }
+
+    /**
+     * @param usbIoMode how the connection opened on this device transfers its packets.
+     */
+    public boolean askDeviceConnectionAsync(Context context, UsbManager usbManager, String id,
+                                            UsbIoMode usbIoMode) {
+        if (usbIoMode == null) {
+            throw new IllegalArgumentException("the usbIoMode in argument Cannot be null");
+        }
+
         if (context == null) {
             throw new IllegalArgumentException("the context in argument Cannot be null");
         }
@@ -115,6 +195,9 @@ public final class LaunchpadDriver {
         }
 
         final UsbDevice usbDevice = deviceList.get(id);
+        synchronized (this) {
+            requestedUsbIoModes.put(id, usbIoMode);
+        }
 
         notifyOnRequestConnectionOnDevice(id, usbDevice.getDeviceName() + " - " +
                 usbDevice.getManufacturerName() + " - " + usbDevice.getProductName());
@@ -125,6 +208,201 @@ public final class LaunchpadDriver {
         return true;
     }
 
+    public synchronized UsbIoMode getDefaultUsbIoMode() {
+        return defaultUsbIoMode;
+    }
+
+    /**
+     * @param usbIoMode the mode of the connections asked without mode, {@link UsbIoMode#BLOCKING} by default.
+     */
+    public synchronized void setDefaultUsbIoMode(UsbIoMode usbIoMode) {
+        if (usbIoMode == null) {
+            throw new IllegalArgumentException("the usbIoMode in argument Cannot be null");
+        }
+
+        this.defaultUsbIoMode = usbIoMode;
+    }
+
+    /**
+     * @return the connection opened on the device, or null if none.
+     */
+    public synchronized LaunchPadConnection getConnection(String deviceId) {
+        return launchPadConnections.get(deviceId);
+    }
+
+    /**
+     * @return a copy of the opened connections, keyed by device id.
+     */
+    public synchronized HashMap<String, LaunchPadConnection> getConnections() {
+        return new HashMap<>(launchPadConnections);
+    }
+
+    /**
+     * Close the connection opened on the device and forget it.
+     *
+     * @return false if no connection is opened on this device.
+     */
+    public boolean releaseConnection(String deviceId) {
+        final LaunchPadConnection launchPadConnection;
+        synchronized (this) {
+            launchPadConnection = launchPadConnections.remove(deviceId);
+            connectionUsbIoModes.remove(deviceId);
+            detachedConnections.remove(deviceId);
+        }
+
+        if (launchPadConnection == null) {
+            return false;
+        }
+
+        launchPadConnection.close();
+        return true;
+    }
+
+    /**
+     * @return the loop flushing the leds of every connection of this driver.
+     */
+    public LaunchpadSendLoop getSendLoop() {
+        return sendLoop;
+    }
+
+    /**
+     * Set the same colors on every connection with a started send process, flushed in the same pass.
+     */
+    public void setFrameOnAll(byte[] colors) {
+        sendLoop.setFrameOnAll(colors);
+    }
+
+    public void beginFrameOnAll() {
+        sendLoop.beginFrameOnAll();
+    }
+
+    /**
+     * Commit the begun frame of every connection with a started send process, displayed in the same pass.
+     */
+    public void commitFrameOnAll() {
+        sendLoop.commitFrameOnAll();
+    }
+
+    private synchronized UsbIoMode takeRequestedUsbIoMode(String deviceId) {
+        final UsbIoMode usbIoMode = requestedUsbIoModes.remove(deviceId);
+        return usbIoMode != null ? usbIoMode : defaultUsbIoMode;
+    }
+
+    private LaunchpadTransport createTransport(UsbManager usbManager, UsbDevice device, UsbIoMode usbIoMode) {
+        if (usbIoMode == UsbIoMode.ASYNC) {
+            return new PipelinedTransport(new UsbRequestQueue(usbManager, device));
+        }
+        return new UsbLaunchpadTransport(usbManager, device, SEND_LOOP_WRITE_TIMEOUT_MILLIS);
+    }
+
+    private void putConnection(String deviceId, LaunchPadConnection launchPadConnection, UsbIoMode usbIoMode) {
+        final LaunchPadConnection previous;
+        synchronized (this) {
+            previous = launchPadConnections.put(deviceId, launchPadConnection);
+            connectionUsbIoModes.put(deviceId, usbIoMode);
+        }
+
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    private void onDeviceDetached(String deviceId) {
+        final LaunchPadConnection launchPadConnection;
+        synchronized (this) {
+            launchPadConnection = launchPadConnections.get(deviceId);
+            if (launchPadConnection == null) {
+                return;
+            }
+            detachedConnections.put(deviceId, launchPadConnection);
+        }
+
+        Log.w(TAG, "Device DETACHED : " + deviceId);
+        launchPadConnection.onDeviceDetached();
+    }
+
+    private void onDeviceAttached(Context context, UsbDevice device) {
+        synchronized (this) {
+            if (detachedConnections.isEmpty()) {
+                return;
+            }
+        }
+
+        final UsbManager usbManager = (UsbManager) context.getSystemService(Context.USB_SERVICE);
+        if (usbManager.hasPermission(device)) {
+            reattachConnection(usbManager, device);
+            return;
+        }
+
+        synchronized (this) {
+            reattachRequests.add(device.getDeviceName());
+        }
+        PendingIntent permissionUsbIntent = PendingIntent.getBroadcast(context, 0,
+                new Intent(ACTION_USB_PERMISSION), 0);
+        usbManager.requestPermission(device, permissionUsbIntent);
+    }
+
+    private synchronized boolean isReattachRequested(String deviceId) {
+        return reattachRequests.remove(deviceId);
+    }
+
+    /**
+     * Resume the first detached connection on the plugged device, it takes the id of the device.
+     */
+    private void reattachConnection(UsbManager usbManager, UsbDevice device) {
+        final String deviceId = device.getDeviceName();
+        final String detachedId;
+        final LaunchPadConnection launchPadConnection;
+        UsbIoMode usbIoMode;
+        synchronized (this) {
+            if (detachedConnections.isEmpty()) {
+                return;
+            }
+
+            final Map.Entry<String, LaunchPadConnection> entry = detachedConnections.entrySet().iterator().next();
+            detachedId = entry.getKey();
+            launchPadConnection = entry.getValue();
+            usbIoMode = connectionUsbIoModes.get(detachedId);
+            if (usbIoMode == null) {
+                usbIoMode = defaultUsbIoMode;
+            }
+        }
+
+        // the connection stays detached if the device can't be opened or isn't the same model
+        final LaunchpadTransport transport;
+        try {
+            transport = createTransport(usbManager, device, usbIoMode);
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "Device ATTACHED again but cannot be opened : " + deviceId, e);
+            return;
+        }
+
+        try {
+            launchPadConnection.onDeviceAttached(transport);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Device ATTACHED again but cannot resume " + detachedId + " : " + deviceId, e);
+            transport.close();
+            return;
+        }
+
+        final boolean isReleased;
+        synchronized (this) {
+            // released while the device was opened
+            isReleased = detachedConnections.remove(detachedId) == null;
+            if (!isReleased) {
+                launchPadConnections.remove(detachedId);
+                connectionUsbIoModes.remove(detachedId);
+            }
+        }
+        if (isReleased) {
+            transport.close();
+            return;
+        }
+
+        putConnection(deviceId, launchPadConnection, usbIoMode);
+        Log.i(TAG, "Device ATTACHED again : " + detachedId + " -> " + deviceId);
+    }
+
     public boolean addLaunchPadDriverObserver(LaunchPadDriverObserver observer){
         if(observer == null){
             return false;
@@ -0,0 +1,18 @@
+package com.yougi.launchpadusb;
+
+/**
+ * How a connection opened by the {@link LaunchpadDriver} transfers its packets.
+ */
+public enum UsbIoMode {
+
+    /**
+     * One blocking bulk transfer at a time in each direction, see {@link UsbLaunchpadTransport}.
+     */
+    BLOCKING,
+
+    /**
+     * Several reads always queued and the writes pipelined with usb requests, see {@link UsbRequestQueue} and
+     * {@link PipelinedTransport}.
+     */
+    ASYNC
+}
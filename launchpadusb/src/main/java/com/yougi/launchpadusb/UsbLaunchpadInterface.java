@@ -0,0 +1,63 @@
+package com.yougi.launchpadusb;
+
+import android.hardware.usb.UsbConstants;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbEndpoint;
+import android.hardware.usb.UsbInterface;
+import android.hardware.usb.UsbManager;
+
+/**
+ * The opened first interface of a Launchpad with its bulk in and out endpoints, shared by the usb transports.
+ */
+final class UsbLaunchpadInterface {
+
+    final UsbDevice usbDevice;
+    final UsbDeviceConnection usbDeviceConnection;
+    final UsbEndpoint inEndpoint;
+    final UsbEndpoint outEndpoint;
+
+    private final UsbInterface usbInterface;
+
+    /**
+     * Open the device and claim its interface, the permission on the device must be granted.
+     */
+    UsbLaunchpadInterface(UsbManager usbManager, UsbDevice usbDevice) {
+        if (usbManager == null) {
+            throw new IllegalArgumentException("the usbManager in argument Cannot be null");
+        }
+
+        if (usbDevice == null) {
+            throw new IllegalArgumentException("the usbDevice in argument Cannot be null");
+        }
+
+        this.usbDevice = usbDevice;
+        this.usbInterface = usbDevice.getInterface(0);
+
+        final UsbEndpoint endpoint0 = usbInterface.getEndpoint(0);
+        final UsbEndpoint endpoint1 = usbInterface.getEndpoint(1);
+        if (endpoint0.getDirection() == UsbConstants.USB_DIR_IN) {
+            inEndpoint = endpoint0;
+            outEndpoint = endpoint1;
+        } else {
+            outEndpoint = endpoint0;
+            inEndpoint = endpoint1;
+        }
+
+        usbDeviceConnection = usbManager.openDevice(usbDevice);
+        if (usbDeviceConnection == null) {
+            throw new IllegalStateException("the device cannot be opened : " + usbDevice.getDeviceName());
+        }
+        usbDeviceConnection.claimInterface(usbInterface, true);
+    }
+
+    String getName() {
+        return usbDevice.getDeviceName() + " - " +
+                usbDevice.getManufacturerName() + " - " + usbDevice.getProductName();
+    }
+
+    void close() {
+        usbDeviceConnection.releaseInterface(usbInterface);
+        usbDeviceConnection.close();
+    }
+}
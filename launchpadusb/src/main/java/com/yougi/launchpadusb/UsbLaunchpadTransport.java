@@ -0,0 +1,69 @@
+package com.yougi.launchpadusb;
+
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbManager;
+
+/**
+ * Transport over the two bulk endpoints of the first interface of a Launchpad, with the android usb host api.
+ * Each read and write is a blocking transfer, see {@link UsbRequestQueue} for transfers in flight.
+ */
+public final class UsbLaunchpadTransport implements LaunchpadTransport {
+
+    private final UsbLaunchpadInterface usbLaunchpadInterface;
+    private final int writeTimeoutMillis;
+
+    /**
+     * Open the device and claim its interface, the permission on the device must be granted. The writes wait
+     * for the device without timeout.
+     */
+    public UsbLaunchpadTransport(UsbManager usbManager, UsbDevice usbDevice) {
+        this(usbManager, usbDevice, 0);
+    }
+
+    /**
+     * @param writeTimeoutMillis the longest wait of a write, 0 for none. A connection flushed by a
+     *                           {@link LaunchpadSendLoop} needs one : a device which stops reading would
+     *                           otherwise stall the leds of every device of the loop.
+     */
+    public UsbLaunchpadTransport(UsbManager usbManager, UsbDevice usbDevice, int writeTimeoutMillis) {
+        if (writeTimeoutMillis < 0) {
+            throw new IllegalArgumentException("the writeTimeoutMillis in argument Cannot be negative : "
+                    + writeTimeoutMillis);
+        }
+
+        this.usbLaunchpadInterface = new UsbLaunchpadInterface(usbManager, usbDevice);
+        this.writeTimeoutMillis = writeTimeoutMillis;
+    }
+
+    @Override
+    public int readPacket(byte[] buffer) {
+        return usbLaunchpadInterface.usbDeviceConnection.bulkTransfer(usbLaunchpadInterface.inEndpoint, buffer,
+                buffer.length, 0);
+    }
+
+    @Override
+    public int writePacket(byte[] buffer, int length) {
+        return usbLaunchpadInterface.usbDeviceConnection.bulkTransfer(usbLaunchpadInterface.outEndpoint, buffer,
+                length, writeTimeoutMillis);
+    }
+
+    @Override
+    public int getMaxReadPacketSize() {
+        return usbLaunchpadInterface.inEndpoint.getMaxPacketSize();
+    }
+
+    @Override
+    public int getMaxWritePacketSize() {
+        return usbLaunchpadInterface.outEndpoint.getMaxPacketSize();
+    }
+
+    @Override
+    public String getName() {
+        return usbLaunchpadInterface.getName();
+    }
+
+    @Override
+    public void close() {
+        usbLaunchpadInterface.close();
+    }
+}
@@ -0,0 +1,119 @@
+package com.yougi.launchpadusb;
+
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbEndpoint;
+import android.hardware.usb.UsbManager;
+import android.hardware.usb.UsbRequest;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Request queue over the bulk endpoints of a Launchpad with {@link UsbRequest}, the completions are reaped with
+ * {@link android.hardware.usb.UsbDeviceConnection#requestWait()}. Use it through a {@link PipelinedTransport}.
+ * <p>
+ * A usb request and its buffer are created on the first use of a request id, then reused.
+ */
+public final class UsbRequestQueue implements LaunchpadRequestQueue {
+
+    private final UsbLaunchpadInterface usbLaunchpadInterface;
+
+    private UsbRequest[] requests = new UsbRequest[8];
+    private ByteBuffer[] byteBuffers = new ByteBuffer[8];
+
+    private volatile boolean isClosed;
+
+    /**
+     * Open the device and claim its interface, the permission on the device must be granted.
+     */
+    public UsbRequestQueue(UsbManager usbManager, UsbDevice usbDevice) {
+        this.usbLaunchpadInterface = new UsbLaunchpadInterface(usbManager, usbDevice);
+    }
+
+    @Override
+    public boolean queueRead(int requestId, byte[] buffer) {
+        return queue(requestId, usbLaunchpadInterface.inEndpoint, buffer, buffer.length);
+    }
+
+    @Override
+    public boolean queueWrite(int requestId, byte[] buffer, int length) {
+        return queue(requestId, usbLaunchpadInterface.outEndpoint, buffer, length);
+    }
+
+    private synchronized boolean queue(int requestId, UsbEndpoint endpoint, byte[] buffer, int length) {
+        if (isClosed) {
+            return false;
+        }
+
+        if (requestId >= requests.length) {
+            final int size = Math.max(requestId + 1, requests.length * 2);
+            requests = Arrays.copyOf(requests, size);
+            byteBuffers = Arrays.copyOf(byteBuffers, size);
+        }
+
+        UsbRequest request = requests[requestId];
+        if (request == null) {
+            request = new UsbRequest();
+            if (!request.initialize(usbLaunchpadInterface.usbDeviceConnection, endpoint)) {
+                return false;
+            }
+            request.setClientData(requestId);
+            requests[requestId] = request;
+        }
+
+        ByteBuffer byteBuffer = byteBuffers[requestId];
+        if (byteBuffer == null || byteBuffer.array() != buffer) {
+            byteBuffer = ByteBuffer.wrap(buffer);
+            byteBuffers[requestId] = byteBuffer;
+        }
+        byteBuffer.clear();
+
+        return request.queue(byteBuffer, length);
+    }
+
+    @Override
+    public long awaitCompletion() {
+        final UsbRequest request = usbLaunchpadInterface.usbDeviceConnection.requestWait();
+        if (request == null || isClosed) {
+            return -1;
+        }
+
+        final int requestId = (Integer) request.getClientData();
+        final ByteBuffer byteBuffer;
+        synchronized (this) {
+            byteBuffer = byteBuffers[requestId];
+        }
+        // the position of the buffer is the number of bytes transferred
+        return RequestCompletion.of(requestId, byteBuffer.position());
+    }
+
+    @Override
+    public int getMaxReadPacketSize() {
+        return usbLaunchpadInterface.inEndpoint.getMaxPacketSize();
+    }
+
+    @Override
+    public int getMaxWritePacketSize() {
+        return usbLaunchpadInterface.outEndpoint.getMaxPacketSize();
+    }
+
+    @Override
+    public String getName() {
+        return usbLaunchpadInterface.getName();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            isClosed = true;
+            for (UsbRequest request : requests) {
+                if (request != null) {
+                    request.cancel();
+                    request.close();
+                }
+            }
+        }
+
+        usbLaunchpadInterface.close();
+    }
+}